@@ -0,0 +1,162 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.LocationPoint;
+
+import android.util.Base64;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact string encodings for drive waypoints. Sending thousands of waypoints as one
+ * JSONObject per point is expensive on both sides of the cordova bridge, so these encodings
+ * are used when the application opts in from zendrive.js.
+ */
+final class WaypointEncoder {
+
+    // Precision used by the Google encoded polyline algorithm
+    private static final double kPolylinePrecision = 1e5;
+
+    // Supported precisions of the delta varint encoding, in decimal digits
+    static final int kMinDeltaVarintPrecision = 1;
+    static final int kMaxDeltaVarintPrecision = 9;
+
+    private WaypointEncoder() {
+    }
+
+    /**
+     * Encodes the waypoints using the Google encoded polyline algorithm.
+     * Decoded by decodePolyline in zendrive.js.
+     */
+    static String encodePolyline(List<LocationPoint> waypoints) {
+        int waypointsCount = (null != waypoints) ? waypoints.size() : 0;
+        // Most deltas between consecutive fixes fit in 3-4 characters per coordinate
+        StringBuilder builder = new StringBuilder(waypointsCount * 8);
+
+        long previousLatitude = 0;
+        long previousLongitude = 0;
+        for (int i = 0; i < waypointsCount; i++) {
+            LocationPoint locationPoint = waypoints.get(i);
+            long latitude = Math.round(locationPoint.latitude * kPolylinePrecision);
+            long longitude = Math.round(locationPoint.longitude * kPolylinePrecision);
+
+            encodePolylineValue(latitude - previousLatitude, builder);
+            encodePolylineValue(longitude - previousLongitude, builder);
+
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+        }
+        return builder.toString();
+    }
+
+    private static void encodePolylineValue(long value, StringBuilder builder) {
+        long shifted = (value < 0) ? ~(value << 1) : (value << 1);
+        while (shifted >= 0x20) {
+            builder.append((char) ((0x20 | (shifted & 0x1f)) + 63));
+            shifted >>= 5;
+        }
+        builder.append((char) (shifted + 63));
+    }
+
+    /**
+     * Encodes the waypoints as coordinates quantized to precision decimal digits, each stored
+     * as the zigzag encoded difference from the previous coordinate in a base 128 varint. The
+     * bytes are returned base64 encoded. Decoded by decodeDeltaVarint in zendrive.js.
+     *
+     * Consecutive fixes of a drive are close to each other, so at the default precision of
+     * 1e-6 degrees most coordinates take 2 bytes.
+     */
+    static String encodeDeltaVarint(List<LocationPoint> waypoints, int precision) {
+        return Base64.encodeToString(encodeDeltaVarintBytes(waypoints, precision),
+                Base64.NO_WRAP);
+    }
+
+    /**
+     * Same as encodeDeltaVarint without the base64 encoding, for storage.
+     */
+    static byte[] encodeDeltaVarintBytes(List<LocationPoint> waypoints, int precision) {
+        int waypointsCount = (null != waypoints) ? waypoints.size() : 0;
+        double scale = Math.pow(10, Math.max(kMinDeltaVarintPrecision,
+                Math.min(kMaxDeltaVarintPrecision, precision)));
+        byte[] bytes = new byte[waypointsCount * 6];
+        int length = 0;
+
+        long previousLatitude = 0;
+        long previousLongitude = 0;
+        for (int i = 0; i < waypointsCount; i++) {
+            LocationPoint locationPoint = waypoints.get(i);
+            long latitude = Math.round(locationPoint.latitude * scale);
+            long longitude = Math.round(locationPoint.longitude * scale);
+
+            // A coordinate takes at most 10 bytes
+            if (bytes.length - length < 20) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + 20));
+            }
+            length = encodeVarint(latitude - previousLatitude, bytes, length);
+            length = encodeVarint(longitude - previousLongitude, bytes, length);
+
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Decodes waypoints encoded by encodeDeltaVarint with the same precision. Throws
+     * IllegalArgumentException if encoded is not valid.
+     */
+    static List<LocationPoint> decodeDeltaVarint(String encoded, int precision) {
+        return decodeDeltaVarintBytes(Base64.decode(encoded, Base64.NO_WRAP), precision);
+    }
+
+    static List<LocationPoint> decodeDeltaVarintBytes(byte[] bytes, int precision) {
+        double scale = Math.pow(10, Math.max(kMinDeltaVarintPrecision,
+                Math.min(kMaxDeltaVarintPrecision, precision)));
+        // Most coordinates take 2 to 3 bytes
+        List<LocationPoint> waypoints = new ArrayList<LocationPoint>(bytes.length / 4);
+        long[] varint = new long[2];
+        int offset = 0;
+        long latitude = 0;
+        long longitude = 0;
+        while (offset < bytes.length) {
+            offset = decodeVarint(bytes, offset, varint);
+            latitude += varint[0];
+            offset = decodeVarint(bytes, offset, varint);
+            longitude += varint[0];
+            waypoints.add(new LocationPoint(latitude / scale, longitude / scale));
+        }
+        return waypoints;
+    }
+
+    private static int encodeVarint(long value, byte[] bytes, int offset) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7fL) != 0) {
+            bytes[offset++] = (byte) ((zigzag & 0x7f) | 0x80);
+            zigzag >>>= 7;
+        }
+        bytes[offset++] = (byte) zigzag;
+        return offset;
+    }
+
+    /**
+     * Decodes the zigzag varint at offset into value[0] and returns the offset after it.
+     */
+    private static int decodeVarint(byte[] bytes, int offset, long[] value) {
+        long zigzag = 0;
+        int shift = 0;
+        while (true) {
+            if (offset >= bytes.length || shift > 63) {
+                throw new IllegalArgumentException("Truncated delta varint waypoints");
+            }
+            byte b = bytes[offset++];
+            zigzag |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        value[0] = (zigzag >>> 1) ^ -(zigzag & 1);
+        return offset;
+    }
+}
@@ -0,0 +1,172 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.LocationPoint;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Reduces the waypoints of a drive to a route good enough for rendering on a map, before they
+ * are serialized. Uses Douglas-Peucker simplification with a tolerance in metres, followed by
+ * even decimation if more than the maximum number of points remain.
+ *
+ * Work is done on primitive arrays, the returned list is a view over the kept points of the
+ * original list.
+ */
+final class WaypointSimplifier {
+
+    private static final double kEarthRadiusMeters = 6371008.8;
+
+    private WaypointSimplifier() {
+    }
+
+    /**
+     * @param toleranceMeters Points closer than this to the simplified route are dropped.
+     *                        Douglas-Peucker is skipped if this is not positive.
+     * @param maxWaypoints Maximum number of points returned, no limit if this is not positive.
+     *                     The first and last point are always kept.
+     */
+    static List<LocationPoint> simplify(List<LocationPoint> waypoints, double toleranceMeters,
+                                        int maxWaypoints) {
+        int waypointsCount = (null != waypoints) ? waypoints.size() : 0;
+        if (waypointsCount <= 2) {
+            return waypoints;
+        }
+
+        boolean[] isKept = new boolean[waypointsCount];
+        int keptCount;
+        if (toleranceMeters > 0) {
+            keptCount = douglasPeucker(waypoints, toleranceMeters, isKept);
+        }
+        else {
+            keptCount = waypointsCount;
+            for (int i = 0; i < waypointsCount; i++) {
+                isKept[i] = true;
+            }
+        }
+
+        int[] keptIndices = new int[keptCount];
+        for (int i = 0, j = 0; i < waypointsCount; i++) {
+            if (isKept[i]) {
+                keptIndices[j++] = i;
+            }
+        }
+
+        if (maxWaypoints > 0 && keptCount > maxWaypoints) {
+            keptIndices = decimate(keptIndices, Math.max(2, maxWaypoints));
+        }
+        if (keptIndices.length == waypointsCount) {
+            return waypoints;
+        }
+        return new IndexedWaypoints(waypoints, keptIndices);
+    }
+
+    /**
+     * Marks the points kept by Douglas-Peucker in isKept and returns their count. Points are
+     * projected to a local equirectangular plane in metres, which is accurate enough at the
+     * scale of a drive.
+     */
+    private static int douglasPeucker(List<LocationPoint> waypoints, double toleranceMeters,
+                                      boolean[] isKept) {
+        int waypointsCount = waypoints.size();
+        double[] x = new double[waypointsCount];
+        double[] y = new double[waypointsCount];
+
+        LocationPoint origin = waypoints.get(0);
+        double metersPerDegreeLatitude = Math.toRadians(kEarthRadiusMeters);
+        double metersPerDegreeLongitude = metersPerDegreeLatitude *
+                Math.cos(Math.toRadians(origin.latitude));
+        for (int i = 0; i < waypointsCount; i++) {
+            LocationPoint locationPoint = waypoints.get(i);
+            x[i] = (locationPoint.longitude - origin.longitude) * metersPerDegreeLongitude;
+            y[i] = (locationPoint.latitude - origin.latitude) * metersPerDegreeLatitude;
+        }
+
+        double toleranceSquared = toleranceMeters * toleranceMeters;
+        isKept[0] = true;
+        isKept[waypointsCount - 1] = true;
+        int keptCount = 2;
+
+        // Ranges still to be simplified, as start and end index pairs. There are never more
+        // pending ranges than points.
+        int[] stack = new int[2 * waypointsCount];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = waypointsCount - 1;
+        while (stackSize > 0) {
+            int end = stack[--stackSize];
+            int start = stack[--stackSize];
+
+            int farthestIndex = -1;
+            double farthestDistanceSquared = toleranceSquared;
+            for (int i = start + 1; i < end; i++) {
+                double distanceSquared = segmentDistanceSquared(x[i], y[i],
+                        x[start], y[start], x[end], y[end]);
+                if (distanceSquared > farthestDistanceSquared) {
+                    farthestIndex = i;
+                    farthestDistanceSquared = distanceSquared;
+                }
+            }
+            if (farthestIndex < 0) {
+                continue;
+            }
+
+            isKept[farthestIndex] = true;
+            keptCount++;
+            stack[stackSize++] = start;
+            stack[stackSize++] = farthestIndex;
+            stack[stackSize++] = farthestIndex;
+            stack[stackSize++] = end;
+        }
+        return keptCount;
+    }
+
+    private static double segmentDistanceSquared(double px, double py, double ax, double ay,
+                                                 double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+        }
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Picks maxWaypoints evenly spaced entries of indices, including the first and last.
+     */
+    private static int[] decimate(int[] indices, int maxWaypoints) {
+        int[] decimated = new int[maxWaypoints];
+        long last = indices.length - 1;
+        for (int i = 0; i < maxWaypoints; i++) {
+            decimated[i] = indices[(int) ((i * last) / (maxWaypoints - 1))];
+        }
+        return decimated;
+    }
+
+    private static final class IndexedWaypoints extends AbstractList<LocationPoint>
+            implements RandomAccess {
+        private final List<LocationPoint> waypoints;
+        private final int[] indices;
+
+        IndexedWaypoints(List<LocationPoint> waypoints, int[] indices) {
+            this.waypoints = waypoints;
+            this.indices = indices;
+        }
+
+        @Override
+        public LocationPoint get(int index) {
+            return waypoints.get(indices[index]);
+        }
+
+        @Override
+        public int size() {
+            return indices.length;
+        }
+    }
+}
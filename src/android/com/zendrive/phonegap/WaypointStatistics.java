@@ -0,0 +1,141 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.LocationPoint;
+
+import java.util.List;
+
+/**
+ * Statistics derived from the waypoints of a drive, computed natively so that javascript does
+ * not have to iterate over all waypoints after a drive ends.
+ *
+ * Everything is computed in a single pass over the waypoints, with primitive locals only.
+ * Distances use the haversine formula. Waypoints carry no timestamps, so stops are detected from
+ * their positions alone: a stop is a run of at least kMinStopWaypoints consecutive waypoints
+ * which all lie within kStopRadiusMeters of the first waypoint of the run.
+ */
+final class WaypointStatistics {
+
+    private static final double kEarthRadiusMeters = 6371008.8;
+
+    static final double kStopRadiusMeters = 15;
+    static final int kMinStopWaypoints = 3;
+
+    final int waypointsCount;
+
+    // Bounding box of the waypoints, only meaningful if waypointsCount is positive
+    final double minLatitude;
+    final double maxLatitude;
+    final double minLongitude;
+    final double maxLongitude;
+
+    // Length of the path through all waypoints and of its longest segment
+    final double pathDistanceMeters;
+    final double maxSegmentDistanceMeters;
+
+    final int stopCount;
+
+    private WaypointStatistics(int waypointsCount, double minLatitude, double maxLatitude,
+                               double minLongitude, double maxLongitude,
+                               double pathDistanceMeters, double maxSegmentDistanceMeters,
+                               int stopCount) {
+        this.waypointsCount = waypointsCount;
+        this.minLatitude = minLatitude;
+        this.maxLatitude = maxLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLongitude = maxLongitude;
+        this.pathDistanceMeters = pathDistanceMeters;
+        this.maxSegmentDistanceMeters = maxSegmentDistanceMeters;
+        this.stopCount = stopCount;
+    }
+
+    static WaypointStatistics compute(List<LocationPoint> waypoints) {
+        int waypointsCount = (null != waypoints) ? waypoints.size() : 0;
+        if (0 == waypointsCount) {
+            return new WaypointStatistics(0, 0, 0, 0, 0, 0, 0, 0);
+        }
+
+        LocationPoint first = waypoints.get(0);
+        double minLatitude = first.latitude;
+        double maxLatitude = first.latitude;
+        double minLongitude = first.longitude;
+        double maxLongitude = first.longitude;
+        double pathDistanceMeters = 0;
+        double maxSegmentDistanceMeters = 0;
+        int stopCount = 0;
+
+        // Previous waypoint, with the cosine of its latitude which haversine needs again
+        double previousLatitude = Math.toRadians(first.latitude);
+        double previousLongitude = Math.toRadians(first.longitude);
+        double previousCosLatitude = Math.cos(previousLatitude);
+
+        // First waypoint of the current stop candidate and the length of the run
+        double anchorLatitude = previousLatitude;
+        double anchorLongitude = previousLongitude;
+        double anchorCosLatitude = previousCosLatitude;
+        int runLength = 1;
+
+        for (int i = 1; i < waypointsCount; i++) {
+            LocationPoint locationPoint = waypoints.get(i);
+            if (locationPoint.latitude < minLatitude) {
+                minLatitude = locationPoint.latitude;
+            }
+            else if (locationPoint.latitude > maxLatitude) {
+                maxLatitude = locationPoint.latitude;
+            }
+            if (locationPoint.longitude < minLongitude) {
+                minLongitude = locationPoint.longitude;
+            }
+            else if (locationPoint.longitude > maxLongitude) {
+                maxLongitude = locationPoint.longitude;
+            }
+
+            double latitude = Math.toRadians(locationPoint.latitude);
+            double longitude = Math.toRadians(locationPoint.longitude);
+            double cosLatitude = Math.cos(latitude);
+
+            double segmentDistanceMeters = haversine(previousLatitude, previousLongitude,
+                    previousCosLatitude, latitude, longitude, cosLatitude);
+            pathDistanceMeters += segmentDistanceMeters;
+            if (segmentDistanceMeters > maxSegmentDistanceMeters) {
+                maxSegmentDistanceMeters = segmentDistanceMeters;
+            }
+
+            if (haversine(anchorLatitude, anchorLongitude, anchorCosLatitude,
+                    latitude, longitude, cosLatitude) <= kStopRadiusMeters) {
+                runLength++;
+            }
+            else {
+                if (runLength >= kMinStopWaypoints) {
+                    stopCount++;
+                }
+                anchorLatitude = latitude;
+                anchorLongitude = longitude;
+                anchorCosLatitude = cosLatitude;
+                runLength = 1;
+            }
+
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+            previousCosLatitude = cosLatitude;
+        }
+        if (runLength >= kMinStopWaypoints) {
+            stopCount++;
+        }
+
+        return new WaypointStatistics(waypointsCount, minLatitude, maxLatitude, minLongitude,
+                maxLongitude, pathDistanceMeters, maxSegmentDistanceMeters, stopCount);
+    }
+
+    /**
+     * Distance in metres between two points given in radians, along with the cosines of their
+     * latitudes.
+     */
+    private static double haversine(double latitude1, double longitude1, double cosLatitude1,
+                                    double latitude2, double longitude2, double cosLatitude2) {
+        double sinHalfLatitudeDelta = Math.sin((latitude2 - latitude1) / 2);
+        double sinHalfLongitudeDelta = Math.sin((longitude2 - longitude1) / 2);
+        double a = sinHalfLatitudeDelta * sinHalfLatitudeDelta +
+                cosLatitude1 * cosLatitude2 * sinHalfLongitudeDelta * sinHalfLongitudeDelta;
+        return 2 * kEarthRadiusMeters * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,212 @@
+package com.zendrive.phonegap;
+
+import android.util.Log;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs Zendrive SDK control calls one at a time in the order in which they were issued, by
+ * javascript or by the plugin itself when it restores the SDK setup in the background. A
+ * command is complete once it reports success or an error, which asynchronous SDK calls such
+ * as setup only do from their SDK callback. The next command waits for that, for at most
+ * kMaxCommandWaitMillis.
+ *
+ * A command which has not started yet is coalesced with the command queued right after it when
+ * running both would be redundant:
+ * - consecutive setDriveDetectionMode calls, only the last one is run,
+ * - consecutive identical startDrive, startSession or stopSession calls, only the first one
+ *   is run.
+ * A startDrive followed by stopDrive is always run, since startDrive also ends a drive the SDK
+ * detected automatically, and the drive may have been started by an earlier startDrive.
+ *
+ * Every command reports its queue and execution latency to its success callback.
+ */
+final class ZendriveCommandQueue {
+    private static final String TAG = "ZendriveCommandQueue";
+
+    // Longest time a command can hold the queue while it waits for an SDK callback
+    private static final long kMaxCommandWaitMillis = 30000;
+
+    private static final ZendriveCommandQueue sharedInstance = new ZendriveCommandQueue();
+
+    // Command result dictionary keys
+    private static final String kQueueLatencyKey = "queueLatency";
+    private static final String kExecutionLatencyKey = "executionLatency";
+    private static final String kIsCoalescedKey = "isCoalesced";
+
+    // Command names which take part in coalescing
+    static final String kSetDriveDetectionMode = "setDriveDetectionMode";
+    static final String kStartDrive = "startDrive";
+    static final String kStartSession = "startSession";
+    static final String kStopSession = "stopSession";
+
+    abstract static class Command {
+        final String name;
+        // Tracking id or session id for the commands which take one
+        final String key;
+        // Null for commands the plugin issues itself
+        final CallbackContext callbackContext;
+
+        private final CountDownLatch completion = new CountDownLatch(1);
+        private long enqueuedAtNanos;
+        private long startedAtNanos;
+        private boolean isCoalesced;
+
+        Command(String name, String key, CallbackContext callbackContext) {
+            this.name = name;
+            this.key = key;
+            this.callbackContext = callbackContext;
+        }
+
+        abstract void execute() throws JSONException;
+
+        /**
+         * Reports success along with the latency of the command. Can be called from any thread
+         * once the command completes, including from asynchronous SDK callbacks.
+         */
+        void success() {
+            completion.countDown();
+            if (null == callbackContext) {
+                return;
+            }
+            long nowNanos = System.nanoTime();
+            long startedAt = isCoalesced ? nowNanos : startedAtNanos;
+            JSONObject resultObject = new JSONObject();
+            try {
+                resultObject.put(kQueueLatencyKey, nanosToMillis(startedAt - enqueuedAtNanos));
+                resultObject.put(kExecutionLatencyKey, nanosToMillis(nowNanos - startedAt));
+                resultObject.put(kIsCoalescedKey, isCoalesced);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+            callbackContext.success(resultObject);
+        }
+
+        void error(String message) {
+            completion.countDown();
+            if (null == callbackContext) {
+                Log.e(TAG, name + " failed: " + message);
+                return;
+            }
+            callbackContext.error(message);
+        }
+
+        private boolean isSameCommand(Command other) {
+            return name.equals(other.name) &&
+                    (null == key ? null == other.key : key.equals(other.key));
+        }
+    }
+
+    private ZendriveCommandQueue() {
+    }
+
+    static ZendriveCommandQueue getSharedInstance() {
+        return sharedInstance;
+    }
+
+    private final Executor worker = Executors.newSingleThreadExecutor();
+    private final ArrayDeque<Command> pendingCommands = new ArrayDeque<Command>();
+
+    private final Runnable runNextCommand = new Runnable() {
+        @Override
+        public void run() {
+            Command command;
+            synchronized (pendingCommands) {
+                command = pendingCommands.pollFirst();
+            }
+            // Null if the command this task was scheduled for got coalesced
+            if (null != command) {
+                runCommand(command);
+            }
+        }
+    };
+
+    void enqueue(Command command) {
+        command.enqueuedAtNanos = System.nanoTime();
+        synchronized (pendingCommands) {
+            Command previous = pendingCommands.peekLast();
+            if (null != previous && coalesce(previous, command)) {
+                return;
+            }
+            pendingCommands.addLast(command);
+        }
+        worker.execute(runNextCommand);
+    }
+
+    /**
+     * Returns true if command is fully absorbed by the pending command before it, in which case
+     * it must not be queued.
+     */
+    private boolean coalesce(Command previous, Command command) {
+        if (kSetDriveDetectionMode.equals(previous.name) &&
+                kSetDriveDetectionMode.equals(command.name)) {
+            pendingCommands.pollLast();
+            completeCoalesced(previous);
+            return false;
+        }
+        if ((kStartDrive.equals(command.name) || kStartSession.equals(command.name) ||
+                kStopSession.equals(command.name)) && command.isSameCommand(previous)) {
+            completeCoalesced(command);
+            return true;
+        }
+        return false;
+    }
+
+    private void completeCoalesced(Command command) {
+        command.isCoalesced = true;
+        command.success();
+    }
+
+    private void runCommand(Command command) {
+        command.startedAtNanos = System.nanoTime();
+        try {
+            command.execute();
+        } catch (JSONException e) {
+            command.completion.countDown();
+            if (null != command.callbackContext) {
+                command.callbackContext.sendPluginResult(
+                        new PluginResult(PluginResult.Status.JSON_EXCEPTION));
+            }
+            return;
+        } catch (RuntimeException e) {
+            Log.e(TAG, command.name + " failed", e);
+            command.error(e.getMessage());
+            return;
+        }
+        awaitCompletion(command);
+    }
+
+    private static void awaitCompletion(Command command) {
+        boolean isInterrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (!command.completion.await(kMaxCommandWaitMillis,
+                            TimeUnit.MILLISECONDS)) {
+                        Log.w(TAG, command.name + " did not complete, running the next command");
+                    }
+                    return;
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+        } finally {
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static double nanosToMillis(long nanos) {
+        return nanos / 1e6;
+    }
+}
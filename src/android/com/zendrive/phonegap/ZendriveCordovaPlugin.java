@@ -1,7 +1,9 @@
 package com.zendrive.phonegap;
 
 import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.CordovaWebView;
 import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -12,120 +14,362 @@ import com.zendrive.sdk.DriveInfo;
 import com.zendrive.sdk.DriveStartInfo;
 import com.zendrive.sdk.LocationPoint;
 import com.zendrive.sdk.Zendrive;
-import com.zendrive.sdk.ZendriveConfiguration;
 import com.zendrive.sdk.ZendriveDriveDetectionMode;
-import com.zendrive.sdk.ZendriveDriverAttributes;
-import com.zendrive.sdk.ZendriveOperationCallback;
-import com.zendrive.sdk.ZendriveOperationResult;
 
-import java.util.Date;
-import java.util.Iterator;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Created by chandan on 11/3/14.
  */
 public class ZendriveCordovaPlugin extends CordovaPlugin {
+    private static final String TAG = "ZendriveCordovaPlugin";
+
+    /**
+     * Thread on which an action is executed.
+     */
+    private enum ExecutionPolicy {
+        // On the bridge thread, for actions which only touch plugin state
+        INLINE,
+        // On the cordova thread pool, for slow actions which need no ordering
+        THREAD_POOL,
+        // On the command queue, for calls into the Zendrive SDK which must stay in order
+        COMMAND_QUEUE
+    }
+
+    private interface ActionHandler {
+        void execute(JSONArray args, CallbackContext callbackContext) throws JSONException;
+    }
+
+    private interface CommandHandler {
+        void execute(JSONArray args, ZendriveCommandQueue.Command command) throws JSONException;
+    }
+
+    private static final class Action {
+        final ExecutionPolicy executionPolicy;
+        final ActionHandler handler;
+        final CommandHandler commandHandler;
+
+        Action(ExecutionPolicy executionPolicy, ActionHandler handler,
+               CommandHandler commandHandler) {
+            this.executionPolicy = executionPolicy;
+            this.handler = handler;
+            this.commandHandler = commandHandler;
+        }
+    }
+
+    // Zendrive SDK control calls are serialized on this queue, shared by all plugin instances
+    private static final ZendriveCommandQueue commandQueue =
+            ZendriveCommandQueue.getSharedInstance();
+
+    private final Map<String, Action> actions = new HashMap<String, Action>();
+    private final ZendrivePluginMetrics metrics = ZendrivePluginMetrics.getSharedInstance();
+
+    public ZendriveCordovaPlugin() {
+        registerCommand("setup", new CommandHandler() {
+            @Override
+            public void execute(JSONArray args, ZendriveCommandQueue.Command command)
+                    throws JSONException {
+                setup(args, command);
+            }
+        });
+        registerCommand("teardown", new CommandHandler() {
+            @Override
+            public void execute(JSONArray args, ZendriveCommandQueue.Command command)
+                    throws JSONException {
+                teardown(args, command);
+            }
+        });
+        registerCommand("startDrive", new CommandHandler() {
+            @Override
+            public void execute(JSONArray args, ZendriveCommandQueue.Command command)
+                    throws JSONException {
+                startDrive(args, command);
+            }
+        });
+        registerAction("getActiveDriveInfo", ExecutionPolicy.INLINE, new ActionHandler() {
+            @Override
+            public void execute(JSONArray args, CallbackContext callbackContext) {
+                // Answers inline from the cache, queries the SDK on the thread pool otherwise
+                getActiveDriveInfo(callbackContext);
+            }
+        });
+        registerCommand("stopDrive", new CommandHandler() {
+            @Override
+            public void execute(JSONArray args, ZendriveCommandQueue.Command command)
+                    throws JSONException {
+                stopDrive(args, command);
+            }
+        });
+        registerCommand("startSession", new CommandHandler() {
+            @Override
+            public void execute(JSONArray args, ZendriveCommandQueue.Command command)
+                    throws JSONException {
+                startSession(args, command);
+            }
+        });
+        registerCommand("stopSession", new CommandHandler() {
+            @Override
+            public void execute(JSONArray args, ZendriveCommandQueue.Command command)
+                    throws JSONException {
+                stopSession(args, command);
+            }
+        });
+        registerCommand("setDriveDetectionMode", new CommandHandler() {
+            @Override
+            public void execute(JSONArray args, ZendriveCommandQueue.Command command)
+                    throws JSONException {
+                setDriveDetectionMode(args, command);
+            }
+        });
+        registerAction("setProcessStartOfDriveDelegateCallback", ExecutionPolicy.INLINE,
+                new ActionHandler() {
+            @Override
+            public void execute(JSONArray args, CallbackContext callbackContext)
+                    throws JSONException {
+                ZendriveManager.getSharedInstance().setProcessStartOfDriveDelegateCallback(args, callbackContext);
+            }
+        });
+        registerAction("setProcessEndOfDriveDelegateCallback", ExecutionPolicy.INLINE,
+                new ActionHandler() {
+            @Override
+            public void execute(JSONArray args, CallbackContext callbackContext)
+                    throws JSONException {
+                ZendriveManager.getSharedInstance().setProcessEndOfDriveDelegateCallback(args, callbackContext);
+            }
+        });
+        registerDelegateCallbackAction("setProcessResumeOfDriveDelegateCallback",
+                ZendriveEventType.DRIVE_RESUME);
+        registerDelegateCallbackAction("setProcessAccidentDetectedDelegateCallback",
+                ZendriveEventType.ACCIDENT);
+        registerDelegateCallbackAction("setProcessLocationPermissionsChangeDelegateCallback",
+                ZendriveEventType.LOCATION_PERMISSIONS_CHANGE);
+        registerDelegateCallbackAction("setProcessLocationSettingsChangeDelegateCallback",
+                ZendriveEventType.LOCATION_SETTINGS_CHANGE);
+        registerAction("setActiveDriveInfoUpdateCallback", ExecutionPolicy.INLINE,
+                new ActionHandler() {
+            @Override
+            public void execute(JSONArray args, CallbackContext callbackContext)
+                    throws JSONException {
+                ZendriveManager.getSharedInstance().setActiveDriveInfoUpdateCallback(args, callbackContext);
+            }
+        });
+        registerAction("subscribe", ExecutionPolicy.INLINE, new ActionHandler() {
+            @Override
+            public void execute(JSONArray args, CallbackContext callbackContext)
+                    throws JSONException {
+                ZendriveManager.getSharedInstance().subscribe(args, callbackContext);
+            }
+        });
+        registerAction("unsubscribe", ExecutionPolicy.INLINE, new ActionHandler() {
+            @Override
+            public void execute(JSONArray args, CallbackContext callbackContext)
+                    throws JSONException {
+                ZendriveManager.getSharedInstance().unsubscribe(args, callbackContext);
+            }
+        });
+        registerAction("setEventBatchingOptions", ExecutionPolicy.INLINE, new ActionHandler() {
+            @Override
+            public void execute(JSONArray args, CallbackContext callbackContext)
+                    throws JSONException {
+                ZendriveManager.getSharedInstance().setEventBatchingOptions(args, callbackContext);
+            }
+        });
+        registerAction("getPluginMetrics", ExecutionPolicy.THREAD_POOL, new ActionHandler() {
+            @Override
+            public void execute(JSONArray args, CallbackContext callbackContext)
+                    throws JSONException {
+                getPluginMetrics(args, callbackContext);
+            }
+        });
+        registerAction("setDriveHistoryOptions", ExecutionPolicy.THREAD_POOL,
+                new ActionHandler() {
+            @Override
+            public void execute(JSONArray args, CallbackContext callbackContext)
+                    throws JSONException {
+                setDriveHistoryOptions(args, callbackContext);
+            }
+        });
+        registerAction("queryDriveHistory", ExecutionPolicy.THREAD_POOL, new ActionHandler() {
+            @Override
+            public void execute(JSONArray args, CallbackContext callbackContext)
+                    throws JSONException {
+                queryDriveHistory(args, callbackContext);
+            }
+        });
+        registerAction("getDriveHistoryWaypoints", ExecutionPolicy.THREAD_POOL,
+                new ActionHandler() {
+            @Override
+            public void execute(JSONArray args, CallbackContext callbackContext)
+                    throws JSONException {
+                getDriveHistoryWaypoints(args, callbackContext);
+            }
+        });
+    }
+
     @Override
-    public boolean execute(String action, JSONArray args, CallbackContext callbackContext)
-            throws JSONException {
-        if (action.equals("setup")) {
-            setup(args, callbackContext);
-            return true;
-        } else if (action.equals("teardown")) {
-            teardown(args, callbackContext);
-            return true;
-        } else if (action.equals("startDrive")) {
-            startDrive(args, callbackContext);
-            return true;
-        } else if (action.equals("getActiveDriveInfo")) {
-            getActiveDriveInfo(callbackContext);
-            return true;
-        } else if (action.equals("stopDrive")) {
-            stopDrive(args, callbackContext);
-            return true;
-        } else if (action.equals("startSession")) {
-            startSession(args, callbackContext);
-            return true;
-        } else if (action.equals("stopSession")) {
-            stopSession(args, callbackContext);
-            return true;
-        } else if (action.equals("setDriveDetectionMode")) {
-            setDriveDetectionMode(args, callbackContext);
-            return true;
-        } else if (action.equals("setProcessStartOfDriveDelegateCallback")) {
-            ZendriveManager.getSharedInstance().setProcessStartOfDriveDelegateCallback(args, callbackContext);
-            return true;
-        } else if (action.equals("setProcessEndOfDriveDelegateCallback")) {
-            ZendriveManager.getSharedInstance().setProcessEndOfDriveDelegateCallback(args, callbackContext);
+    public void initialize(CordovaInterface cordova, CordovaWebView webView) {
+        super.initialize(cordova, webView);
+        ZendriveManager.setApplicationContext(
+                cordova.getActivity().getApplicationContext());
+    }
+
+    @Override
+    public boolean execute(final String action, final JSONArray args,
+                           final CallbackContext callbackContext) throws JSONException {
+        final Action registeredAction = actions.get(action);
+        if (null == registeredAction) {
+            return false;
+        }
+        final long startedAtNanos = System.nanoTime();
+        if (registeredAction.executionPolicy == ExecutionPolicy.INLINE) {
+            boolean failed = true;
+            try {
+                registeredAction.handler.execute(args, callbackContext);
+                failed = false;
+            } finally {
+                metrics.recordAction(action, startedAtNanos, failed);
+            }
+        }
+        else if (registeredAction.executionPolicy == ExecutionPolicy.COMMAND_QUEUE) {
+            // The first argument of drive and session commands is their tracking or session id
+            commandQueue.enqueue(new ZendriveCommandQueue.Command(action, args.optString(0),
+                    callbackContext) {
+                @Override
+                void execute() throws JSONException {
+                    boolean failed = true;
+                    try {
+                        registeredAction.commandHandler.execute(args, this);
+                        failed = false;
+                    } finally {
+                        metrics.recordAction(action, startedAtNanos, failed);
+                    }
+                }
+            });
+        }
+        else {
+            cordova.getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean failed = !executeAsync(registeredAction.handler, args,
+                            callbackContext);
+                    metrics.recordAction(action, startedAtNanos, failed);
+                }
+            });
+        }
+        return true;
+    }
+
+    private void registerAction(String action, ExecutionPolicy executionPolicy,
+                                ActionHandler handler) {
+        actions.put(action, new Action(executionPolicy, handler, null));
+    }
+
+    private void registerCommand(String action, CommandHandler commandHandler) {
+        actions.put(action, new Action(ExecutionPolicy.COMMAND_QUEUE, null, commandHandler));
+    }
+
+    private void registerDelegateCallbackAction(String action,
+                                                final ZendriveEventType eventType) {
+        registerAction(action, ExecutionPolicy.INLINE, new ActionHandler() {
+            @Override
+            public void execute(JSONArray args, CallbackContext callbackContext)
+                    throws JSONException {
+                ZendriveManager.getSharedInstance().setDelegateCallback(
+                        eventType, args, callbackContext);
+            }
+        });
+    }
+
+    /**
+     * Runs an action off the bridge thread, reporting failures the way cordova does for
+     * exceptions thrown from execute. Returns false if the action failed.
+     */
+    private boolean executeAsync(ActionHandler handler, JSONArray args,
+                                 CallbackContext callbackContext) {
+        try {
+            handler.execute(args, callbackContext);
             return true;
+        } catch (JSONException e) {
+            callbackContext.sendPluginResult(
+                    new PluginResult(PluginResult.Status.JSON_EXCEPTION));
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Action failed", e);
+            // Some exceptions have no message, javascript always gets a description
+            callbackContext.error((null != e.getMessage()) ? e.getMessage() : e.toString());
         }
         return false;
     }
 
-    private void setup(JSONArray args, final CallbackContext callbackContext)
+    private void setup(JSONArray args, final ZendriveCommandQueue.Command command)
             throws JSONException {
         JSONObject configJsonObj = args.getJSONObject(0);
         if (configJsonObj == null) {
-            callbackContext.error("Wrong configuration supplied");
+            command.error("Wrong configuration supplied");
             return;
         }
 
-        String applicationKey = getApplicationKey(configJsonObj);
-        String driverId = getDriverId(configJsonObj);
-
-        Integer driveDetectionModeInt = null;
-        if (hasValidValueForKey(configJsonObj, kDriveDetectionModeKey)) {
-            driveDetectionModeInt = configJsonObj.getInt(kDriveDetectionModeKey);
-        }
-        else {
-            callbackContext.error("Wrong drive detection mode supplied");
+        if (!ZendriveSetup.hasDriveDetectionMode(configJsonObj)) {
+            command.error("Wrong drive detection mode supplied");
             return;
         }
 
-        ZendriveDriveDetectionMode mode = this.getDriveDetectionModeFromInt(driveDetectionModeInt);
-        ZendriveConfiguration configuration = new ZendriveConfiguration(applicationKey, driverId,
-                mode);
-
-        ZendriveDriverAttributes driverAttributes = this.getDriverAttrsFromJsonObject(configJsonObj);
-        if (driverAttributes != null) {
-            configuration.setDriverAttributes(driverAttributes);
-        }
-
         // setup Zendrive SDK
-        Zendrive.setup(
-                this.cordova.getActivity().getApplicationContext(),
-                configuration, ZendriveIntentService.class,
-                new ZendriveOperationCallback() {
+        ZendriveSetup.setup(
+                this.cordova.getActivity().getApplicationContext(), configJsonObj,
+                new ZendriveSetup.SetupCallback() {
                     @Override
-                    public void onCompletion(ZendriveOperationResult zendriveOperationResult) {
-                        if (zendriveOperationResult.isSuccess()) {
-                            callbackContext.success();
+                    public void onCompletion(boolean isSuccess) {
+                        if (isSuccess) {
+                            command.success();
                         } else {
-                            callbackContext.error("Zendrive setup failed");
+                            command.error("Zendrive setup failed");
                         }
                     }
                 });
     }
 
-    private void teardown(JSONArray args, final CallbackContext callbackContext)
+    private void teardown(JSONArray args, final ZendriveCommandQueue.Command command)
             throws JSONException {
         Zendrive.teardown(null);
-        ZendriveManager.getSharedInstance().teardown();
-        callbackContext.success();
+        ZendriveSetup.teardown(this.cordova.getActivity().getApplicationContext());
+        ZendriveManager.teardown();
+        command.success();
     }
 
-    private void startDrive(JSONArray args, final CallbackContext callbackContext)
+    private void startDrive(JSONArray args, final ZendriveCommandQueue.Command command)
             throws JSONException {
         Zendrive.startDrive(args.getString(0));
-        callbackContext.success();
+        ZendriveManager.getSharedInstance().invalidateActiveDriveInfo();
+        command.success();
     }
 
-    private void getActiveDriveInfo(final CallbackContext callbackContext)
-            throws JSONException {
-        JSONObject activeDriveInfoObject = ZendriveManager.getSharedInstance().getActiveDriveInfo();
+    private void getActiveDriveInfo(final CallbackContext callbackContext) {
+        ZendriveManager.ActiveDriveInfoSnapshot snapshot =
+                ZendriveManager.getSharedInstance().getCachedActiveDriveInfo();
+        if (null != snapshot) {
+            sendActiveDriveInfo(snapshot, callbackContext);
+            return;
+        }
+        // Querying the SDK is kept off the WebCore thread
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                sendActiveDriveInfo(
+                        ZendriveManager.getSharedInstance().getActiveDriveInfoSnapshot(),
+                        callbackContext);
+            }
+        });
+    }
+
+    private void sendActiveDriveInfo(ZendriveManager.ActiveDriveInfoSnapshot snapshot,
+                                     CallbackContext callbackContext) {
         PluginResult result;
-        if(activeDriveInfoObject!= null) {
-            result = new PluginResult(PluginResult.Status.OK, activeDriveInfoObject);
+        if(snapshot.encodedActiveDriveInfo != null) {
+            result = new ZendriveJsonPluginResult(PluginResult.Status.OK,
+                    snapshot.encodedActiveDriveInfo);
         } else {
             String resultStr = null;
             result = new PluginResult(PluginResult.Status.OK, resultStr);
@@ -133,159 +377,78 @@ public class ZendriveCordovaPlugin extends CordovaPlugin {
         result.setKeepCallback(false);
         callbackContext.sendPluginResult(result);
     }
-    private void stopDrive(JSONArray args, final CallbackContext callbackContext)
+
+    private void getPluginMetrics(JSONArray args, CallbackContext callbackContext)
             throws JSONException {
-        Zendrive.stopDrive(args.getString(0));
-        callbackContext.success();
+        ZendriveEventDispatcher eventDispatcher =
+                ZendriveManager.getSharedInstance().getEventDispatcher();
+        JSONObject metricsObject = metrics.toJSONObject(eventDispatcher);
+        if (args.optBoolean(0, false)) {
+            metrics.reset(eventDispatcher);
+        }
+        callbackContext.success(metricsObject);
     }
 
-    private void startSession(JSONArray args, final CallbackContext callbackContext)
+    private void setDriveHistoryOptions(JSONArray args, CallbackContext callbackContext)
             throws JSONException {
-        Zendrive.startSession(args.getString(0));
+        ZendriveManager.getDriveHistory().setOptions(args.getJSONObject(0));
         callbackContext.success();
     }
 
-    private void stopSession(JSONArray args, final CallbackContext callbackContext)
+    private void queryDriveHistory(JSONArray args, CallbackContext callbackContext)
             throws JSONException {
-        Zendrive.stopSession();
-        callbackContext.success();
+        String encodedPage = ZendriveManager.getDriveHistory().queryDrives(
+                args.optJSONObject(0));
+        callbackContext.sendPluginResult(
+                new ZendriveJsonPluginResult(PluginResult.Status.OK, encodedPage));
     }
 
-    private void setDriveDetectionMode(JSONArray args, final CallbackContext callbackContext)
+    private void getDriveHistoryWaypoints(JSONArray args, CallbackContext callbackContext)
             throws JSONException {
-        Integer driveDetectionModeInt = args.getInt(0);
-        if (driveDetectionModeInt == null) {
-            callbackContext.error("Invalid Zendrive drive detection mode");
+        long driveId = args.getLong(0);
+        String encodedWaypoints = ZendriveManager.getDriveHistory().getWaypoints(driveId);
+        if (null == encodedWaypoints) {
+            callbackContext.error("No drive with id " + driveId + " in drive history");
             return;
         }
-
-        ZendriveDriveDetectionMode mode = this.getDriveDetectionModeFromInt(driveDetectionModeInt);
-        Zendrive.setZendriveDriveDetectionMode(mode);
-        callbackContext.success();
+        callbackContext.sendPluginResult(
+                new ZendriveJsonPluginResult(PluginResult.Status.OK, encodedWaypoints));
     }
 
-    private ZendriveDriveDetectionMode getDriveDetectionModeFromInt(Integer driveDetectionModeInt) {
-        ZendriveDriveDetectionMode mode = driveDetectionModeInt == 1 ?
-                ZendriveDriveDetectionMode.AUTO_OFF : ZendriveDriveDetectionMode.AUTO_ON;
-        return mode;
-    }
-
-    private ZendriveDriverAttributes getDriverAttrsFromJsonObject(JSONObject configJsonObj)
+    private void stopDrive(JSONArray args, final ZendriveCommandQueue.Command command)
             throws JSONException {
-        Object driverAttributesObj = getObjectFromJSONObject(configJsonObj, kDriverAttributesKey);
-        ZendriveDriverAttributes driverAttributes = null;
-        if (null != driverAttributesObj && !JSONObject.NULL.equals(driverAttributesObj)) {
-            JSONObject driverAttrJsonObj = (JSONObject) driverAttributesObj;
-            driverAttributes = new ZendriveDriverAttributes();
-
-            Object firstName = getObjectFromJSONObject(driverAttrJsonObj, "firstName");
-            if (!isNull(firstName)) {
-                try {
-                    driverAttributes.setFirstName(firstName.toString());
-                }
-                catch (Exception e) {}
-            }
-
-            Object lastName = getObjectFromJSONObject(driverAttrJsonObj, "lastName");
-            if (!isNull(lastName)) {
-                try {
-                    driverAttributes.setLastName(lastName.toString());
-                }
-                catch (Exception e) {}
-            }
-
-            Object email = getObjectFromJSONObject(driverAttrJsonObj, "email");
-            if (!isNull(email)) {
-                try {
-                    driverAttributes.setEmail(email.toString());
-                }
-                catch (Exception e) {}
-            }
-
-            Object group = getObjectFromJSONObject(driverAttrJsonObj, "group");
-            if (!isNull(group)) {
-                try {
-                    driverAttributes.setGroup(group.toString());
-                }
-                catch (Exception e) {}
-            }
-
-            Object phoneNumber = getObjectFromJSONObject(driverAttrJsonObj, "phoneNumber");
-            if (!isNull(phoneNumber)) {
-                try {
-                    driverAttributes.setPhoneNumber(phoneNumber.toString());
-                }
-                catch (Exception e) {}
-            }
-
-            Object driverStartDateStr = getObjectFromJSONObject(driverAttrJsonObj, "driverStartDate");
-            if (!isNull(driverStartDateStr)) {
-                try {
-                    Long driverStartDateTimestampInMillis = Long.parseLong(driverStartDateStr.toString())*1000;
-                    Date driverStartDate = new Date(driverStartDateTimestampInMillis);
-                    driverAttributes.setDriverStartDate(driverStartDate);
-                }
-                catch (Exception e) {}
-
-            }
-
-            if (hasValidValueForKey(driverAttrJsonObj, kCustomAttributesKey)) {
-                JSONObject customAttrs = driverAttrJsonObj.getJSONObject(kCustomAttributesKey);
-                Iterator<?> keys = customAttrs.keys();
-                while( keys.hasNext() ) {
-                    String key = (String)keys.next();
-                    Object value = getObjectFromJSONObject(customAttrs, key);
-                    if (value instanceof String) {
-                        try {
-                            driverAttributes.setCustomAttribute(key, (String)value);
-                        }
-                        catch (Exception e) {}
-                    }
-                }
-            }
-        }
-
-        return driverAttributes;
-    }
-
-    // UTILITY METHODS
-    private Boolean isNull(Object object) {
-        return ((object == null) || JSONObject.NULL.equals(object));
+        Zendrive.stopDrive(args.getString(0));
+        ZendriveManager.getSharedInstance().invalidateActiveDriveInfo();
+        command.success();
     }
 
-    private Object getObjectFromJSONObject(JSONObject jsonObject, String key) throws JSONException {
-        if (hasValidValueForKey(jsonObject, key)) {
-            return jsonObject.get(key);
-        }
-        return null;
+    private void startSession(JSONArray args, final ZendriveCommandQueue.Command command)
+            throws JSONException {
+        Zendrive.startSession(args.getString(0));
+        ZendriveManager.getSharedInstance().invalidateActiveDriveInfo();
+        command.success();
     }
 
-    private Boolean hasValidValueForKey(JSONObject jsonObject, String key) {
-        return (jsonObject.has(key) && !jsonObject.isNull(key));
+    private void stopSession(JSONArray args, final ZendriveCommandQueue.Command command)
+            throws JSONException {
+        Zendrive.stopSession();
+        ZendriveManager.getSharedInstance().invalidateActiveDriveInfo();
+        command.success();
     }
 
-    private String getDriverId(JSONObject configJsonObj) throws JSONException {
-        Object driverIdObj = getObjectFromJSONObject(configJsonObj, "driverId");
-        String driverId = null;
-        if (!isNull(driverIdObj)) {
-            driverId = driverIdObj.toString();
+    private void setDriveDetectionMode(JSONArray args, final ZendriveCommandQueue.Command command)
+            throws JSONException {
+        Integer driveDetectionModeInt = args.getInt(0);
+        if (driveDetectionModeInt == null) {
+            command.error("Invalid Zendrive drive detection mode");
+            return;
         }
-        return driverId;
-    }
 
-    private String getApplicationKey(JSONObject configJsonObj) throws JSONException {
-        Object applicationKeyObj = getObjectFromJSONObject(configJsonObj, "applicationKey");
-        String applicationKey = null;
-        if (!isNull(applicationKeyObj)) {
-            applicationKey = applicationKeyObj.toString();
-        }
-        return applicationKey;
+        ZendriveDriveDetectionMode mode =
+                ZendriveSetup.getDriveDetectionModeFromInt(driveDetectionModeInt);
+        Zendrive.setZendriveDriveDetectionMode(mode);
+        ZendriveSetup.updateCachedDriveDetectionMode(
+                this.cordova.getActivity().getApplicationContext(), driveDetectionModeInt);
+        command.success();
     }
-
-    // ZendriveDriverAttributes dictionary keys
-    private static final String kCustomAttributesKey = "customAttributes";
-    private static final String kDriverAttributesKey = "driverAttributes";
-
-    private static final String kDriveDetectionModeKey = "driveDetectionMode";
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,307 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.DriveInfo;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Base64;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives completed on this device, kept so that javascript can page through past drives
+ * without holding them all in the webview. Drives are recorded from the end of drive event
+ * whether or not javascript is running, and their waypoints are only loaded when asked for.
+ *
+ * The history is disabled until javascript sets the maximum number of drives to keep. The
+ * setting is persisted since drives can end while the app runs in the background.
+ */
+final class ZendriveDriveHistory extends SQLiteOpenHelper {
+    private static final String TAG = "ZendriveDriveHistory";
+
+    private static final String kDatabaseName = "zendrive_drive_history.db";
+    private static final int kDatabaseVersion = 1;
+
+    private static final String kPreferencesName = "zendrive_drive_history";
+    private static final String kMaxDrivesPreference = "maxDrives";
+
+    // Waypoints are stored with the delta varint encoding at this precision
+    private static final int kWaypointPrecision = 6;
+    // Matches Zendrive.ZendriveWaypointEncoding.ZendriveWaypointEncodingDeltaVarint
+    private static final int kWaypointEncodingDeltaVarint = 2;
+
+    private static final int kDefaultPageSize = 20;
+    private static final int kMaxPageSize = 100;
+
+    // Table and columns
+    private static final String kDrivesTable = "drives";
+    private static final String kIdColumn = "id";
+    private static final String kStartTimestampColumn = "start_timestamp";
+    private static final String kEndTimestampColumn = "end_timestamp";
+    private static final String kTrackingIdColumn = "tracking_id";
+    private static final String kSessionIdColumn = "session_id";
+    private static final String kIsValidColumn = "is_valid";
+    private static final String kAverageSpeedColumn = "average_speed";
+    private static final String kDistanceColumn = "distance";
+    private static final String kWaypointsCountColumn = "waypoints_count";
+    private static final String kWaypointsColumn = "waypoints";
+
+    // Query and drive summary dictionary keys
+    private static final String kDriveIdKey = "driveId";
+    private static final String kStartTimestampKey = "startTimestamp";
+    private static final String kEndTimestampKey = "endTimestamp";
+    private static final String kTrackingIdKey = "trackingId";
+    private static final String kSessionIdKey = "sessionId";
+    private static final String kIsValidKey = "isValid";
+    private static final String kAverageSpeedKey = "averageSpeed";
+    private static final String kDistanceKey = "distance";
+    private static final String kWaypointsCountKey = "waypointsCount";
+    private static final String kLimitKey = "limit";
+    private static final String kPageTokenKey = "pageToken";
+    private static final String kNextPageTokenKey = "nextPageToken";
+    private static final String kDrivesKey = "drives";
+    private static final String kMaxDrivesKey = "maxDrives";
+    private static final String kWaypointsEncodingKey = "waypointsEncoding";
+    private static final String kWaypointsPrecisionKey = "waypointsPrecision";
+    private static final String kEncodedWaypointsKey = "encodedWaypoints";
+
+    private static final String kSummaryColumns = kIdColumn + ", " + kStartTimestampColumn +
+            ", " + kEndTimestampColumn + ", " + kTrackingIdColumn + ", " + kSessionIdColumn +
+            ", " + kIsValidColumn + ", " + kAverageSpeedColumn + ", " + kDistanceColumn + ", " +
+            kWaypointsCountColumn;
+
+    private final SharedPreferences preferences;
+    private volatile int maxDrives;
+
+    ZendriveDriveHistory(Context context) {
+        super(context, kDatabaseName, null, kDatabaseVersion);
+        preferences = context.getSharedPreferences(kPreferencesName, Context.MODE_PRIVATE);
+        maxDrives = preferences.getInt(kMaxDrivesPreference, 0);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + kDrivesTable + " (" +
+                kIdColumn + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                kStartTimestampColumn + " INTEGER NOT NULL, " +
+                kEndTimestampColumn + " INTEGER NOT NULL, " +
+                kTrackingIdColumn + " TEXT, " +
+                kSessionIdColumn + " TEXT, " +
+                kIsValidColumn + " INTEGER NOT NULL, " +
+                kAverageSpeedColumn + " REAL NOT NULL, " +
+                kDistanceColumn + " REAL NOT NULL, " +
+                kWaypointsCountColumn + " INTEGER NOT NULL, " +
+                kWaypointsColumn + " BLOB)");
+        db.execSQL("CREATE INDEX " + kDrivesTable + "_" + kStartTimestampColumn + " ON " +
+                kDrivesTable + " (" + kStartTimestampColumn + ", " + kIdColumn + ")");
+        db.execSQL("CREATE INDEX " + kDrivesTable + "_" + kEndTimestampColumn + " ON " +
+                kDrivesTable + " (" + kEndTimestampColumn + ")");
+        db.execSQL("CREATE INDEX " + kDrivesTable + "_" + kTrackingIdColumn + " ON " +
+                kDrivesTable + " (" + kTrackingIdColumn + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // There is a single version of the schema so far
+    }
+
+    /**
+     * options has maxDrives, the number of most recent drives to keep. Passing 0 disables the
+     * history and deletes all recorded drives.
+     */
+    synchronized void setOptions(JSONObject options) throws JSONException {
+        int newMaxDrives = Math.max(0, options.getInt(kMaxDrivesKey));
+        preferences.edit().putInt(kMaxDrivesPreference, newMaxDrives).apply();
+        maxDrives = newMaxDrives;
+        if (newMaxDrives == 0) {
+            getWritableDatabase().delete(kDrivesTable, null, null);
+        }
+        else {
+            deleteOldDrives(getWritableDatabase(), newMaxDrives);
+        }
+    }
+
+    /**
+     * Records a completed drive with all its waypoints. Failures are logged, the history must
+     * never keep a drive from being delivered.
+     */
+    synchronized void record(DriveInfo driveInfo) {
+        int currentMaxDrives = maxDrives;
+        if (currentMaxDrives <= 0) {
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(kStartTimestampColumn, driveInfo.startTimeMillis);
+        values.put(kEndTimestampColumn, driveInfo.endTimeMillis);
+        values.put(kTrackingIdColumn, driveInfo.trackingId);
+        values.put(kSessionIdColumn, driveInfo.sessionId);
+        values.put(kIsValidColumn, driveInfo.isValid);
+        values.put(kAverageSpeedColumn, driveInfo.averageSpeed);
+        values.put(kDistanceColumn, driveInfo.distanceMeters);
+        values.put(kWaypointsCountColumn,
+                (null != driveInfo.waypoints) ? driveInfo.waypoints.size() : 0);
+        values.put(kWaypointsColumn,
+                WaypointEncoder.encodeDeltaVarintBytes(driveInfo.waypoints, kWaypointPrecision));
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.insert(kDrivesTable, null, values);
+                deleteOldDrives(db, currentMaxDrives);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "Failed to record drive", e);
+        }
+    }
+
+    /**
+     * Returns a page of drive summaries, most recent first, as JSON of the form
+     * {"drives": [...], "nextPageToken": ...}. Drives are filtered by the optional
+     * startTimestamp, endTimestamp and trackingId of query. The next page is requested by
+     * passing nextPageToken as the pageToken of the same query, it is null on the last page.
+     */
+    String queryDrives(JSONObject query) throws JSONException {
+        StringBuilder selection = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<String>();
+        int limit = kDefaultPageSize;
+        if (null != query) {
+            if (query.has(kStartTimestampKey) && !query.isNull(kStartTimestampKey)) {
+                appendCondition(selection, kStartTimestampColumn + " >= ?");
+                selectionArgs.add(Long.toString(query.getLong(kStartTimestampKey)));
+            }
+            if (query.has(kEndTimestampKey) && !query.isNull(kEndTimestampKey)) {
+                appendCondition(selection, kEndTimestampColumn + " <= ?");
+                selectionArgs.add(Long.toString(query.getLong(kEndTimestampKey)));
+            }
+            if (query.has(kTrackingIdKey) && !query.isNull(kTrackingIdKey)) {
+                appendCondition(selection, kTrackingIdColumn + " = ?");
+                selectionArgs.add(query.getString(kTrackingIdKey));
+            }
+            if (query.has(kPageTokenKey) && !query.isNull(kPageTokenKey)) {
+                // Keyset pagination, the token is the start timestamp and id of the last drive
+                // of the previous page
+                long[] pageToken = parsePageToken(query.getString(kPageTokenKey));
+                appendCondition(selection, "(" + kStartTimestampColumn + " < ? OR (" +
+                        kStartTimestampColumn + " = ? AND " + kIdColumn + " < ?))");
+                selectionArgs.add(Long.toString(pageToken[0]));
+                selectionArgs.add(Long.toString(pageToken[0]));
+                selectionArgs.add(Long.toString(pageToken[1]));
+            }
+            limit = Math.max(1, Math.min(kMaxPageSize, query.optInt(kLimitKey, kDefaultPageSize)));
+        }
+
+        String sql = "SELECT " + kSummaryColumns + " FROM " + kDrivesTable +
+                ((selection.length() > 0) ? " WHERE " + selection : "") +
+                " ORDER BY " + kStartTimestampColumn + " DESC, " + kIdColumn + " DESC" +
+                // One more row than needed tells whether there is a next page
+                " LIMIT " + (limit + 1);
+
+        ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+        writer.beginObject().key(kDrivesKey).beginArray();
+        String nextPageToken = null;
+        Cursor cursor = getReadableDatabase().rawQuery(sql,
+                selectionArgs.toArray(new String[selectionArgs.size()]));
+        try {
+            int count = 0;
+            long lastStartTimestamp = 0;
+            long lastId = 0;
+            while (cursor.moveToNext()) {
+                if (count == limit) {
+                    nextPageToken = lastStartTimestamp + ":" + lastId;
+                    break;
+                }
+                writeDriveSummary(writer, cursor);
+                lastId = cursor.getLong(0);
+                lastStartTimestamp = cursor.getLong(1);
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        writer.endArray();
+        writer.key(kNextPageTokenKey).value(nextPageToken);
+        writer.endObject();
+        return writer.toString();
+    }
+
+    /**
+     * Returns the waypoints of a drive as JSON with the delta varint encoding, null if there is
+     * no such drive.
+     */
+    String getWaypoints(long driveId) {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + kWaypointsColumn +
+                " FROM " + kDrivesTable + " WHERE " + kIdColumn + " = ?",
+                new String[] { Long.toString(driveId) });
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            byte[] waypoints = cursor.isNull(0) ? new byte[0] : cursor.getBlob(0);
+            ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+            writer.beginObject();
+            writer.key(kDriveIdKey).value(driveId);
+            writer.key(kWaypointsEncodingKey).value(kWaypointEncodingDeltaVarint);
+            writer.key(kWaypointsPrecisionKey).value(kWaypointPrecision);
+            writer.key(kEncodedWaypointsKey).value(
+                    Base64.encodeToString(waypoints, Base64.NO_WRAP));
+            writer.endObject();
+            return writer.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void writeDriveSummary(ZendriveJsonWriter writer, Cursor cursor)
+            throws JSONException {
+        writer.beginObject();
+        writer.key(kDriveIdKey).value(cursor.getLong(0));
+        writer.key(kStartTimestampKey).value(cursor.getLong(1));
+        writer.key(kEndTimestampKey).value(cursor.getLong(2));
+        writer.key(kTrackingIdKey).value(cursor.isNull(3) ? null : cursor.getString(3));
+        writer.key(kSessionIdKey).value(cursor.isNull(4) ? null : cursor.getString(4));
+        writer.key(kIsValidKey).value(cursor.getInt(5) != 0);
+        writer.key(kAverageSpeedKey).value(cursor.getDouble(6));
+        writer.key(kDistanceKey).value(cursor.getDouble(7));
+        writer.key(kWaypointsCountKey).value(cursor.getInt(8));
+        writer.endObject();
+    }
+
+    private static void deleteOldDrives(SQLiteDatabase db, int maxDrives) {
+        // Ids increase with insertion, so the most recently recorded drives are kept
+        db.execSQL("DELETE FROM " + kDrivesTable + " WHERE " + kIdColumn + " <= (SELECT " +
+                kIdColumn + " FROM " + kDrivesTable + " ORDER BY " + kIdColumn +
+                " DESC LIMIT 1 OFFSET " + maxDrives + ")");
+    }
+
+    private static long[] parsePageToken(String pageToken) {
+        String[] fields = pageToken.split(":");
+        try {
+            if (fields.length == 2) {
+                return new long[] { Long.parseLong(fields[0]), Long.parseLong(fields[1]) };
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid page token: " + pageToken);
+    }
+
+    private static void appendCondition(StringBuilder selection, String condition) {
+        if (selection.length() > 0) {
+            selection.append(" AND ");
+        }
+        selection.append(condition);
+    }
+}
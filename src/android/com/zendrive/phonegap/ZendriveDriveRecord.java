@@ -0,0 +1,109 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.DriveInfo;
+import com.zendrive.sdk.LocationPoint;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * A completed drive as sent to the end of drive callback, either received from the SDK or
+ * read back from the event journal.
+ *
+ * Drives are journaled in a compact form, with the waypoints delta varint encoded, rather than
+ * as the payload sent to javascript. A replayed drive is then sent with the end of drive
+ * options in force when it is replayed, not those in force when it was journaled.
+ */
+final class ZendriveDriveRecord {
+
+    // Journaled drive dictionary keys
+    private static final String kStartTimestampKey = "startTimestamp";
+    private static final String kEndTimestampKey = "endTimestamp";
+    private static final String kIsValidKey = "isValid";
+    private static final String kAverageSpeedKey = "averageSpeed";
+    private static final String kDistanceKey = "distance";
+    private static final String kTrackingIdKey = "trackingId";
+    private static final String kSessionIdKey = "sessionId";
+    private static final String kEncodedWaypointsKey = "encodedWaypoints";
+
+    // Journaled waypoints are kept within a millimetre of the recorded location
+    private static final int kWaypointPrecision = 9;
+
+    final long startTimeMillis;
+    final long endTimeMillis;
+    final boolean isValid;
+    final double averageSpeed;
+    final double distanceMeters;
+    final String trackingId;
+    final String sessionId;
+    final List<LocationPoint> waypoints;
+
+    private ZendriveDriveRecord(long startTimeMillis, long endTimeMillis, boolean isValid,
+                                double averageSpeed, double distanceMeters, String trackingId,
+                                String sessionId, List<LocationPoint> waypoints) {
+        this.startTimeMillis = startTimeMillis;
+        this.endTimeMillis = endTimeMillis;
+        this.isValid = isValid;
+        this.averageSpeed = averageSpeed;
+        this.distanceMeters = distanceMeters;
+        this.trackingId = trackingId;
+        this.sessionId = sessionId;
+        this.waypoints = waypoints;
+    }
+
+    static ZendriveDriveRecord fromDriveInfo(DriveInfo driveInfo) {
+        return new ZendriveDriveRecord(driveInfo.startTimeMillis, driveInfo.endTimeMillis,
+                driveInfo.isValid, driveInfo.averageSpeed, driveInfo.distanceMeters,
+                driveInfo.trackingId, driveInfo.sessionId, driveInfo.waypoints);
+    }
+
+    /**
+     * Returns the journaled form of the drive.
+     */
+    String encode() throws JSONException {
+        ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+        writer.beginObject();
+        writer.key(kStartTimestampKey).value(startTimeMillis);
+        writer.key(kEndTimestampKey).value(endTimeMillis);
+        writer.key(kIsValidKey).value(isValid);
+        writer.key(kAverageSpeedKey).value(averageSpeed);
+        writer.key(kDistanceKey).value(distanceMeters);
+        writer.key(kTrackingIdKey).value(trackingId);
+        writer.key(kSessionIdKey).value(sessionId);
+        if (null != waypoints) {
+            writer.key(kEncodedWaypointsKey).value(
+                    WaypointEncoder.encodeDeltaVarint(waypoints, kWaypointPrecision));
+        }
+        writer.endObject();
+        return writer.toString();
+    }
+
+    /**
+     * Reads a drive written by encode.
+     */
+    static ZendriveDriveRecord decode(String encoded) throws JSONException {
+        JSONObject recordObject = new JSONObject(encoded);
+        List<LocationPoint> waypoints = null;
+        String encodedWaypoints = recordObject.optString(kEncodedWaypointsKey, null);
+        if (null != encodedWaypoints) {
+            try {
+                waypoints = WaypointEncoder.decodeDeltaVarint(encodedWaypoints,
+                        kWaypointPrecision);
+            } catch (IllegalArgumentException e) {
+                throw new JSONException("Invalid journaled waypoints: " + e.getMessage());
+            }
+        }
+        return new ZendriveDriveRecord(recordObject.getLong(kStartTimestampKey),
+                recordObject.getLong(kEndTimestampKey),
+                recordObject.getBoolean(kIsValidKey),
+                recordObject.getDouble(kAverageSpeedKey),
+                recordObject.getDouble(kDistanceKey),
+                recordObject.isNull(kTrackingIdKey) ? null :
+                        recordObject.getString(kTrackingIdKey),
+                recordObject.isNull(kSessionIdKey) ? null :
+                        recordObject.getString(kSessionIdKey),
+                waypoints);
+    }
+}
@@ -0,0 +1,160 @@
+package com.zendrive.phonegap;
+
+import org.apache.cordova.CallbackContext;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces events sent to a callback into a single array result so that bursts of
+ * events cost one round trip over the cordova bridge. A batch is flushed when it reaches the
+ * maximum batch size or when the flush interval has elapsed since its first event.
+ *
+ * Flushes are run on the event dispatcher so that batches are sent from the same thread as
+ * all other events. setOptions and shutdown flush pending batches, so they must be called on
+ * the event dispatcher as well.
+ */
+final class ZendriveEventBatcher {
+
+    interface BatchSink {
+        void sendBatch(CallbackContext callbackContext, ZendriveEventType eventType,
+                       List<String> encodedEvents);
+    }
+
+    private static final class Batch {
+        final CallbackContext callbackContext;
+        final List<String> encodedEvents = new ArrayList<String>();
+
+        Batch(CallbackContext callbackContext) {
+            this.callbackContext = callbackContext;
+        }
+    }
+
+    private final ZendriveEventDispatcher eventDispatcher;
+    private final BatchSink sink;
+    private final Map<ZendriveEventType, Batch> batches =
+            new EnumMap<ZendriveEventType, Batch>(ZendriveEventType.class);
+
+    private ScheduledExecutorService flushScheduler;
+    private long flushIntervalMillis;
+    private int maxBatchSize;
+
+    ZendriveEventBatcher(ZendriveEventDispatcher eventDispatcher, BatchSink sink) {
+        this.eventDispatcher = eventDispatcher;
+        this.sink = sink;
+    }
+
+    /**
+     * Batching is disabled if flushIntervalMillis is not positive or maxBatchSize is less
+     * than 2. Pending batches are flushed before the new options take effect.
+     */
+    synchronized void setOptions(long flushIntervalMillis, int maxBatchSize) {
+        flushAll();
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxBatchSize = maxBatchSize;
+        if (!isEnabled() && null != flushScheduler) {
+            flushScheduler.shutdown();
+            flushScheduler = null;
+        }
+    }
+
+    private boolean isEnabled() {
+        return flushIntervalMillis > 0 && maxBatchSize > 1;
+    }
+
+    /**
+     * Adds the event to the batch of its type if batching is enabled. Returns false if batching
+     * is disabled, in which case the caller sends the event right away.
+     */
+    synchronized boolean addIfEnabled(CallbackContext callbackContext,
+                                      final ZendriveEventType eventType, String encodedEvent) {
+        if (!isEnabled()) {
+            return false;
+        }
+        Batch batch = batches.get(eventType);
+        if (null != batch && batch.callbackContext != callbackContext) {
+            // Callback was replaced, events batched so far belong to the old callback
+            flush(eventType, batch);
+            batch = null;
+        }
+        if (null == batch) {
+            batch = new Batch(callbackContext);
+            batches.put(eventType, batch);
+            scheduleFlush(eventType, batch);
+        }
+        batch.encodedEvents.add(encodedEvent);
+        if (batch.encodedEvents.size() >= maxBatchSize) {
+            flush(eventType, batch);
+        }
+        return true;
+    }
+
+    synchronized void flushAll() {
+        List<ZendriveEventType> eventTypes = new ArrayList<ZendriveEventType>(batches.keySet());
+        for (ZendriveEventType eventType : eventTypes) {
+            flush(eventType, batches.get(eventType));
+        }
+    }
+
+    /**
+     * Flushes pending batches and disables batching, events added afterwards are sent right
+     * away.
+     */
+    synchronized void shutdown() {
+        flushAll();
+        flushIntervalMillis = 0;
+        maxBatchSize = 0;
+        if (null != flushScheduler) {
+            flushScheduler.shutdown();
+            flushScheduler = null;
+        }
+    }
+
+    private void scheduleFlush(final ZendriveEventType eventType, final Batch batch) {
+        if (null == flushScheduler) {
+            flushScheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        flushScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                boolean isDispatched = eventDispatcher.dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushIfPending(eventType, batch);
+                    }
+                });
+                if (!isDispatched && !eventDispatcher.isShutdown()) {
+                    rescheduleFlushIfPending(eventType, batch);
+                }
+            }
+        }, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tries the flush again later when the event queue was full.
+     */
+    private synchronized void rescheduleFlushIfPending(ZendriveEventType eventType, Batch batch) {
+        if (batches.get(eventType) == batch && null != flushScheduler) {
+            scheduleFlush(eventType, batch);
+        }
+    }
+
+    private synchronized void flushIfPending(ZendriveEventType eventType, Batch batch) {
+        // The batch may already have been flushed because it got full
+        if (batches.get(eventType) == batch) {
+            flush(eventType, batch);
+        }
+    }
+
+    private void flush(ZendriveEventType eventType, Batch batch) {
+        batches.remove(eventType);
+        if (!batch.encodedEvents.isEmpty()) {
+            sink.sendBatch(batch.callbackContext, eventType, batch.encodedEvents);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.zendrive.phonegap;
+
+import android.util.Log;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single worker thread on which SDK event objects are converted to plugin results and sent
+ * to javascript. This keeps JSON construction for long drives off the thread on which the
+ * SDK delivers events.
+ *
+ * The queue of pending events is bounded. When it is full an SDK thread submitting an event
+ * waits for space, which preserves event order and throttles the producer, but for at most
+ * kMaxQueueWaitMillis, after which dispatch returns false. The cordova bridge thread never
+ * waits: its tasks are queued from a background thread once there is space.
+ *
+ * Once the dispatcher is shut down, dispatch refuses new tasks and returns false, so that the
+ * caller can hand the event to another manager instead of losing it. isShutdown tells the two
+ * cases apart.
+ */
+final class ZendriveEventDispatcher {
+    private static final String TAG = "ZendriveEventDispatcher";
+
+    private static final int kMaxPendingEvents = 64;
+    private static final long kIdleThreadTimeoutSeconds = 30;
+    // Longest time an SDK thread waits for space in a full queue
+    static final long kMaxQueueWaitMillis = 2000;
+
+    private final ThreadPoolExecutor executor;
+    // Queues the tasks of the bridge thread which did not fit in the queue, in order
+    private final ThreadPoolExecutor deferredDispatcher;
+    private final AtomicInteger deferredCount = new AtomicInteger();
+
+    // Metrics
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+
+    ZendriveEventDispatcher() {
+        executor = new ThreadPoolExecutor(1, 1, kIdleThreadTimeoutSeconds, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(kMaxPendingEvents),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, TAG);
+                    }
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        deferredDispatcher = new ThreadPoolExecutor(1, 1, kIdleThreadTimeoutSeconds,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, TAG + "-deferred");
+                    }
+                });
+        deferredDispatcher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues task, waiting at most kMaxQueueWaitMillis if the queue is full. Returns false if
+     * the task was not queued because the dispatcher is shut down or the queue stayed full.
+     */
+    boolean dispatch(Runnable task) {
+        return dispatch(task, kMaxQueueWaitMillis);
+    }
+
+    /**
+     * Queues task without making the caller wait, for the cordova bridge thread. If the queue
+     * is full, task is queued from a background thread once there is space, and may then run
+     * after events submitted in the meantime. If the dispatcher is shut down before task is
+     * queued, ifShutdown is run instead, if not null, on the background thread once the tasks
+     * queued before shutdown have run.
+     */
+    void dispatchWithoutWaiting(final Runnable task, final Runnable ifShutdown) {
+        // Tasks deferred earlier are queued first, so that bridge calls keep their order
+        if (0 == deferredCount.get() && dispatch(task, 0)) {
+            return;
+        }
+        if (!executor.isShutdown()) {
+            Log.w(TAG, "Event queue full, queueing a task of the bridge thread in the background");
+        }
+        deferredCount.incrementAndGet();
+        deferredDispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!dispatch(task)) {
+                        if (executor.isShutdown()) {
+                            awaitTermination();
+                            runIfNotNull(ifShutdown);
+                            return;
+                        }
+                    }
+                } finally {
+                    deferredCount.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    private boolean dispatch(Runnable task, long maxWaitMillis) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (!queueWhenFull(task, maxWaitMillis)) {
+                return false;
+            }
+        }
+        dispatchedCount.incrementAndGet();
+
+        int queueDepth = executor.getQueue().size();
+        int currentMax = maxQueueDepth.get();
+        while (queueDepth > currentMax && !maxQueueDepth.compareAndSet(currentMax, queueDepth)) {
+            currentMax = maxQueueDepth.get();
+        }
+        return true;
+    }
+
+    boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Lets already queued events get delivered and stops the worker thread.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Waits for events queued before shutdown to be delivered. Returns false on timeout.
+     */
+    boolean awaitTermination(long timeoutMillis) {
+        try {
+            return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void awaitTermination() {
+        boolean isInterrupted = false;
+        while (true) {
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                break;
+            } catch (InterruptedException e) {
+                isInterrupted = true;
+            }
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    void resetMetrics() {
+        maxQueueDepth.set(0);
+        dispatchedCount.set(0);
+        throttledCount.set(0);
+    }
+
+    private static void runIfNotNull(Runnable runnable) {
+        if (null != runnable) {
+            runnable.run();
+        }
+    }
+
+    private boolean queueWhenFull(Runnable task, long maxWaitMillis) {
+        if (executor.isShutdown()) {
+            return false;
+        }
+        throttledCount.incrementAndGet();
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        // Interrupts are deferred until the wait is over, so that the event is not given up
+        // earlier than the caller asked
+        boolean isInterrupted = false;
+        boolean isQueued;
+        while (true) {
+            try {
+                isQueued = queue.offer(task, deadlineNanos - System.nanoTime(),
+                        TimeUnit.NANOSECONDS);
+                break;
+            } catch (InterruptedException e) {
+                isInterrupted = true;
+            }
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (!isQueued) {
+            Log.w(TAG, "Event queue still full after " + maxWaitMillis + " ms");
+            return false;
+        }
+        // The worker may have drained the queue and exited while this thread was waiting
+        if (executor.isShutdown()) {
+            if (queue.remove(task)) {
+                return false;
+            }
+        }
+        else {
+            executor.prestartCoreThread();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,344 @@
+package com.zendrive.phonegap;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append only journal of serialized events which could not be delivered to javascript
+ * because no callback was registered for them, for example when the app process is started
+ * in the background by the SDK. The events are replayed once javascript registers a callback.
+ *
+ * Each record is one line of the form "eventType\tlength\tcrc\tpayload", where length is the
+ * size of the payload in UTF-8 bytes and crc its CRC-32 in hexadecimal. Records which were
+ * partially written or damaged are detected with these and skipped, without parsing payloads.
+ * Records are flushed to the OS on every append so they survive the process being killed, and
+ * synced to disk in batches.
+ */
+final class ZendriveEventJournal {
+    private static final String TAG = "ZendriveEventJournal";
+
+    private static final String kJournalFileName = "zendrive_event_journal";
+    private static final String kCompactionFileName = "zendrive_event_journal.tmp";
+    private static final Charset kCharset = Charset.forName("UTF-8");
+    private static final char kFieldSeparator = '\t';
+
+    private static final int kSyncBatchSize = 8;
+    // When the journal grows beyond the maximum size, the oldest records are dropped so
+    // that the journal is brought down to half of it. The newest record is always kept.
+    private static final long kMaxJournalBytes = 4 * 1024 * 1024;
+
+    /**
+     * Records of one event type returned by drain, removed from the journal by commit.
+     */
+    static final class Drain {
+        final String eventType;
+        final List<String> payloads = new ArrayList<String>();
+        // End of the journaled bytes the drain read, moved when the journal is compacted
+        private long endOffset;
+
+        private Drain(String eventType, long endOffset) {
+            this.eventType = eventType;
+            this.endOffset = endOffset;
+        }
+    }
+
+    private static final class Record {
+        final long offset;
+        // In bytes, without the line separator
+        final int length;
+        final String eventType;
+        final String payload;
+
+        Record(long offset, int length, String eventType, String payload) {
+            this.offset = offset;
+            this.length = length;
+            this.eventType = eventType;
+            this.payload = payload;
+        }
+
+        boolean isOfType(String eventType) {
+            return this.eventType.equals(eventType);
+        }
+    }
+
+    private final File journalFile;
+    private final File compactionFile;
+
+    private final List<Drain> pendingDrains = new ArrayList<Drain>();
+
+    private FileOutputStream outputStream;
+    private int unsyncedRecords;
+
+    ZendriveEventJournal(File directory) {
+        this.journalFile = new File(directory, kJournalFileName);
+        this.compactionFile = new File(directory, kCompactionFileName);
+    }
+
+    synchronized void append(String eventType, String payload) {
+        try {
+            if (null == outputStream) {
+                // A record torn by the process dying must not swallow the next one
+                boolean isTornTail = endsWithTornRecord();
+                outputStream = new FileOutputStream(journalFile, true);
+                if (isTornTail) {
+                    outputStream.write('\n');
+                }
+            }
+            outputStream.write(encodeRecord(eventType, payload));
+
+            unsyncedRecords++;
+            if (unsyncedRecords >= kSyncBatchSize) {
+                sync();
+            }
+            if (journalFile.length() > kMaxJournalBytes) {
+                compact(null);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to journal " + eventType + " event", e);
+            close();
+        }
+    }
+
+    /**
+     * Returns the payloads of the journaled records of the given event type, in the order in
+     * which they were appended. The records stay in the journal until the drain is committed
+     * once they were delivered, so that they are replayed again rather than lost if the process
+     * dies meanwhile. Records of a drain which is still pending are not returned again.
+     */
+    synchronized Drain drain(String eventType) {
+        long startOffset = 0;
+        for (Drain pendingDrain : pendingDrains) {
+            if (pendingDrain.eventType.equals(eventType)) {
+                startOffset = Math.max(startOffset, pendingDrain.endOffset);
+            }
+        }
+        Drain drain = new Drain(eventType, startOffset);
+        if (!journalFile.exists()) {
+            return drain;
+        }
+        try {
+            byte[] journalBytes = readJournal();
+            for (Record record : readRecords(journalBytes)) {
+                if (record.offset >= startOffset && record.isOfType(eventType)) {
+                    drain.payloads.add(record.payload);
+                }
+            }
+            drain.endOffset = journalBytes.length;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read journaled " + eventType + " events", e);
+        }
+        if (!drain.payloads.isEmpty()) {
+            pendingDrains.add(drain);
+        }
+        return drain;
+    }
+
+    /**
+     * Removes the records returned by drain from the journal.
+     */
+    synchronized void commit(Drain drain) {
+        if (!pendingDrains.remove(drain)) {
+            return;
+        }
+        try {
+            compact(drain);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to remove replayed " + drain.eventType + " events", e);
+        }
+    }
+
+    /**
+     * Gives up a drain which was not committed, its records are returned by the next drain.
+     * Does nothing if the drain was committed.
+     */
+    synchronized void release(Drain drain) {
+        pendingDrains.remove(drain);
+    }
+
+    synchronized void close() {
+        if (null == outputStream) {
+            return;
+        }
+        try {
+            sync();
+            outputStream.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close journal", e);
+        }
+        outputStream = null;
+    }
+
+    private void sync() throws IOException {
+        if (null != outputStream && unsyncedRecords > 0) {
+            outputStream.getFD().sync();
+        }
+        unsyncedRecords = 0;
+    }
+
+    /**
+     * Rewrites the journal without the records of committedDrain, if not null, and without the
+     * oldest records if the journal is over its size limit. The offsets of pending drains are
+     * moved to match the rewritten journal.
+     */
+    private void compact(Drain committedDrain) throws IOException {
+        close();
+
+        byte[] journalBytes = readJournal();
+        List<Record> keptRecords = new ArrayList<Record>();
+        long keptBytes = 0;
+        for (Record record : readRecords(journalBytes)) {
+            if (null != committedDrain && record.offset < committedDrain.endOffset &&
+                    record.isOfType(committedDrain.eventType)) {
+                continue;
+            }
+            keptRecords.add(record);
+            keptBytes += record.length + 1;
+        }
+
+        int firstKeptRecord = 0;
+        while (keptBytes > kMaxJournalBytes / 2 && firstKeptRecord < keptRecords.size() - 1) {
+            keptBytes -= keptRecords.get(firstKeptRecord).length + 1;
+            firstKeptRecord++;
+        }
+        if (firstKeptRecord > 0) {
+            Log.w(TAG, "Journal full, dropping " + firstKeptRecord + " oldest events");
+        }
+        keptRecords = keptRecords.subList(firstKeptRecord, keptRecords.size());
+
+        for (Drain pendingDrain : pendingDrains) {
+            long endOffset = 0;
+            for (Record record : keptRecords) {
+                if (record.offset >= pendingDrain.endOffset) {
+                    break;
+                }
+                endOffset += record.length + 1;
+            }
+            pendingDrain.endOffset = endOffset;
+        }
+
+        if (keptRecords.isEmpty()) {
+            if (!journalFile.delete()) {
+                Log.w(TAG, "Failed to delete journal");
+            }
+            return;
+        }
+
+        FileOutputStream compactionStream = new FileOutputStream(compactionFile, false);
+        try {
+            BufferedOutputStream compactionOutput = new BufferedOutputStream(compactionStream);
+            for (Record record : keptRecords) {
+                compactionOutput.write(journalBytes, (int) record.offset, record.length);
+                compactionOutput.write('\n');
+            }
+            compactionOutput.flush();
+            compactionStream.getFD().sync();
+        } finally {
+            compactionStream.close();
+        }
+        if (!compactionFile.renameTo(journalFile)) {
+            throw new IOException("Failed to replace journal with compacted journal");
+        }
+    }
+
+    private byte[] readJournal() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(journalFile, "r");
+        try {
+            byte[] journalBytes = new byte[(int) file.length()];
+            file.readFully(journalBytes);
+            return journalBytes;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Splits the journal into records, skipping damaged ones. Offsets and lengths are in
+     * bytes, since records are measured in UTF-8 bytes like the journal file.
+     */
+    private static List<Record> readRecords(byte[] journalBytes) {
+        List<Record> records = new ArrayList<Record>();
+        int recordStart = 0;
+        while (recordStart < journalBytes.length) {
+            int recordEnd = recordStart;
+            while (recordEnd < journalBytes.length && journalBytes[recordEnd] != '\n') {
+                recordEnd++;
+            }
+            String line = new String(journalBytes, recordStart, recordEnd - recordStart,
+                    kCharset);
+            String payload = decodePayload(line);
+            if (null != payload) {
+                records.add(new Record(recordStart, recordEnd - recordStart,
+                        line.substring(0, line.indexOf(kFieldSeparator)), payload));
+            }
+            else if (recordEnd > recordStart) {
+                Log.w(TAG, "Skipping damaged journal record");
+            }
+            recordStart = recordEnd + 1;
+        }
+        return records;
+    }
+
+    private static byte[] encodeRecord(String eventType, String payload) {
+        byte[] payloadBytes = payload.getBytes(kCharset);
+        CRC32 crc = new CRC32();
+        crc.update(payloadBytes, 0, payloadBytes.length);
+        byte[] headerBytes = (eventType + kFieldSeparator + payloadBytes.length +
+                kFieldSeparator + Long.toHexString(crc.getValue()) + kFieldSeparator)
+                .getBytes(kCharset);
+
+        byte[] recordBytes = new byte[headerBytes.length + payloadBytes.length + 1];
+        System.arraycopy(headerBytes, 0, recordBytes, 0, headerBytes.length);
+        System.arraycopy(payloadBytes, 0, recordBytes, headerBytes.length, payloadBytes.length);
+        recordBytes[recordBytes.length - 1] = '\n';
+        return recordBytes;
+    }
+
+    /**
+     * Returns the payload of a record line, null if the record is damaged.
+     */
+    private static String decodePayload(String record) {
+        int typeEnd = record.indexOf(kFieldSeparator);
+        int lengthEnd = (typeEnd > 0) ? record.indexOf(kFieldSeparator, typeEnd + 1) : -1;
+        int crcEnd = (lengthEnd > 0) ? record.indexOf(kFieldSeparator, lengthEnd + 1) : -1;
+        if (crcEnd < 0) {
+            return null;
+        }
+        String payload = record.substring(crcEnd + 1);
+        try {
+            int length = Integer.parseInt(record.substring(typeEnd + 1, lengthEnd));
+            long expectedCrc = Long.parseLong(record.substring(lengthEnd + 1, crcEnd), 16);
+            byte[] payloadBytes = payload.getBytes(kCharset);
+            if (payloadBytes.length != length) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payloadBytes, 0, payloadBytes.length);
+            return (crc.getValue() == expectedCrc) ? payload : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean endsWithTornRecord() throws IOException {
+        long length = journalFile.length();
+        if (length == 0) {
+            return false;
+        }
+        RandomAccessFile file = new RandomAccessFile(journalFile, "r");
+        try {
+            file.seek(length - 1);
+            return file.read() != '\n';
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.zendrive.phonegap;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Event subscriptions made with Zendrive.subscribe in zendrive.js, in addition to the single
+ * callback per event type of {@link ZendriveManager}. This lets independent modules of an
+ * application receive events without replacing each other's callbacks.
+ *
+ * Events are serialized once and the same payload is sent to every matching subscriber,
+ * wrapped with the name of the event type. Subscribers only receive events delivered while
+ * they are subscribed, events are neither batched nor journaled for them.
+ *
+ * The subscriber list is copy-on-write, so events are published without taking a lock.
+ */
+final class ZendriveEventSubscribers {
+
+    // ZendriveEventSubscription dictionary keys
+    private static final String kEventTypesKey = "eventTypes";
+    private static final String kOnlyValidDrivesKey = "onlyValidDrives";
+    private static final String kMinDistanceKey = "minDistance";
+
+    // Keys of the payload sent to subscribers
+    private static final String kEventTypeKey = "eventType";
+    private static final String kEventKey = "event";
+
+    static final class Subscriber {
+        final String subscriberId;
+        final CallbackContext callbackContext;
+        final EnumSet<ZendriveEventType> eventTypes;
+
+        // Drive filters, which only apply to drive end events
+        final boolean onlyValidDrives;
+        final double minDistanceMeters;
+
+        Subscriber(String subscriberId, CallbackContext callbackContext,
+                   JSONObject subscriptionObject) throws JSONException {
+            this.subscriberId = subscriberId;
+            this.callbackContext = callbackContext;
+            if (null == subscriptionObject) {
+                eventTypes = EnumSet.allOf(ZendriveEventType.class);
+                onlyValidDrives = false;
+                minDistanceMeters = 0;
+                return;
+            }
+            JSONArray eventTypesArray = subscriptionObject.optJSONArray(kEventTypesKey);
+            if (null == eventTypesArray || 0 == eventTypesArray.length()) {
+                eventTypes = EnumSet.allOf(ZendriveEventType.class);
+            }
+            else {
+                eventTypes = EnumSet.noneOf(ZendriveEventType.class);
+                for (int i = 0; i < eventTypesArray.length(); i++) {
+                    eventTypes.add(getEventType(eventTypesArray.getString(i)));
+                }
+            }
+            onlyValidDrives = subscriptionObject.optBoolean(kOnlyValidDrivesKey, false);
+            minDistanceMeters = subscriptionObject.optDouble(kMinDistanceKey, 0);
+        }
+
+        boolean accepts(ZendriveEventType eventType, ZendriveDriveRecord drive) {
+            if (!eventTypes.contains(eventType) || callbackContext.isFinished()) {
+                return false;
+            }
+            if (null == drive) {
+                return true;
+            }
+            return (drive.isValid || !onlyValidDrives) &&
+                    drive.distanceMeters >= minDistanceMeters;
+        }
+    }
+
+    private final CopyOnWriteArrayList<Subscriber> subscribers =
+            new CopyOnWriteArrayList<Subscriber>();
+
+    /**
+     * Adds a subscriber, replacing the subscriber with the same id if any. subscriptionObject
+     * may be null to subscribe to all events.
+     */
+    synchronized void subscribe(String subscriberId, CallbackContext callbackContext,
+                                JSONObject subscriptionObject) throws JSONException {
+        Subscriber subscriber = new Subscriber(subscriberId, callbackContext,
+                subscriptionObject);
+        unsubscribe(subscriberId);
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Returns false if there was no subscriber with this id.
+     */
+    synchronized boolean unsubscribe(String subscriberId) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.subscriberId.equals(subscriberId)) {
+                subscribers.remove(subscriber);
+                finish(subscriber);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized void unsubscribeAll() {
+        for (Subscriber subscriber : subscribers) {
+            finish(subscriber);
+        }
+        subscribers.clear();
+    }
+
+    boolean hasSubscribers(ZendriveEventType eventType) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.accepts(eventType, null)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the subscribers which accept an event, so that all parts of an event sent in
+     * several results go to the same subscribers. drive is null for events other than drive
+     * end.
+     */
+    List<Subscriber> getSubscribers(ZendriveEventType eventType, ZendriveDriveRecord drive) {
+        List<Subscriber> accepting = null;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.accepts(eventType, drive)) {
+                if (null == accepting) {
+                    accepting = new ArrayList<Subscriber>(subscribers.size());
+                }
+                accepting.add(subscriber);
+            }
+        }
+        return (null == accepting) ? Collections.<Subscriber>emptyList() : accepting;
+    }
+
+    /**
+     * Sends the event to the subscribers which accept it. Returns whether any subscriber was
+     * sent the event.
+     */
+    boolean publish(ZendriveEventType eventType, String encodedEvent) {
+        return publish(getSubscribers(eventType, null), eventType, encodedEvent);
+    }
+
+    boolean publish(List<Subscriber> accepting, ZendriveEventType eventType,
+                    String encodedEvent) {
+        if (accepting.isEmpty()) {
+            return false;
+        }
+        ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+        writer.beginObject();
+        writer.key(kEventTypeKey).value(eventType.journalName);
+        writer.key(kEventKey).encodedValue(encodedEvent);
+        writer.endObject();
+        String encodedPayload = writer.toString();
+
+        boolean isPublished = false;
+        for (Subscriber subscriber : accepting) {
+            if (subscriber.callbackContext.isFinished()) {
+                continue;
+            }
+            PluginResult result = new ZendriveJsonPluginResult(PluginResult.Status.OK,
+                    encodedPayload);
+            result.setKeepCallback(true);
+            subscriber.callbackContext.sendPluginResult(result);
+            isPublished = true;
+        }
+        return isPublished;
+    }
+
+    private static void finish(Subscriber subscriber) {
+        // Sending NO_RESULT without keepCallback deletes the callback in javascript
+        PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+        result.setKeepCallback(false);
+        subscriber.callbackContext.sendPluginResult(result);
+    }
+
+    private static ZendriveEventType getEventType(String name) throws JSONException {
+        for (ZendriveEventType eventType : ZendriveEventType.values()) {
+            if (eventType.journalName.equals(name)) {
+                return eventType;
+            }
+        }
+        throw new JSONException("Unknown event type: " + name);
+    }
+}
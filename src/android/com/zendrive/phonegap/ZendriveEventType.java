@@ -0,0 +1,34 @@
+package com.zendrive.phonegap;
+
+/**
+ * Events which are forwarded from the SDK to javascript. Each event type has one callback slot
+ * in {@link ZendriveManager}, and any number of {@link ZendriveEventSubscribers}.
+ */
+enum ZendriveEventType {
+    DRIVE_START("driveStart", true),
+    DRIVE_END("driveEnd", true),
+    DRIVE_RESUME("driveResume", true),
+    ACCIDENT("accident", true),
+    LOCATION_PERMISSIONS_CHANGE("locationPermissionsChange", false),
+    LOCATION_SETTINGS_CHANGE("locationSettingsChange", false),
+    ACTIVE_DRIVE_INFO_CHANGE("activeDriveInfoChange", false);
+
+    /**
+     * Name under which undelivered events are journaled. This is also the event type name
+     * sent to subscribers, see Zendrive.ZendriveEventType in zendrive.js. Must not change
+     * between releases.
+     */
+    final String journalName;
+
+    /**
+     * Whether events of this type are journaled when no callback is registered. Location
+     * and active drive info changes are not, since only the current state is of interest to
+     * the application.
+     */
+    final boolean isJournaled;
+
+    ZendriveEventType(String journalName, boolean isJournaled) {
+        this.journalName = journalName;
+        this.isJournaled = isJournaled;
+    }
+}
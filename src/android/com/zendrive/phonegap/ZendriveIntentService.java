@@ -14,6 +14,14 @@ public class ZendriveIntentService extends com.zendrive.sdk.ZendriveIntentServic
         super("com.zendrive.phonegap.ZendriveIntentService");
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        ZendriveManager.setApplicationContext(this);
+        // The SDK can start the process in the background, set it up without the webview
+        ZendriveSetup.restoreFromCache(this);
+    }
+
     @Override
     public void onDriveStart(DriveStartInfo driveStartInfo) {
         ZendriveManager.getSharedInstance().onDriveStart(driveStartInfo);
@@ -0,0 +1,26 @@
+package com.zendrive.phonegap;
+
+import org.apache.cordova.PluginResult;
+
+/**
+ * Plugin result whose message is already encoded JSON. This lets a serialized payload be sent
+ * more than once without building and stringifying a JSONObject every time.
+ */
+final class ZendriveJsonPluginResult extends PluginResult {
+    private final String encodedMessage;
+
+    ZendriveJsonPluginResult(Status status, String encodedMessage) {
+        super(status);
+        this.encodedMessage = encodedMessage;
+    }
+
+    @Override
+    public int getMessageType() {
+        return MESSAGE_TYPE_JSON;
+    }
+
+    @Override
+    public String getMessage() {
+        return encodedMessage;
+    }
+}
@@ -0,0 +1,200 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONException;
+
+/**
+ * Writes JSON straight into a reusable buffer, for event payloads which are sent to
+ * javascript as pre-encoded messages. This avoids building a JSONObject per drive and per
+ * waypoint only to stringify it.
+ *
+ * The output is identical to that of org.json on android for the same keys written in the same
+ * order, so javascript receives exactly the payloads it did when they were built as JSONObjects.
+ *
+ * Writers are not thread safe. Use {@link #obtain()} to get the writer of the current thread,
+ * and finish with it before obtaining it again.
+ */
+final class ZendriveJsonWriter {
+
+    // Buffers grown beyond this by a long drive are not kept around
+    private static final int kMaxRetainedCapacity = 256 * 1024;
+
+    private static final ThreadLocal<ZendriveJsonWriter> threadWriter =
+            new ThreadLocal<ZendriveJsonWriter>() {
+                @Override
+                protected ZendriveJsonWriter initialValue() {
+                    return new ZendriveJsonWriter();
+                }
+            };
+
+    private StringBuilder buffer = new StringBuilder(1024);
+    private boolean needsComma;
+
+    private ZendriveJsonWriter() {
+    }
+
+    /**
+     * Returns the empty writer of the calling thread.
+     */
+    static ZendriveJsonWriter obtain() {
+        ZendriveJsonWriter writer = threadWriter.get();
+        if (writer.buffer.capacity() > kMaxRetainedCapacity) {
+            writer.buffer = new StringBuilder(1024);
+        }
+        else {
+            writer.buffer.setLength(0);
+        }
+        writer.needsComma = false;
+        return writer;
+    }
+
+    ZendriveJsonWriter beginObject() {
+        separate();
+        buffer.append('{');
+        needsComma = false;
+        return this;
+    }
+
+    ZendriveJsonWriter endObject() {
+        buffer.append('}');
+        needsComma = true;
+        return this;
+    }
+
+    ZendriveJsonWriter beginArray() {
+        separate();
+        buffer.append('[');
+        needsComma = false;
+        return this;
+    }
+
+    ZendriveJsonWriter endArray() {
+        buffer.append(']');
+        needsComma = true;
+        return this;
+    }
+
+    ZendriveJsonWriter key(String key) {
+        separate();
+        appendString(key);
+        buffer.append(':');
+        needsComma = false;
+        return this;
+    }
+
+    ZendriveJsonWriter value(long value) {
+        separate();
+        buffer.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes integral values without a fraction, as org.json does.
+     */
+    ZendriveJsonWriter value(double value) throws JSONException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new JSONException("Forbidden numeric value: " + value);
+        }
+        separate();
+        long longValue = (long) value;
+        if (value == 0 && 1 / value < 0) {
+            buffer.append("-0");
+        }
+        else if (value == (double) longValue) {
+            buffer.append(longValue);
+        }
+        else {
+            buffer.append(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    ZendriveJsonWriter value(boolean value) {
+        separate();
+        buffer.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes null if value is null.
+     */
+    ZendriveJsonWriter value(String value) {
+        separate();
+        if (null == value) {
+            buffer.append("null");
+        }
+        else {
+            appendString(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    ZendriveJsonWriter nullValue() {
+        separate();
+        buffer.append("null");
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes already encoded JSON as a value.
+     */
+    ZendriveJsonWriter encodedValue(String encodedValue) {
+        separate();
+        buffer.append(encodedValue);
+        needsComma = true;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+
+    private void separate() {
+        if (needsComma) {
+            buffer.append(',');
+        }
+    }
+
+    private void appendString(String value) {
+        buffer.append('"');
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    buffer.append('\\').append(c);
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case '\b':
+                    buffer.append("\\b");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\f':
+                    buffer.append("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F) {
+                        buffer.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        buffer.append(c);
+                    }
+                    break;
+            }
+        }
+        buffer.append('"');
+    }
+}
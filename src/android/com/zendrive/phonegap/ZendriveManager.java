@@ -1,5 +1,6 @@
 package com.zendrive.phonegap;
 
+import com.zendrive.sdk.AccidentConfidence;
 import com.zendrive.sdk.AccidentInfo;
 import com.zendrive.sdk.ActiveDriveInfo;
 import com.zendrive.sdk.DriveInfo;
@@ -9,17 +10,28 @@ import com.zendrive.sdk.LocationPoint;
 import com.zendrive.sdk.Zendrive;
 import com.zendrive.sdk.ZendriveLocationSettingsResult;
 
+import android.content.Context;
+import android.util.Log;
+
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * Created by yogesh on 7/20/16.
  */
 
 public class ZendriveManager {
+    private static final String TAG = "ZendriveManager";
 
     // String Constants
     // ZendriveLocationPoint dictionary keys
@@ -38,155 +50,939 @@ public class ZendriveManager {
     private static final String kWaypointsKey = "waypoints";
     private static final String kTrackingIdKey = "trackingId";
     private static final String kSessionIdKey = "sessionId";
+    private static final String kWaypointsEncodingKey = "waypointsEncoding";
+    private static final String kEncodedWaypointsKey = "encodedWaypoints";
+    private static final String kWaypointsPrecisionKey = "waypointsPrecision";
+
+    // ZendriveWaypointSimplification dictionary keys
+    private static final String kToleranceKey = "tolerance";
+    private static final String kMaxWaypointsKey = "maxWaypoints";
+    private static final String kOriginalWaypointsCountKey = "originalWaypointsCount";
+
+    // ZendriveDriveStatistics dictionary keys
+    private static final String kStatisticsKey = "statistics";
+    private static final String kBoundingBoxKey = "boundingBox";
+    private static final String kMinLatitudeKey = "minLatitude";
+    private static final String kMaxLatitudeKey = "maxLatitude";
+    private static final String kMinLongitudeKey = "minLongitude";
+    private static final String kMaxLongitudeKey = "maxLongitude";
+    private static final String kPathDistanceKey = "pathDistance";
+    private static final String kMaxSegmentDistanceKey = "maxSegmentDistance";
+    private static final String kStopCountKey = "stopCount";
+
+    // Keys of streamed drive infos, see setProcessEndOfDriveDelegateCallback
+    private static final String kWaypointsCountKey = "waypointsCount";
+    private static final String kWaypointsStreamIdKey = "waypointsStreamId";
+    private static final String kChunkSequenceKey = "chunkSequence";
+    private static final String kIsLastChunkKey = "isLastChunk";
+
+    // ZendriveDriveResumeInfo dictionary keys
+    private static final String kDriveGapStartTimestampKey = "driveGapStartTimestamp";
+    private static final String kDriveGapEndTimestampKey = "driveGapEndTimestamp";
+
+    // ZendriveAccidentInfo dictionary keys
+    private static final String kTimestampKey = "timestamp";
+    private static final String kLocationKey = "location";
+    private static final String kConfidenceKey = "confidence";
+
+    // Location change dictionary keys
+    private static final String kIsGrantedKey = "isGranted";
+    private static final String kIsSuccessKey = "isSuccess";
+
+    // Accident confidence, these should match Zendrive.ZendriveAccidentConfidence in zendrive.js
+    private static final int kAccidentConfidenceHigh = 0;
+    private static final int kAccidentConfidenceLow = 1;
+
+    // Waypoint encodings, these should match Zendrive.ZendriveWaypointEncoding in zendrive.js
+    private static final int kWaypointEncodingJSON = 0;
+    private static final int kWaypointEncodingPolyline = 1;
+    private static final int kWaypointEncodingDeltaVarint = 2;
+
+    // Default precision of the delta varint waypoint encoding, in decimal digits
+    private static final int kDefaultWaypointPrecision = 6;
+
+    // Active drive info change dictionary keys
+    private static final String kActiveDriveInfoKey = "activeDriveInfo";
+
+    // ZendriveEventBatchingOptions dictionary keys
+    private static final String kFlushIntervalKey = "flushInterval";
+    private static final String kMaxBatchSizeKey = "maxBatchSize";
+
+    // Callbacks, one slot per ZendriveEventType
+    private final AtomicReferenceArray<CallbackContext> eventCallbacks =
+            new AtomicReferenceArray<CallbackContext>(ZendriveEventType.values().length);
+    private volatile EndOfDriveOptions endOfDriveOptions = new EndOfDriveOptions(null);
+    private final AtomicInteger nextWaypointsStreamId = new AtomicInteger();
+
+    // Subscribers which receive events in addition to the callbacks
+    private final ZendriveEventSubscribers eventSubscribers = new ZendriveEventSubscribers();
+
+    /**
+     * Serialized result of Zendrive.getActiveDriveInfo. encodedActiveDriveInfo is null if there
+     * was no active drive. The snapshot is valid while generation matches
+     * activeDriveInfoGeneration.
+     */
+    static final class ActiveDriveInfoSnapshot {
+        final long generation;
+        final String encodedActiveDriveInfo;
+
+        ActiveDriveInfoSnapshot(long generation, String encodedActiveDriveInfo) {
+            this.generation = generation;
+            this.encodedActiveDriveInfo = encodedActiveDriveInfo;
+        }
+    }
+
+    /**
+     * How drive infos are sent to the end of drive callback, see
+     * setProcessEndOfDriveDelegateCallback. Replaced as a whole so that a drive is never sent
+     * with a mix of old and new options.
+     */
+    private static final class EndOfDriveOptions {
+        final int waypointEncoding;
+        final int waypointPrecision;
+        final int waypointChunkSize;
+        final double simplificationToleranceMeters;
+        final int maxWaypoints;
+        final boolean isStatisticsEnabled;
+
+        EndOfDriveOptions(JSONArray args) {
+            if (null == args) {
+                isStatisticsEnabled = false;
+                waypointEncoding = kWaypointEncodingJSON;
+                waypointPrecision = kDefaultWaypointPrecision;
+                waypointChunkSize = 0;
+                simplificationToleranceMeters = 0;
+                maxWaypoints = 0;
+                return;
+            }
+            isStatisticsEnabled = args.optBoolean(5, false);
+            waypointEncoding = args.optInt(1, kWaypointEncodingJSON);
+            waypointPrecision = Math.max(WaypointEncoder.kMinDeltaVarintPrecision,
+                    Math.min(WaypointEncoder.kMaxDeltaVarintPrecision,
+                            args.optInt(4, kDefaultWaypointPrecision)));
+            waypointChunkSize = Math.max(0, args.optInt(2, 0));
+            JSONObject simplificationObject = args.optJSONObject(3);
+            if (null != simplificationObject) {
+                simplificationToleranceMeters =
+                        simplificationObject.optDouble(kToleranceKey, 0);
+                maxWaypoints = simplificationObject.optInt(kMaxWaypointsKey, 0);
+            }
+            else {
+                simplificationToleranceMeters = 0;
+                maxWaypoints = 0;
+            }
+        }
+
+        boolean isSimplificationEnabled() {
+            return simplificationToleranceMeters > 0 || maxWaypoints > 0;
+        }
+    }
+
+    // Incremented whenever the active drive may have changed
+    private final AtomicLong activeDriveInfoGeneration = new AtomicLong();
+    private volatile ActiveDriveInfoSnapshot activeDriveInfoSnapshot;
+
+    // SDK events are serialized and sent to javascript on this worker
+    private final ZendriveEventDispatcher eventDispatcher = new ZendriveEventDispatcher();
+
+    private final ZendrivePluginMetrics metrics = ZendrivePluginMetrics.getSharedInstance();
+
+    // Coalesces events into batches when batching is enabled from javascript
+    private final ZendriveEventBatcher eventBatcher = new ZendriveEventBatcher(eventDispatcher,
+            new ZendriveEventBatcher.BatchSink() {
+                @Override
+                public void sendBatch(CallbackContext callbackContext, ZendriveEventType eventType,
+                                      List<String> encodedEvents) {
+                    deliverBatch(callbackContext, eventType, encodedEvents);
+                }
+            });
+
+    // Events sent while javascript has no callback registered are persisted here. The journal
+    // outlives manager instances since it is backed by a single file.
+    private static volatile ZendriveEventJournal eventJournal;
+
+    // Completed drives, recorded once javascript enables the history. Like the journal this
+    // outlives manager instances.
+    private static volatile ZendriveDriveHistory driveHistory;
+
+    // Maximum time teardown waits for already dispatched events to be delivered
+    private static final long kTeardownDrainTimeoutMillis = 2000;
 
-    // Callbacks
-    private CallbackContext processStartOfDriveCallback;
-    private CallbackContext processEndOfDriveCallback;
+    private static final AtomicReference<ZendriveManager> sharedInstance =
+            new AtomicReference<ZendriveManager>();
 
-    private static ZendriveManager sharedInstance;
-    public static synchronized ZendriveManager getSharedInstance() {
-        if (sharedInstance == null) {
-            sharedInstance = new ZendriveManager();
+    /**
+     * Returns the current manager, creating it if needed. This is called for every SDK event
+     * and plugin action, so it does not take a lock.
+     */
+    public static ZendriveManager getSharedInstance() {
+        while (true) {
+            ZendriveManager instance = sharedInstance.get();
+            if (null != instance) {
+                return instance;
+            }
+            ZendriveManager newInstance = new ZendriveManager();
+            if (sharedInstance.compareAndSet(null, newInstance)) {
+                return newInstance;
+            }
+            // Lost the race to another thread, nothing has been dispatched on newInstance
+            newInstance.shutdown(0);
+        }
+    }
+
+    /**
+     * Detaches the current manager. Events which were already dispatched to it are delivered
+     * or journaled before this returns, unless that takes longer than
+     * kTeardownDrainTimeoutMillis. An SDK thread which got the manager right before teardown
+     * has its event rejected by the dispatcher, and hands it to the current manager instead.
+     */
+    public static void teardown() {
+        ZendriveManager instance = sharedInstance.getAndSet(null);
+        if (null != instance) {
+            instance.shutdown(kTeardownDrainTimeoutMillis);
+        }
+        ZendriveEventJournal journal = eventJournal;
+        if (null != journal) {
+            journal.close();
         }
-        return sharedInstance;
     }
 
-    public static synchronized void teardown() {
-        sharedInstance = null;
+    /**
+     * Needs to be called before events are received so that undelivered events can be
+     * journaled. This is called both by the plugin and by the intent service since the SDK can
+     * start the app process in the background without a webview.
+     */
+    public static synchronized void setApplicationContext(Context context) {
+        if (null == eventJournal) {
+            eventJournal = new ZendriveEventJournal(context.getApplicationContext().getFilesDir());
+        }
+        if (null == driveHistory) {
+            driveHistory = new ZendriveDriveHistory(context.getApplicationContext());
+        }
+    }
+
+    /**
+     * Returns null until setApplicationContext has been called.
+     */
+    static ZendriveDriveHistory getDriveHistory() {
+        return driveHistory;
+    }
+
+    private void shutdown(long drainTimeoutMillis) {
+        // Pending batches are sent from the event dispatcher, after the events queued before them
+        Runnable shutdownBatcher = new Runnable() {
+            @Override
+            public void run() {
+                eventBatcher.shutdown();
+            }
+        };
+        if (!eventDispatcher.dispatch(shutdownBatcher)) {
+            shutdownBatcher.run();
+        }
+        eventDispatcher.shutdown();
+        if (!eventDispatcher.awaitTermination(drainTimeoutMillis)) {
+            Log.w(TAG, eventDispatcher.getQueueDepth() + " events still pending after teardown");
+        }
+        eventSubscribers.unsubscribeAll();
     }
 
     public void setProcessStartOfDriveDelegateCallback(JSONArray args, final CallbackContext callbackContext)
             throws JSONException {
-        if (null != this.processStartOfDriveCallback) {
-            // Delete old callback
-            // Sending NO_RESULT doesn't call any js callback method
-            PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+        setDelegateCallback(ZendriveEventType.DRIVE_START, args, callbackContext);
+    }
 
-            // Setting keepCallback to false would make sure that the callback is deleted from
-            // memory after this call
-            result.setKeepCallback(false);
-            processStartOfDriveCallback.sendPluginResult(result);
-        }
+    public void setProcessEndOfDriveDelegateCallback(JSONArray args, final CallbackContext callbackContext)
+            throws JSONException {
+        // args[1] is the waypoint encoding.
+        // args[2] is the waypoint chunk size. When positive, the drive info is sent without
+        // waypoints followed by the waypoints in chunks of this size, so that the waypoints of
+        // long drives are never serialized at once.
+        // args[3] is an optional ZendriveWaypointSimplification applied before sending.
+        // args[4] is the precision in decimal digits of the delta varint waypoint encoding.
+        // args[5] tells whether ZendriveDriveStatistics are computed and sent with the drive.
+        Boolean hasCallback = args.getBoolean(0);
+        this.endOfDriveOptions = new EndOfDriveOptions(hasCallback ? args : null);
+        setDelegateCallback(ZendriveEventType.DRIVE_END, args, callbackContext);
+    }
+
+    /**
+     * Replaces the callback for eventType. args[0] tells whether javascript has a callback for
+     * the event, if not the callback slot is cleared.
+     */
+    void setDelegateCallback(ZendriveEventType eventType, JSONArray args,
+                             final CallbackContext callbackContext) throws JSONException {
         Boolean hasCallback = args.getBoolean(0);
-        if (hasCallback) {
-            this.processStartOfDriveCallback = callbackContext;
+        final CallbackContext oldCallback = eventCallbacks.getAndSet(eventType.ordinal(),
+                hasCallback ? callbackContext : null);
+        if (null != oldCallback) {
+            // The old callback is deleted on the event dispatcher, after the events which are
+            // being sent to it. Deleting it here would make the dispatcher send to a finished
+            // callback, and cordova drops such results.
+            Runnable deleteOldCallback = new Runnable() {
+                @Override
+                public void run() {
+                    // Sending NO_RESULT doesn't call any js callback method
+                    PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+
+                    // Setting keepCallback to false would make sure that the callback is
+                    // deleted from memory after this call
+                    result.setKeepCallback(false);
+                    oldCallback.sendPluginResult(result);
+                }
+            };
+            eventDispatcher.dispatchWithoutWaiting(deleteOldCallback, deleteOldCallback);
         }
-        else {
-            this.processStartOfDriveCallback = null;
+        if (hasCallback && eventType.isJournaled) {
+            replayJournaledEvents(eventType);
         }
     }
 
-    public void setProcessEndOfDriveDelegateCallback(JSONArray args, final CallbackContext callbackContext)
+    /**
+     * args[0] is the subscriber id and args[1] an optional ZendriveEventSubscription. A
+     * subscriber with the same id is replaced.
+     */
+    public void subscribe(JSONArray args, final CallbackContext callbackContext)
             throws JSONException {
-        if (null != this.processEndOfDriveCallback) {
-            // Delete old callback
-            // Sending NO_RESULT doesn't call any js callback method
-            PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+        String subscriberId = args.getString(0);
+        try {
+            eventSubscribers.subscribe(subscriberId, callbackContext, args.optJSONObject(1));
+        } catch (JSONException e) {
+            callbackContext.error(e.getMessage());
+        }
+    }
 
-            // Setting keepCallback to false would make sure that the callback is deleted from
-            // memory after this call
-            result.setKeepCallback(false);
-            processEndOfDriveCallback.sendPluginResult(result);
+    public void unsubscribe(JSONArray args, final CallbackContext callbackContext)
+            throws JSONException {
+        if (eventSubscribers.unsubscribe(args.getString(0))) {
+            callbackContext.success();
         }
-        Boolean hasCallback = args.getBoolean(0);
-        if (hasCallback) {
-            this.processEndOfDriveCallback = callbackContext;
+        else {
+            callbackContext.error("No subscriber with this id");
+        }
+    }
+
+    /**
+     * The options are applied on the event dispatcher, since pending batches are flushed
+     * before they change.
+     */
+    public void setEventBatchingOptions(final JSONArray args,
+                                        final CallbackContext callbackContext)
+            throws JSONException {
+        JSONObject optionsObject = args.optJSONObject(0);
+        final long flushIntervalMillis;
+        final int maxBatchSize;
+        if (null == optionsObject) {
+            flushIntervalMillis = 0;
+            maxBatchSize = 0;
         }
         else {
-            this.processEndOfDriveCallback = null;
+            flushIntervalMillis = optionsObject.optLong(kFlushIntervalKey, 0);
+            maxBatchSize = optionsObject.optInt(kMaxBatchSizeKey, 0);
         }
+        eventDispatcher.dispatchWithoutWaiting(new Runnable() {
+            @Override
+            public void run() {
+                eventBatcher.setOptions(flushIntervalMillis, maxBatchSize);
+                callbackContext.success();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                // Torn down, the options of the current manager are changed instead
+                try {
+                    getSharedInstance().setEventBatchingOptions(args, callbackContext);
+                } catch (JSONException e) {
+                    callbackContext.error(e.getMessage());
+                }
+            }
+        });
     }
 
-    public void onDriveStart(DriveStartInfo driveStartInfo) {
-        if (processStartOfDriveCallback == null || processStartOfDriveCallback.isFinished()) {
-            return;
+    public void onDriveStart(final DriveStartInfo driveStartInfo) {
+        invalidateActiveDriveInfo();
+        boolean isDispatched = dispatchEvent(ZendriveEventType.DRIVE_START, new Runnable() {
+            @Override
+            public void run() {
+                sendDriveStart(driveStartInfo);
+            }
+        });
+        if (!isDispatched) {
+            getSharedInstance().onDriveStart(driveStartInfo);
         }
-        try {
-            JSONObject driveStartInfoObject = new JSONObject();
-            driveStartInfoObject.put(kStartTimestampKey, driveStartInfo.startTimeMillis);
+    }
 
-            if (null != driveStartInfo.startLocation) {
-                JSONObject driveStartLocationObject = new JSONObject();
-                driveStartLocationObject.put(kLatitudeKey, driveStartInfo.startLocation.latitude);
-                driveStartLocationObject.put(kLongitudeKey, driveStartInfo.startLocation.longitude);
-                driveStartInfoObject.put(kStartLocationKey, driveStartLocationObject);
+    public void onDriveEnd(final DriveInfo driveInfo) {
+        invalidateActiveDriveInfo();
+        boolean isDispatched = dispatchEvent(ZendriveEventType.DRIVE_END, new Runnable() {
+            @Override
+            public void run() {
+                handleDriveEnd(driveInfo);
             }
-            else {
-                driveStartInfoObject.put(kStartLocationKey, JSONObject.NULL);
+        });
+        if (!isDispatched) {
+            getSharedInstance().onDriveEnd(driveInfo);
+        }
+    }
+
+    public void onDriveResume(final DriveResumeInfo driveResumeInfo) {
+        invalidateActiveDriveInfo();
+        boolean isDispatched = dispatchEvent(ZendriveEventType.DRIVE_RESUME, new Runnable() {
+            @Override
+            public void run() {
+                sendDriveResume(driveResumeInfo);
+            }
+        });
+        if (!isDispatched) {
+            getSharedInstance().onDriveResume(driveResumeInfo);
+        }
+    }
+
+    public void onAccident(final AccidentInfo accidentInfo) {
+        boolean isDispatched = dispatchEvent(ZendriveEventType.ACCIDENT, new Runnable() {
+            @Override
+            public void run() {
+                sendAccident(accidentInfo);
+            }
+        });
+        if (!isDispatched) {
+            getSharedInstance().onAccident(accidentInfo);
+        }
+    }
+
+    public void onLocationPermissionsChange(final boolean granted) {
+        boolean isDispatched = dispatchEvent(ZendriveEventType.LOCATION_PERMISSIONS_CHANGE,
+                new Runnable() {
+            @Override
+            public void run() {
+                ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+                writer.beginObject().key(kIsGrantedKey).value(granted).endObject();
+                publishEvent(ZendriveEventType.LOCATION_PERMISSIONS_CHANGE, writer.toString());
             }
+        });
+        if (!isDispatched) {
+            getSharedInstance().onLocationPermissionsChange(granted);
+        }
+    }
+
+    public void onLocationSettingsChange(final ZendriveLocationSettingsResult zendriveLocationSettingsResult) {
+        boolean isDispatched = dispatchEvent(ZendriveEventType.LOCATION_SETTINGS_CHANGE,
+                new Runnable() {
+            @Override
+            public void run() {
+                ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+                writer.beginObject()
+                        .key(kIsSuccessKey).value(zendriveLocationSettingsResult.isSuccess())
+                        .endObject();
+                publishEvent(ZendriveEventType.LOCATION_SETTINGS_CHANGE, writer.toString());
+            }
+        });
+        if (!isDispatched) {
+            getSharedInstance().onLocationSettingsChange(zendriveLocationSettingsResult);
+        }
+    }
 
-            PluginResult result = new PluginResult(PluginResult.Status.OK,
-                    driveStartInfoObject);
-            result.setKeepCallback(true);
-            processStartOfDriveCallback.sendPluginResult(result);
+    ZendriveEventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
+    /**
+     * Runs handler on the event dispatcher, counting the event and recording how long it took
+     * to be handled.
+     *
+     * Returns false if this manager was torn down, which happens when an SDK thread got the
+     * manager right before teardown. The caller then hands the event to the current manager,
+     * so that it is delivered or journaled rather than lost.
+     *
+     * If the event queue stays full for kMaxQueueWaitMillis the event is dropped, so that a
+     * stalled bridge never blocks the SDK thread for longer than that.
+     */
+    private boolean dispatchEvent(final ZendriveEventType eventType, final Runnable handler) {
+        final long receivedAtNanos = System.nanoTime();
+        boolean isDispatched = eventDispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                handler.run();
+                metrics.recordEventLatency(eventType, receivedAtNanos);
+            }
+        });
+        if (isDispatched) {
+            metrics.countEvent(eventType, ZendrivePluginMetrics.EventOutcome.RECEIVED);
+            return true;
+        }
+        if (eventDispatcher.isShutdown()) {
+            return false;
+        }
+        Log.e(TAG, "Dropping " + eventType.journalName + " event, the event queue is full");
+        metrics.countEvent(eventType, ZendrivePluginMetrics.EventOutcome.RECEIVED);
+        metrics.countEvent(eventType, ZendrivePluginMetrics.EventOutcome.DROPPED);
+        return true;
+    }
+
+    private void sendDriveStart(DriveStartInfo driveStartInfo) {
+        try {
+            ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+            writer.beginObject();
+            writer.key(kStartTimestampKey).value(driveStartInfo.startTimeMillis);
+            writer.key(kStartLocationKey);
+            writeLocationPoint(writer, driveStartInfo.startLocation);
+            writer.endObject();
+
+            publishEvent(ZendriveEventType.DRIVE_START, writer.toString());
         } catch (JSONException e) {
             e.printStackTrace();
         }
     }
 
-    public JSONObject getActiveDriveInfo() {
-        try {
-            JSONObject activeDriveInfoObject = new JSONObject();
-            ActiveDriveInfo activeDriveInfo = Zendrive.getActiveDriveInfo();
-            activeDriveInfoObject.put(kStartTimestampKey, activeDriveInfo.startTimeMillis);
-            activeDriveInfoObject.put(kTrackingIdKey,
-                    (activeDriveInfo.trackingId != null) ? activeDriveInfo.trackingId:JSONObject.NULL);
-            activeDriveInfoObject.put(kSessionIdKey,
-                    (activeDriveInfo.sessionId != null) ? activeDriveInfo.sessionId:JSONObject.NULL);
-            return activeDriveInfoObject;
-        }  catch (Exception e) {}
+    public void setActiveDriveInfoUpdateCallback(JSONArray args,
+                                                 final CallbackContext callbackContext)
+            throws JSONException {
+        setDelegateCallback(ZendriveEventType.ACTIVE_DRIVE_INFO_CHANGE, args, callbackContext);
+        if (args.getBoolean(0)) {
+            // Subscribers get the current state right away
+            dispatchActiveDriveInfo();
+        }
+    }
+
+    /**
+     * Marks the cached active drive info as stale and pushes the new state to the active drive
+     * info callback and subscribers, if any. Called on drive events and when the application
+     * starts or stops drives and sessions.
+     */
+    public void invalidateActiveDriveInfo() {
+        activeDriveInfoGeneration.incrementAndGet();
+        if (null != eventCallbacks.get(ZendriveEventType.ACTIVE_DRIVE_INFO_CHANGE.ordinal()) ||
+                eventSubscribers.hasSubscribers(ZendriveEventType.ACTIVE_DRIVE_INFO_CHANGE)) {
+            dispatchActiveDriveInfo();
+        }
+    }
+
+    /**
+     * Returns the cached active drive info if no drive event happened since it was computed,
+     * null otherwise.
+     */
+    ActiveDriveInfoSnapshot getCachedActiveDriveInfo() {
+        ActiveDriveInfoSnapshot snapshot = activeDriveInfoSnapshot;
+        if (null != snapshot && snapshot.generation == activeDriveInfoGeneration.get()) {
+            return snapshot;
+        }
         return null;
     }
 
-    public void onDriveEnd(DriveInfo driveInfo) {
-        if (processEndOfDriveCallback == null || processEndOfDriveCallback.isFinished()) {
-            return;
+    /**
+     * Returns the active drive info, queries the SDK only if the cached snapshot is stale.
+     */
+    ActiveDriveInfoSnapshot getActiveDriveInfoSnapshot() {
+        ActiveDriveInfoSnapshot snapshot = getCachedActiveDriveInfo();
+        if (null != snapshot) {
+            return snapshot;
+        }
+        // Read the generation before querying the SDK, so that a drive event racing with the
+        // query leaves the new snapshot stale
+        long generation = activeDriveInfoGeneration.get();
+        ActiveDriveInfo activeDriveInfo;
+        try {
+            activeDriveInfo = Zendrive.getActiveDriveInfo();
+        } catch (RuntimeException e) {
+            // The SDK throws if it is not setup. This is reported as no active drive but not
+            // cached, since setup may still be in progress on the command queue.
+            Log.w(TAG, "Failed to get active drive info", e);
+            return new ActiveDriveInfoSnapshot(generation, null);
+        }
+        snapshot = new ActiveDriveInfoSnapshot(generation,
+                encodeActiveDriveInfo(activeDriveInfo));
+        activeDriveInfoSnapshot = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Returns the active drive info as JSON, null if there is no active drive.
+     */
+    private String encodeActiveDriveInfo(ActiveDriveInfo activeDriveInfo) {
+        if (null == activeDriveInfo) {
+            return null;
         }
+        ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+        writer.beginObject();
+        writer.key(kStartTimestampKey).value(activeDriveInfo.startTimeMillis);
+        writer.key(kTrackingIdKey).value(activeDriveInfo.trackingId);
+        writer.key(kSessionIdKey).value(activeDriveInfo.sessionId);
+        writer.endObject();
+        return writer.toString();
+    }
+
+    private void dispatchActiveDriveInfo() {
+        // Not handed over if this manager was torn down, the state is pushed again by the
+        // current manager when it changes
+        dispatchEvent(ZendriveEventType.ACTIVE_DRIVE_INFO_CHANGE, new Runnable() {
+            @Override
+            public void run() {
+                // The snapshot must be encoded before the writer is obtained for the event
+                String encodedActiveDriveInfo =
+                        getActiveDriveInfoSnapshot().encodedActiveDriveInfo;
+                ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+                writer.beginObject().key(kActiveDriveInfoKey);
+                if (null != encodedActiveDriveInfo) {
+                    writer.encodedValue(encodedActiveDriveInfo);
+                }
+                else {
+                    writer.nullValue();
+                }
+                writer.endObject();
+                publishEvent(ZendriveEventType.ACTIVE_DRIVE_INFO_CHANGE, writer.toString());
+            }
+        });
+    }
+
+    private void handleDriveEnd(DriveInfo driveInfo) {
+        ZendriveDriveHistory history = driveHistory;
+        if (null != history) {
+            history.record(driveInfo);
+        }
+        sendDriveEnd(ZendriveDriveRecord.fromDriveInfo(driveInfo), false);
+    }
+
+    /**
+     * Sends a drive to the end of drive callback using the current end of drive options, or
+     * journals it if there is no callback. Replayed drives are not sent to subscribers, which
+     * only get drives as they end.
+     */
+    private void sendDriveEnd(ZendriveDriveRecord drive, boolean isReplayed) {
+        EndOfDriveOptions options = endOfDriveOptions;
+        CallbackContext callbackContext = eventCallbacks.get(ZendriveEventType.DRIVE_END.ordinal());
+        boolean hasCallback = null != callbackContext && !callbackContext.isFinished();
+        // Subscribers get the drive in the same form as the callback
+        List<ZendriveEventSubscribers.Subscriber> subscribers = isReplayed ?
+                Collections.<ZendriveEventSubscribers.Subscriber>emptyList() :
+                eventSubscribers.getSubscribers(ZendriveEventType.DRIVE_END, drive);
         try {
-            JSONObject driveInfoObject = new JSONObject();
-            driveInfoObject.put(kStartTimestampKey, driveInfo.startTimeMillis);
-            driveInfoObject.put(kEndTimestampKey, driveInfo.endTimeMillis);
-            driveInfoObject.put(kIsValidKey, driveInfo.isValid);
-            driveInfoObject.put(kAverageSpeedKey, driveInfo.averageSpeed);
-            driveInfoObject.put(kDistanceKey, driveInfo.distanceMeters);
+            if (!hasCallback) {
+                // Drives are journaled in compact form rather than as the payload, so that they
+                // are sent with the options in force once a callback is registered
+                // Subscribers are sent the drive below
+                journalEvent(ZendriveEventType.DRIVE_END, drive.encode(), !subscribers.isEmpty());
+                if (subscribers.isEmpty()) {
+                    return;
+                }
+            }
 
+            List<LocationPoint> waypoints = drive.waypoints;
+            // Statistics are always computed over all waypoints, before simplification
+            WaypointStatistics statistics = null;
+            if (options.isStatisticsEnabled) {
+                statistics = WaypointStatistics.compute(waypoints);
+            }
+            int originalWaypointsCount = -1;
+            if (options.isSimplificationEnabled() && null != waypoints) {
+                originalWaypointsCount = waypoints.size();
+                waypoints = WaypointSimplifier.simplify(waypoints,
+                        options.simplificationToleranceMeters, options.maxWaypoints);
+            }
             int waypointsCount = 0;
-            if (null != driveInfo.waypoints) {
-                waypointsCount = driveInfo.waypoints.size();
+            if (null != waypoints) {
+                waypointsCount = waypoints.size();
+            }
+
+            // Drives bypass batching, so that no other event is interleaved with a stream and
+            // a batch never holds a drive which could only be journaled as a payload
+            boolean isStreamed = options.waypointChunkSize > 0 && hasCallback;
+            int streamId = 0;
+            if (hasCallback) {
+                eventBatcher.flushAll();
+            }
+            if (isStreamed) {
+                streamId = nextWaypointsStreamId.incrementAndGet();
+            }
+
+            ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+            writer.beginObject();
+            writer.key(kStartTimestampKey).value(drive.startTimeMillis);
+            writer.key(kEndTimestampKey).value(drive.endTimeMillis);
+            writer.key(kIsValidKey).value(drive.isValid);
+            writer.key(kAverageSpeedKey).value(drive.averageSpeed);
+            writer.key(kDistanceKey).value(drive.distanceMeters);
+            if (originalWaypointsCount >= 0) {
+                writer.key(kOriginalWaypointsCountKey).value(originalWaypointsCount);
+            }
+            if (null != statistics) {
+                writer.key(kStatisticsKey);
+                writeStatistics(writer, statistics);
             }
-            JSONArray waypointsArray = new JSONArray();
-            for (int i = 0; i<waypointsCount; i++) {
-                LocationPoint locationPoint = driveInfo.waypoints.get(i);
 
-                JSONObject driveLocationObject = new JSONObject();
-                driveLocationObject.put(kLatitudeKey, locationPoint.latitude);
-                driveLocationObject.put(kLongitudeKey, locationPoint.longitude);
-                waypointsArray.put(driveLocationObject);
+            if (isStreamed) {
+                writer.key(kWaypointsStreamIdKey).value(streamId);
+                writer.key(kWaypointsCountKey).value(waypointsCount);
+                writer.endObject();
+                String encodedDriveInfo = writer.toString();
+                eventSubscribers.publish(subscribers, ZendriveEventType.DRIVE_END,
+                        encodedDriveInfo);
+                sendKeepCallbackResult(callbackContext, encodedDriveInfo);
+                streamWaypoints(callbackContext, subscribers, streamId, waypoints,
+                        waypointsCount, options);
+                metrics.countEvent(ZendriveEventType.DRIVE_END,
+                        ZendrivePluginMetrics.EventOutcome.DELIVERED);
+                return;
             }
-            driveInfoObject.put(kWaypointsKey, waypointsArray);
 
-            PluginResult result = new PluginResult(PluginResult.Status.OK,
-                    driveInfoObject);
-            result.setKeepCallback(true);
-            processEndOfDriveCallback.sendPluginResult(result);
+            writeWaypoints(writer, waypoints, 0, waypointsCount, options);
+            writer.endObject();
+            String encodedDriveInfo = writer.toString();
+            eventSubscribers.publish(subscribers, ZendriveEventType.DRIVE_END, encodedDriveInfo);
+            if (hasCallback) {
+                sendKeepCallbackResult(callbackContext, encodedDriveInfo);
+                metrics.countEvent(ZendriveEventType.DRIVE_END,
+                        ZendrivePluginMetrics.EventOutcome.DELIVERED);
+            }
         } catch (JSONException e) {
             e.printStackTrace();
         }
     }
 
-    public void onDriveResume(DriveResumeInfo driveResumeInfo) {
+    /**
+     * Sends the waypoints of a drive whose info was sent without them, in chunks of chunkSize.
+     * Each chunk carries the stream id of the drive and its sequence number, and the last chunk
+     * is marked so that zendrive.js can reassemble the drive.
+     */
+    private void streamWaypoints(CallbackContext callbackContext,
+                                 List<ZendriveEventSubscribers.Subscriber> subscribers,
+                                 int streamId, List<LocationPoint> waypoints, int waypointsCount,
+                                 EndOfDriveOptions options) throws JSONException {
+        int chunkSequence = 0;
+        int chunkStart = 0;
+        do {
+            int chunkEnd = Math.min(chunkStart + options.waypointChunkSize, waypointsCount);
+            ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+            writer.beginObject();
+            writer.key(kWaypointsStreamIdKey).value(streamId);
+            writer.key(kChunkSequenceKey).value(chunkSequence);
+            writer.key(kIsLastChunkKey).value(chunkEnd == waypointsCount);
+            writeWaypoints(writer, waypoints, chunkStart, chunkEnd, options);
+            writer.endObject();
+            String encodedChunk = writer.toString();
+            eventSubscribers.publish(subscribers, ZendriveEventType.DRIVE_END, encodedChunk);
+            sendKeepCallbackResult(callbackContext, encodedChunk);
 
+            chunkSequence++;
+            chunkStart = chunkEnd;
+        } while (chunkStart < waypointsCount);
     }
 
-    public void onAccident(AccidentInfo accidentInfo) {
+    private void writeWaypoints(ZendriveJsonWriter writer, List<LocationPoint> waypoints,
+                                int start, int end, EndOfDriveOptions options)
+            throws JSONException {
+        // zendrive.js decodes encoded waypoints lazily when they are accessed
+        if (options.waypointEncoding == kWaypointEncodingPolyline) {
+            writer.key(kWaypointsEncodingKey).value(kWaypointEncodingPolyline);
+            writer.key(kEncodedWaypointsKey).value(WaypointEncoder.encodePolyline(
+                    (start < end) ? waypoints.subList(start, end) : null));
+        }
+        else if (options.waypointEncoding == kWaypointEncodingDeltaVarint) {
+            writer.key(kWaypointsEncodingKey).value(kWaypointEncodingDeltaVarint);
+            writer.key(kWaypointsPrecisionKey).value(options.waypointPrecision);
+            writer.key(kEncodedWaypointsKey).value(WaypointEncoder.encodeDeltaVarint(
+                    (start < end) ? waypoints.subList(start, end) : null,
+                    options.waypointPrecision));
+        }
+        else {
+            writer.key(kWaypointsKey).beginArray();
+            for (int i = start; i<end; i++) {
+                writeLocationPoint(writer, waypoints.get(i));
+            }
+            writer.endArray();
+        }
+    }
+
+    private void writeStatistics(ZendriveJsonWriter writer, WaypointStatistics statistics)
+            throws JSONException {
+        writer.beginObject();
+        writer.key(kBoundingBoxKey);
+        if (statistics.waypointsCount > 0) {
+            writer.beginObject();
+            writer.key(kMinLatitudeKey).value(statistics.minLatitude);
+            writer.key(kMaxLatitudeKey).value(statistics.maxLatitude);
+            writer.key(kMinLongitudeKey).value(statistics.minLongitude);
+            writer.key(kMaxLongitudeKey).value(statistics.maxLongitude);
+            writer.endObject();
+        }
+        else {
+            writer.nullValue();
+        }
+        writer.key(kPathDistanceKey).value(statistics.pathDistanceMeters);
+        writer.key(kMaxSegmentDistanceKey).value(statistics.maxSegmentDistanceMeters);
+        writer.key(kStopCountKey).value(statistics.stopCount);
+        writer.endObject();
+    }
+
+    private void sendDriveResume(DriveResumeInfo driveResumeInfo) {
+        ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+        writer.beginObject();
+        writer.key(kStartTimestampKey).value(driveResumeInfo.startTimeMillis);
+        writer.key(kDriveGapStartTimestampKey).value(driveResumeInfo.driveGapStartTimestampMillis);
+        writer.key(kDriveGapEndTimestampKey).value(driveResumeInfo.driveGapEndTimestampMillis);
+        writer.key(kTrackingIdKey).value(driveResumeInfo.trackingId);
+        writer.key(kSessionIdKey).value(driveResumeInfo.sessionId);
+        writer.endObject();
+
+        publishEvent(ZendriveEventType.DRIVE_RESUME, writer.toString());
+    }
+
+    private void sendAccident(AccidentInfo accidentInfo) {
+        try {
+            ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+            writer.beginObject();
+            writer.key(kTimestampKey).value(accidentInfo.timestampMillis);
+            writer.key(kLocationKey);
+            writeLocationPoint(writer, accidentInfo.location);
+            writer.key(kConfidenceKey).value(
+                    (accidentInfo.confidence == AccidentConfidence.HIGH) ?
+                            kAccidentConfidenceHigh : kAccidentConfidenceLow);
+            writer.key(kTrackingIdKey).value(accidentInfo.trackingId);
+            writer.key(kSessionIdKey).value(accidentInfo.sessionId);
+            writer.endObject();
 
+            publishEvent(ZendriveEventType.ACCIDENT, writer.toString());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
     }
 
-    public void onLocationPermissionsChange(boolean b) {
+    private void writeLocationPoint(ZendriveJsonWriter writer, LocationPoint locationPoint)
+            throws JSONException {
+        if (null == locationPoint) {
+            writer.nullValue();
+            return;
+        }
+        writer.beginObject();
+        writer.key(kLatitudeKey).value(locationPoint.latitude);
+        writer.key(kLongitudeKey).value(locationPoint.longitude);
+        writer.endObject();
+    }
 
+    /**
+     * Sends a new event to its subscribers and to its callback. Events replayed from the
+     * journal are only sent to the callback.
+     */
+    private void publishEvent(ZendriveEventType eventType, String encodedEvent) {
+        boolean isPublished = eventSubscribers.publish(eventType, encodedEvent);
+        deliverEvent(eventType, encodedEvent, isPublished);
     }
 
-    public void onLocationSettingsChange(ZendriveLocationSettingsResult zendriveLocationSettingsResult) {
+    /**
+     * Sends an event to its callback, or journals it if there is none. isPublished tells
+     * whether subscribers were sent the event, in which case it is not dropped when it cannot
+     * be journaled.
+     */
+    private void deliverEvent(ZendriveEventType eventType, String encodedEvent,
+                              boolean isPublished) {
+        CallbackContext callbackContext = eventCallbacks.get(eventType.ordinal());
+        if (callbackContext == null || callbackContext.isFinished()) {
+            journalEvent(eventType, encodedEvent, isPublished);
+            return;
+        }
+        // Batched events are counted once their batch is sent, since they are journaled
+        // instead if the callback is removed in the meantime
+        if (eventBatcher.addIfEnabled(callbackContext, eventType, encodedEvent)) {
+            return;
+        }
+        sendKeepCallbackResult(callbackContext, encodedEvent);
+        metrics.countEvent(eventType, ZendrivePluginMetrics.EventOutcome.DELIVERED);
+    }
 
+    private void sendKeepCallbackResult(CallbackContext callbackContext, String encodedEvent) {
+        PluginResult result = new ZendriveJsonPluginResult(PluginResult.Status.OK, encodedEvent);
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+    }
+
+    private void deliverBatch(CallbackContext callbackContext, ZendriveEventType eventType,
+                              List<String> encodedEvents) {
+        if (callbackContext.isFinished()) {
+            // Callback was removed while the batch was pending
+            for (String encodedEvent : encodedEvents) {
+                // Whether subscribers were sent these events is not kept with the batch
+                journalEvent(eventType, encodedEvent, false);
+            }
+            return;
+        }
+        StringBuilder encodedBatch = new StringBuilder();
+        encodedBatch.append('[');
+        for (int i = 0; i < encodedEvents.size(); i++) {
+            if (i > 0) {
+                encodedBatch.append(',');
+            }
+            encodedBatch.append(encodedEvents.get(i));
+        }
+        encodedBatch.append(']');
+        PluginResult result = new ZendriveJsonPluginResult(PluginResult.Status.OK,
+                encodedBatch.toString());
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+        metrics.countEvents(eventType, ZendrivePluginMetrics.EventOutcome.DELIVERED,
+                encodedEvents.size());
+    }
+
+    private void journalEvent(ZendriveEventType eventType, String encodedEvent,
+                              boolean isPublished) {
+        ZendriveEventJournal journal = eventJournal;
+        if (null == journal || !eventType.isJournaled) {
+            if (!isPublished) {
+                Log.w(TAG, "Dropping " + eventType.journalName +
+                        " event, no callback or subscriber registered");
+                metrics.countEvent(eventType, ZendrivePluginMetrics.EventOutcome.DROPPED);
+            }
+            return;
+        }
+        journal.append(eventType.journalName, encodedEvent);
+        metrics.countEvent(eventType, ZendrivePluginMetrics.EventOutcome.JOURNALED);
+    }
+
+    /**
+     * Sends events journaled while no callback was registered to the new callback. This is
+     * done on the event dispatcher so that replayed events are delivered before new ones.
+     * Called on the cordova bridge thread, which does not wait for a full event queue.
+     */
+    private void replayJournaledEvents(final ZendriveEventType eventType) {
+        final ZendriveEventJournal journal = eventJournal;
+        if (null == journal) {
+            return;
+        }
+        Runnable replayEvents = new Runnable() {
+            @Override
+            public void run() {
+                ZendriveEventJournal.Drain drain = journal.drain(eventType.journalName);
+                try {
+                    for (String payload : drain.payloads) {
+                        if (ZendriveEventType.DRIVE_END == eventType) {
+                            replayDriveEnd(payload);
+                            continue;
+                        }
+                        // The journal only returns records whose checksum matches, so payloads
+                        // are sent as they were journaled without parsing them
+                        metrics.countEvent(eventType,
+                                ZendrivePluginMetrics.EventOutcome.REPLAYED);
+                        deliverEvent(eventType, payload, false);
+                    }
+                    // Events journaled again because the callback was removed meanwhile are
+                    // appended after the drained records and kept
+                    journal.commit(drain);
+                } finally {
+                    journal.release(drain);
+                }
+            }
+        };
+        // If torn down, the events stay journaled for the callback of the current manager
+        eventDispatcher.dispatchWithoutWaiting(replayEvents, null);
+    }
+
+    private void replayDriveEnd(String encodedDrive) {
+        ZendriveDriveRecord drive;
+        try {
+            drive = ZendriveDriveRecord.decode(encodedDrive);
+        } catch (JSONException e) {
+            Log.e(TAG, "Discarding corrupt journaled drive", e);
+            return;
+        }
+        metrics.countEvent(ZendriveEventType.DRIVE_END,
+                ZendrivePluginMetrics.EventOutcome.REPLAYED);
+        sendDriveEnd(drive, true);
     }
 }
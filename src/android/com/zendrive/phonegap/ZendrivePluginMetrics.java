@@ -0,0 +1,274 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms for SDK events and plugin actions, reported to javascript
+ * by the getPluginMetrics action.
+ *
+ * Recording takes a few atomic increments and never locks, so it is done unconditionally on
+ * the hot paths. A snapshot taken while values are recorded may be off by the values being
+ * recorded, and so may a reset.
+ */
+final class ZendrivePluginMetrics {
+
+    // Metrics dictionary keys
+    private static final String kEventsKey = "events";
+    private static final String kActionsKey = "actions";
+    private static final String kDispatcherKey = "dispatcher";
+    private static final String kReceivedKey = "received";
+    private static final String kDeliveredKey = "delivered";
+    private static final String kJournaledKey = "journaled";
+    private static final String kDroppedKey = "dropped";
+    private static final String kReplayedKey = "replayed";
+    private static final String kLatencyKey = "latency";
+    private static final String kCountKey = "count";
+    private static final String kFailedKey = "failed";
+    private static final String kMeanKey = "mean";
+    private static final String kMaxKey = "max";
+    private static final String kP50Key = "p50";
+    private static final String kP90Key = "p90";
+    private static final String kP99Key = "p99";
+    private static final String kQueueDepthKey = "queueDepth";
+    private static final String kMaxQueueDepthKey = "maxQueueDepth";
+    private static final String kDispatchedCountKey = "dispatchedCount";
+    private static final String kThrottledCountKey = "throttledCount";
+
+    /**
+     * What happened to an SDK event.
+     */
+    enum EventOutcome {
+        // Handed to the SDK callback of the plugin
+        RECEIVED(kReceivedKey),
+        // Sent to javascript, or added to a batch which will be
+        DELIVERED(kDeliveredKey),
+        // Written to the journal because no callback was registered
+        JOURNALED(kJournaledKey),
+        // Discarded because no callback was registered and the event is not journaled
+        DROPPED(kDroppedKey),
+        // Read back from the journal for a newly registered callback
+        REPLAYED(kReplayedKey);
+
+        final String key;
+
+        EventOutcome(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final ZendrivePluginMetrics sharedInstance = new ZendrivePluginMetrics();
+
+    private final AtomicLongArray eventCounts = new AtomicLongArray(
+            ZendriveEventType.values().length * EventOutcome.values().length);
+    private final LatencyHistogram[] eventLatencies =
+            new LatencyHistogram[ZendriveEventType.values().length];
+    private final ConcurrentMap<String, ActionMetrics> actionMetrics =
+            new ConcurrentHashMap<String, ActionMetrics>();
+
+    private ZendrivePluginMetrics() {
+        for (int i = 0; i < eventLatencies.length; i++) {
+            eventLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    static ZendrivePluginMetrics getSharedInstance() {
+        return sharedInstance;
+    }
+
+    void countEvent(ZendriveEventType eventType, EventOutcome outcome) {
+        countEvents(eventType, outcome, 1);
+    }
+
+    void countEvents(ZendriveEventType eventType, EventOutcome outcome, int count) {
+        eventCounts.addAndGet(
+                eventType.ordinal() * EventOutcome.values().length + outcome.ordinal(), count);
+    }
+
+    /**
+     * Records the time from the SDK handing an event to the plugin until the event was
+     * delivered, batched or journaled.
+     */
+    void recordEventLatency(ZendriveEventType eventType, long receivedAtNanos) {
+        eventLatencies[eventType.ordinal()].record(System.nanoTime() - receivedAtNanos);
+    }
+
+    /**
+     * Records the time from cordova calling execute until the handler of action returned.
+     */
+    void recordAction(String action, long startedAtNanos, boolean failed) {
+        ActionMetrics metrics = actionMetrics.get(action);
+        if (null == metrics) {
+            ActionMetrics newMetrics = new ActionMetrics();
+            metrics = actionMetrics.putIfAbsent(action, newMetrics);
+            if (null == metrics) {
+                metrics = newMetrics;
+            }
+        }
+        metrics.latency.record(System.nanoTime() - startedAtNanos);
+        if (failed) {
+            metrics.failedCount.incrementAndGet();
+        }
+    }
+
+    JSONObject toJSONObject(ZendriveEventDispatcher eventDispatcher) throws JSONException {
+        JSONObject eventsObject = new JSONObject();
+        for (ZendriveEventType eventType : ZendriveEventType.values()) {
+            JSONObject eventObject = new JSONObject();
+            for (EventOutcome outcome : EventOutcome.values()) {
+                eventObject.put(outcome.key, eventCounts.get(
+                        eventType.ordinal() * EventOutcome.values().length + outcome.ordinal()));
+            }
+            eventObject.put(kLatencyKey, eventLatencies[eventType.ordinal()].toJSONObject());
+            eventsObject.put(eventType.journalName, eventObject);
+        }
+
+        JSONObject actionsObject = new JSONObject();
+        for (Map.Entry<String, ActionMetrics> entry : actionMetrics.entrySet()) {
+            JSONObject actionObject = entry.getValue().latency.toJSONObject();
+            actionObject.put(kFailedKey, entry.getValue().failedCount.get());
+            actionsObject.put(entry.getKey(), actionObject);
+        }
+
+        JSONObject dispatcherObject = new JSONObject();
+        dispatcherObject.put(kQueueDepthKey, eventDispatcher.getQueueDepth());
+        dispatcherObject.put(kMaxQueueDepthKey, eventDispatcher.getMaxQueueDepth());
+        dispatcherObject.put(kDispatchedCountKey, eventDispatcher.getDispatchedCount());
+        dispatcherObject.put(kThrottledCountKey, eventDispatcher.getThrottledCount());
+
+        JSONObject metricsObject = new JSONObject();
+        metricsObject.put(kEventsKey, eventsObject);
+        metricsObject.put(kActionsKey, actionsObject);
+        metricsObject.put(kDispatcherKey, dispatcherObject);
+        return metricsObject;
+    }
+
+    void reset(ZendriveEventDispatcher eventDispatcher) {
+        eventDispatcher.resetMetrics();
+        for (int i = 0; i < eventCounts.length(); i++) {
+            eventCounts.set(i, 0);
+        }
+        for (LatencyHistogram histogram : eventLatencies) {
+            histogram.reset();
+        }
+        for (ActionMetrics metrics : actionMetrics.values()) {
+            metrics.latency.reset();
+            metrics.failedCount.set(0);
+        }
+    }
+
+    private static final class ActionMetrics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong failedCount = new AtomicLong();
+    }
+
+    /**
+     * Histogram of latencies in microseconds with log-linear buckets, as in HdrHistogram. Values
+     * below kLinearLimit get a bucket each, larger values share a bucket with values having the
+     * same highest kSubBucketBits + 1 bits, so reported percentiles are within 12.5% of the
+     * recorded values. Latencies above about 70 minutes all land in the last bucket.
+     */
+    static final class LatencyHistogram {
+        private static final int kSubBucketBits = 3;
+        private static final int kSubBucketCount = 1 << kSubBucketBits;
+        private static final int kLinearLimit = 2 * kSubBucketCount;
+        private static final int kMaxExponent = 31;
+        private static final int kBucketCount =
+                kLinearLimit + (kMaxExponent - kSubBucketBits) * kSubBucketCount;
+
+        private final AtomicLongArray bucketCounts = new AtomicLongArray(kBucketCount);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            bucketCounts.incrementAndGet(bucketIndex(micros));
+            count.incrementAndGet();
+            totalMicros.addAndGet(micros);
+
+            long currentMax = maxMicros.get();
+            while (micros > currentMax && !maxMicros.compareAndSet(currentMax, micros)) {
+                currentMax = maxMicros.get();
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < kBucketCount; i++) {
+                bucketCounts.set(i, 0);
+            }
+            count.set(0);
+            totalMicros.set(0);
+            maxMicros.set(0);
+        }
+
+        /**
+         * Returns the count, and the mean, max and percentiles in milliseconds.
+         */
+        JSONObject toJSONObject() throws JSONException {
+            long[] counts = new long[kBucketCount];
+            long total = 0;
+            for (int i = 0; i < kBucketCount; i++) {
+                counts[i] = bucketCounts.get(i);
+                total += counts[i];
+            }
+
+            JSONObject histogramObject = new JSONObject();
+            histogramObject.put(kCountKey, total);
+            histogramObject.put(kMeanKey,
+                    (total > 0) ? microsToMillis(totalMicros.get()) / total : 0);
+            histogramObject.put(kMaxKey, microsToMillis(maxMicros.get()));
+            histogramObject.put(kP50Key, microsToMillis(percentile(counts, total, 0.50)));
+            histogramObject.put(kP90Key, microsToMillis(percentile(counts, total, 0.90)));
+            histogramObject.put(kP99Key, microsToMillis(percentile(counts, total, 0.99)));
+            return histogramObject;
+        }
+
+        private static long percentile(long[] counts, long total, double fraction) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * fraction));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return bucketUpperBound(counts.length - 1);
+        }
+
+        private static int bucketIndex(long micros) {
+            if (micros < kLinearLimit) {
+                return (int) micros;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            if (exponent > kMaxExponent) {
+                return kBucketCount - 1;
+            }
+            int subBucket = (int) (micros >>> (exponent - kSubBucketBits)) & (kSubBucketCount - 1);
+            return kLinearLimit + (exponent - kSubBucketBits - 1) * kSubBucketCount + subBucket;
+        }
+
+        private static long bucketUpperBound(int index) {
+            if (index < kLinearLimit) {
+                return index;
+            }
+            int exponent = (index - kLinearLimit) / kSubBucketCount + kSubBucketBits + 1;
+            int subBucket = (index - kLinearLimit) % kSubBucketCount;
+            int shift = exponent - kSubBucketBits;
+            return (((long) (kSubBucketCount + subBucket + 1)) << shift) - 1;
+        }
+
+        private static double microsToMillis(long micros) {
+            return micros / 1000.0;
+        }
+    }
+}
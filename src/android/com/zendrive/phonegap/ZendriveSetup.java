@@ -0,0 +1,472 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.Zendrive;
+import com.zendrive.sdk.ZendriveConfiguration;
+import com.zendrive.sdk.ZendriveDriveDetectionMode;
+import com.zendrive.sdk.ZendriveDriverAttributes;
+import com.zendrive.sdk.ZendriveOperationCallback;
+import com.zendrive.sdk.ZendriveOperationResult;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sets up the Zendrive SDK from the configuration dictionary passed to Zendrive.setup in
+ * zendrive.js.
+ *
+ * The application key, driver id and drive detection mode of the last successful setup are
+ * cached, so that when the SDK starts the app process in the background the SDK is set up
+ * again natively by the intent service, without waiting for the webview to load and javascript
+ * to call setup. Driver attributes are not cached, the SDK got them with the setup from
+ * javascript. The fingerprint of the whole configuration is cached instead, so that setting up
+ * again from javascript after a restore is still recognized as the same configuration.
+ *
+ * Setup is idempotent within a process. The configuration applied by the last successful setup
+ * is remembered as a fingerprint of everything but the drive detection mode, so that setting up
+ * again with the same configuration completes immediately, and a configuration which differs
+ * only in its drive detection mode just changes the mode of the running SDK.
+ */
+final class ZendriveSetup {
+    private static final String TAG = "ZendriveSetup";
+
+    private static final String kPreferencesName = "zendrive_setup";
+    private static final String kConfigurationPreference = "configuration";
+
+    // Name of the command queue command which restores the cached setup
+    private static final String kRestoreSetupCommand = "restoreSetup";
+
+    // ZendriveDriverAttributes dictionary keys
+    private static final String kCustomAttributesKey = "customAttributes";
+    private static final String kDriverAttributesKey = "driverAttributes";
+
+    private static final String kDriveDetectionModeKey = "driveDetectionMode";
+
+    // Cached configuration dictionary keys
+    private static final String kApplicationKeyKey = "applicationKey";
+    private static final String kDriverIdKey = "driverId";
+    private static final String kFingerprintKey = "fingerprint";
+
+    // Set once setup was requested in this process, from javascript or from the cache
+    private static final AtomicBoolean isSetupRequested = new AtomicBoolean();
+
+    interface SetupCallback {
+        void onCompletion(boolean isSuccess);
+    }
+
+    private static final class AppliedConfiguration {
+        final String fingerprint;
+        final int driveDetectionModeInt;
+
+        AppliedConfiguration(String fingerprint, int driveDetectionModeInt) {
+            this.fingerprint = fingerprint;
+            this.driveDetectionModeInt = driveDetectionModeInt;
+        }
+    }
+
+    // Configuration the SDK is set up with in this process, null if it is not set up
+    private static AppliedConfiguration appliedConfiguration;
+
+    private ZendriveSetup() {
+    }
+
+    static boolean hasDriveDetectionMode(JSONObject configJsonObj) {
+        return hasValidValueForKey(configJsonObj, kDriveDetectionModeKey);
+    }
+
+    /**
+     * Sets up the SDK with a configuration which has a drive detection mode. On success the
+     * configuration is cached, callback may be null.
+     *
+     * Nothing is pushed to the SDK if it is already set up with the same configuration, and
+     * only the drive detection mode is if that is all that changed.
+     */
+    static void setup(Context context, JSONObject configJsonObj, SetupCallback callback)
+            throws JSONException {
+        setup(context, configJsonObj, getFingerprint(configJsonObj), callback);
+    }
+
+    private static void setup(Context context, final JSONObject configJsonObj,
+                              final String fingerprint, final SetupCallback callback)
+            throws JSONException {
+        final Context applicationContext = context.getApplicationContext();
+        isSetupRequested.set(true);
+
+        final int driveDetectionModeInt = configJsonObj.getInt(kDriveDetectionModeKey);
+        AppliedConfiguration applied = getAppliedConfiguration();
+        if (null != applied && applied.fingerprint.equals(fingerprint)) {
+            if (applied.driveDetectionModeInt != driveDetectionModeInt) {
+                Zendrive.setZendriveDriveDetectionMode(
+                        getDriveDetectionModeFromInt(driveDetectionModeInt));
+                updateCachedDriveDetectionMode(applicationContext, driveDetectionModeInt);
+            }
+            if (null != callback) {
+                callback.onCompletion(true);
+            }
+            return;
+        }
+
+        Zendrive.setup(applicationContext, getConfiguration(configJsonObj),
+                ZendriveIntentService.class,
+                new ZendriveOperationCallback() {
+                    @Override
+                    public void onCompletion(ZendriveOperationResult zendriveOperationResult) {
+                        boolean isSuccess = zendriveOperationResult.isSuccess();
+                        if (isSuccess) {
+                            // Active drive info read while the SDK was not set up is stale
+                            ZendriveManager.getSharedInstance().invalidateActiveDriveInfo();
+                            setAppliedConfiguration(new AppliedConfiguration(fingerprint,
+                                    driveDetectionModeInt));
+                            cacheConfiguration(applicationContext, configJsonObj, fingerprint);
+                        }
+                        else {
+                            setAppliedConfiguration(null);
+                        }
+                        if (null != callback) {
+                            callback.onCompletion(isSuccess);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Sets up the SDK with the cached configuration, unless setup was already requested in
+     * this process or javascript never set up the SDK. Called whenever the intent service
+     * starts, nothing is queued once setup was requested.
+     *
+     * The restore goes through the command queue like the setup and teardown calls from
+     * javascript, so the configuration remembered as applied is always the one the SDK was
+     * last set up with. Whether to restore is decided when the command runs, after any setup or
+     * teardown javascript issued before it.
+     */
+    static void restoreFromCache(Context context) {
+        if (isSetupRequested.get()) {
+            return;
+        }
+        final Context applicationContext = context.getApplicationContext();
+        ZendriveCommandQueue.getSharedInstance().enqueue(
+                new ZendriveCommandQueue.Command(kRestoreSetupCommand, null, null) {
+                    @Override
+                    void execute() {
+                        restoreFromCache(applicationContext, this);
+                    }
+                });
+    }
+
+    private static void restoreFromCache(Context context,
+                                         final ZendriveCommandQueue.Command command) {
+        String cachedConfiguration = getPreferences(context).getString(
+                kConfigurationPreference, null);
+        if (null == cachedConfiguration || !isSetupRequested.compareAndSet(false, true)) {
+            command.success();
+            return;
+        }
+        try {
+            JSONObject cachedConfigJsonObj = new JSONObject(cachedConfiguration);
+            setup(context, cachedConfigJsonObj, cachedConfigJsonObj.getString(kFingerprintKey),
+                    new SetupCallback() {
+                @Override
+                public void onCompletion(boolean isSuccess) {
+                    if (isSuccess) {
+                        command.success();
+                    }
+                    else {
+                        command.error("Zendrive setup failed");
+                    }
+                }
+            });
+        } catch (JSONException e) {
+            Log.e(TAG, "Discarding corrupt cached configuration", e);
+            getPreferences(context).edit().remove(kConfigurationPreference).apply();
+            isSetupRequested.set(false);
+            command.success();
+        }
+    }
+
+    /**
+     * Caches what restoreFromCache needs to set up the SDK with configJsonObj again.
+     */
+    static void cacheConfiguration(Context context, JSONObject configJsonObj)
+            throws JSONException {
+        cacheConfiguration(context, configJsonObj, getFingerprint(configJsonObj));
+    }
+
+    private static void cacheConfiguration(Context context, JSONObject configJsonObj,
+                                           String fingerprint) {
+        try {
+            JSONObject cachedConfigJsonObj = new JSONObject();
+            cachedConfigJsonObj.put(kApplicationKeyKey, configJsonObj.opt(kApplicationKeyKey));
+            cachedConfigJsonObj.put(kDriverIdKey, configJsonObj.opt(kDriverIdKey));
+            cachedConfigJsonObj.put(kDriveDetectionModeKey,
+                    configJsonObj.getInt(kDriveDetectionModeKey));
+            cachedConfigJsonObj.put(kFingerprintKey, fingerprint);
+            getPreferences(context).edit()
+                    .putString(kConfigurationPreference, cachedConfigJsonObj.toString())
+                    .apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to cache configuration", e);
+        }
+    }
+
+    /**
+     * Keeps the cached configuration in sync with drive detection mode changes made after
+     * setup.
+     */
+    static void updateCachedDriveDetectionMode(Context context, int driveDetectionModeInt) {
+        synchronized (ZendriveSetup.class) {
+            if (null != appliedConfiguration) {
+                appliedConfiguration = new AppliedConfiguration(
+                        appliedConfiguration.fingerprint, driveDetectionModeInt);
+            }
+        }
+        SharedPreferences preferences = getPreferences(context);
+        String cachedConfiguration = preferences.getString(kConfigurationPreference, null);
+        if (null == cachedConfiguration) {
+            return;
+        }
+        try {
+            JSONObject configJsonObj = new JSONObject(cachedConfiguration);
+            configJsonObj.put(kDriveDetectionModeKey, driveDetectionModeInt);
+            preferences.edit().putString(kConfigurationPreference, configJsonObj.toString())
+                    .apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Discarding corrupt cached configuration", e);
+            preferences.edit().remove(kConfigurationPreference).apply();
+        }
+    }
+
+    /**
+     * Forgets the cached configuration, so that the SDK stays torn down in future processes.
+     */
+    static void teardown(Context context) {
+        getPreferences(context).edit().remove(kConfigurationPreference).apply();
+        setAppliedConfiguration(null);
+        isSetupRequested.set(false);
+    }
+
+    private static synchronized AppliedConfiguration getAppliedConfiguration() {
+        return appliedConfiguration;
+    }
+
+    private static synchronized void setAppliedConfiguration(AppliedConfiguration applied) {
+        appliedConfiguration = applied;
+    }
+
+    /**
+     * Hashes everything in the configuration but the drive detection mode. Keys are hashed in
+     * sorted order, so the fingerprint does not depend on the order in which javascript built
+     * the configuration.
+     */
+    private static String getFingerprint(JSONObject configJsonObj) throws JSONException {
+        StringBuilder canonical = new StringBuilder();
+        appendCanonical(canonical, configJsonObj, kDriveDetectionModeKey);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(canonical.toString().getBytes("UTF-8"));
+            StringBuilder fingerprint = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                fingerprint.append(Character.forDigit((b >> 4) & 0xF, 16));
+                fingerprint.append(Character.forDigit(b & 0xF, 16));
+            }
+            return fingerprint.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every android release has SHA-256, fall back to comparing the configurations
+            return canonical.toString();
+        } catch (UnsupportedEncodingException e) {
+            return canonical.toString();
+        }
+    }
+
+    private static void appendCanonical(StringBuilder builder, Object value, String excludedKey)
+            throws JSONException {
+        if (value instanceof JSONObject) {
+            JSONObject jsonObject = (JSONObject) value;
+            List<String> keys = new ArrayList<String>(jsonObject.length());
+            Iterator<?> keysIterator = jsonObject.keys();
+            while (keysIterator.hasNext()) {
+                String key = (String) keysIterator.next();
+                if (!key.equals(excludedKey)) {
+                    keys.add(key);
+                }
+            }
+            Collections.sort(keys);
+            builder.append('{');
+            for (String key : keys) {
+                builder.append(JSONObject.quote(key)).append(':');
+                appendCanonical(builder, jsonObject.get(key), null);
+                builder.append(',');
+            }
+            builder.append('}');
+        }
+        else if (value instanceof JSONArray) {
+            JSONArray jsonArray = (JSONArray) value;
+            builder.append('[');
+            for (int i = 0; i < jsonArray.length(); i++) {
+                appendCanonical(builder, jsonArray.get(i), null);
+                builder.append(',');
+            }
+            builder.append(']');
+        }
+        else if (value instanceof String) {
+            builder.append(JSONObject.quote((String) value));
+        }
+        else {
+            // Numbers, booleans and JSONObject.NULL
+            builder.append(value);
+        }
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getApplicationContext().getSharedPreferences(kPreferencesName,
+                Context.MODE_PRIVATE);
+    }
+
+    private static ZendriveConfiguration getConfiguration(JSONObject configJsonObj)
+            throws JSONException {
+        String applicationKey = getApplicationKey(configJsonObj);
+        String driverId = getDriverId(configJsonObj);
+        int driveDetectionModeInt = configJsonObj.getInt(kDriveDetectionModeKey);
+
+        ZendriveDriveDetectionMode mode = getDriveDetectionModeFromInt(driveDetectionModeInt);
+        ZendriveConfiguration configuration = new ZendriveConfiguration(applicationKey, driverId,
+                mode);
+
+        ZendriveDriverAttributes driverAttributes = getDriverAttrsFromJsonObject(configJsonObj);
+        if (driverAttributes != null) {
+            configuration.setDriverAttributes(driverAttributes);
+        }
+        return configuration;
+    }
+
+    static ZendriveDriveDetectionMode getDriveDetectionModeFromInt(Integer driveDetectionModeInt) {
+        ZendriveDriveDetectionMode mode = driveDetectionModeInt == 1 ?
+                ZendriveDriveDetectionMode.AUTO_OFF : ZendriveDriveDetectionMode.AUTO_ON;
+        return mode;
+    }
+
+    static ZendriveDriverAttributes getDriverAttrsFromJsonObject(JSONObject configJsonObj)
+            throws JSONException {
+        Object driverAttributesObj = getObjectFromJSONObject(configJsonObj, kDriverAttributesKey);
+        ZendriveDriverAttributes driverAttributes = null;
+        if (null != driverAttributesObj && !JSONObject.NULL.equals(driverAttributesObj)) {
+            JSONObject driverAttrJsonObj = (JSONObject) driverAttributesObj;
+            driverAttributes = new ZendriveDriverAttributes();
+
+            Object firstName = getObjectFromJSONObject(driverAttrJsonObj, "firstName");
+            if (!isNull(firstName)) {
+                try {
+                    driverAttributes.setFirstName(firstName.toString());
+                }
+                catch (Exception e) {}
+            }
+
+            Object lastName = getObjectFromJSONObject(driverAttrJsonObj, "lastName");
+            if (!isNull(lastName)) {
+                try {
+                    driverAttributes.setLastName(lastName.toString());
+                }
+                catch (Exception e) {}
+            }
+
+            Object email = getObjectFromJSONObject(driverAttrJsonObj, "email");
+            if (!isNull(email)) {
+                try {
+                    driverAttributes.setEmail(email.toString());
+                }
+                catch (Exception e) {}
+            }
+
+            Object group = getObjectFromJSONObject(driverAttrJsonObj, "group");
+            if (!isNull(group)) {
+                try {
+                    driverAttributes.setGroup(group.toString());
+                }
+                catch (Exception e) {}
+            }
+
+            Object phoneNumber = getObjectFromJSONObject(driverAttrJsonObj, "phoneNumber");
+            if (!isNull(phoneNumber)) {
+                try {
+                    driverAttributes.setPhoneNumber(phoneNumber.toString());
+                }
+                catch (Exception e) {}
+            }
+
+            Object driverStartDateStr = getObjectFromJSONObject(driverAttrJsonObj, "driverStartDate");
+            if (!isNull(driverStartDateStr)) {
+                try {
+                    Long driverStartDateTimestampInMillis = Long.parseLong(driverStartDateStr.toString())*1000;
+                    Date driverStartDate = new Date(driverStartDateTimestampInMillis);
+                    driverAttributes.setDriverStartDate(driverStartDate);
+                }
+                catch (Exception e) {}
+
+            }
+
+            if (hasValidValueForKey(driverAttrJsonObj, kCustomAttributesKey)) {
+                JSONObject customAttrs = driverAttrJsonObj.getJSONObject(kCustomAttributesKey);
+                Iterator<?> keys = customAttrs.keys();
+                while( keys.hasNext() ) {
+                    String key = (String)keys.next();
+                    Object value = getObjectFromJSONObject(customAttrs, key);
+                    if (value instanceof String) {
+                        try {
+                            driverAttributes.setCustomAttribute(key, (String)value);
+                        }
+                        catch (Exception e) {}
+                    }
+                }
+            }
+        }
+
+        return driverAttributes;
+    }
+
+    // UTILITY METHODS
+    private static Boolean isNull(Object object) {
+        return ((object == null) || JSONObject.NULL.equals(object));
+    }
+
+    private static Object getObjectFromJSONObject(JSONObject jsonObject, String key) throws JSONException {
+        if (hasValidValueForKey(jsonObject, key)) {
+            return jsonObject.get(key);
+        }
+        return null;
+    }
+
+    private static Boolean hasValidValueForKey(JSONObject jsonObject, String key) {
+        return (jsonObject.has(key) && !jsonObject.isNull(key));
+    }
+
+    private static String getDriverId(JSONObject configJsonObj) throws JSONException {
+        Object driverIdObj = getObjectFromJSONObject(configJsonObj, "driverId");
+        String driverId = null;
+        if (!isNull(driverIdObj)) {
+            driverId = driverIdObj.toString();
+        }
+        return driverId;
+    }
+
+    private static String getApplicationKey(JSONObject configJsonObj) throws JSONException {
+        Object applicationKeyObj = getObjectFromJSONObject(configJsonObj, "applicationKey");
+        String applicationKey = null;
+        if (!isNull(applicationKeyObj)) {
+            applicationKey = applicationKeyObj.toString();
+        }
+        return applicationKey;
+    }
+}
@@ -231,6 +231,25 @@ static NSString * const kDriverAttributesKey = @"driverAttributes";
     }
 }
 
+#pragma mark - Android only delegate callbacks
+// The iOS SDK does not report these events. The callbacks are deleted right away so that
+// registerForDelegateCallbacks works the same on both platforms.
+- (void)setProcessResumeOfDriveDelegateCallback:(CDVInvokedUrlCommand*)command {
+    [self deleteUnsupportedCallback:command];
+}
+
+- (void)setProcessAccidentDetectedDelegateCallback:(CDVInvokedUrlCommand*)command {
+    [self deleteUnsupportedCallback:command];
+}
+
+- (void)setProcessLocationPermissionsChangeDelegateCallback:(CDVInvokedUrlCommand*)command {
+    [self deleteUnsupportedCallback:command];
+}
+
+- (void)setProcessLocationSettingsChangeDelegateCallback:(CDVInvokedUrlCommand*)command {
+    [self deleteUnsupportedCallback:command];
+}
+
 #pragma mark - ZendriveDelegateProtocol
 - (void)processStartOfDrive:(ZendriveDriveStartInfo *)startInfo {
     if (!self.processStartOfDriveCallbackId) {
@@ -285,6 +304,14 @@ static NSString * const kDriverAttributesKey = @"driverAttributes";
 
 #pragma mark - Utility methods
 
+- (void)deleteUnsupportedCallback:(CDVInvokedUrlCommand*)command {
+    // Sending NO_RESULT doesn't call any js callback method, and setting keepCallbackAsBool
+    // to NO deletes the callback from memory
+    CDVPluginResult *pluginResult = [CDVPluginResult resultWithStatus:CDVCommandStatus_NO_RESULT];
+    [pluginResult setKeepCallbackAsBool:NO];
+    [self.commandDelegate sendPluginResult:pluginResult callbackId:command.callbackId];
+}
+
 - (ZendriveDriverAttributes *)driverAttrsFromDictionary:(NSDictionary *)driverAttrsDictionary {
     if ([self isNULL:driverAttrsDictionary]) {
         return nil;
@@ -0,0 +1,100 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.ActiveDriveInfo;
+import com.zendrive.sdk.ZendriveDriverAttributes;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plugin actions javascript calls on the bridge thread. Run with -prof gc for allocation
+ * rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BridgeActionBenchmark {
+
+    // Configuration as built by Zendrive.ZendriveConfiguration in zendrive.js
+    static final String kConfiguration = "{\"applicationKey\":\"application-key\"," +
+            "\"driverId\":\"driver-1\",\"driveDetectionMode\":0,\"driverAttributes\":{" +
+            "\"firstName\":\"First\",\"lastName\":\"Last\",\"email\":\"e@mail.com\"," +
+            "\"group\":\"group1\",\"phoneNumber\":\"11234567890\"," +
+            "\"driverStartDate\":1428953991,\"customAttributes\":{\"custom_key\":" +
+            "\"custom_value\",\"region\":\"west\",\"vehicle\":\"truck\"}}}";
+
+    private static final long kAwaitTimeoutMillis = 10000;
+
+    @State(Scope.Benchmark)
+    public static class HarnessState {
+        ReplayHarness harness;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            harness = new ReplayHarness();
+            ActiveDriveInfo activeDriveInfo = new ActiveDriveInfo();
+            activeDriveInfo.startTimeMillis = 1500000000000L;
+            activeDriveInfo.trackingId = "tracking-1";
+            activeDriveInfo.sessionId = "session-1";
+            harness.getSdk().setActiveDriveInfo(activeDriveInfo);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            harness.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ConfigurationState {
+        JSONObject configJsonObj;
+
+        @Setup(Level.Trial)
+        public void setUp() throws JSONException {
+            configJsonObj = new JSONObject(kConfiguration);
+        }
+    }
+
+    /**
+     * getActiveDriveInfo while no drive event invalidated the cached answer, which is sent
+     * inline.
+     */
+    @Benchmark
+    public List<RecordingCallbackContext.Result> getActiveDriveInfoCached(HarnessState state)
+            throws InterruptedException {
+        return state.harness.exec("getActiveDriveInfo").awaitResults(1, kAwaitTimeoutMillis);
+    }
+
+    /**
+     * getActiveDriveInfo right after a drive event, which queries the SDK on the thread pool.
+     */
+    @Benchmark
+    public List<RecordingCallbackContext.Result> getActiveDriveInfoUncached(HarnessState state)
+            throws InterruptedException {
+        ZendriveManager.getSharedInstance().invalidateActiveDriveInfo();
+        return state.harness.exec("getActiveDriveInfo").awaitResults(1, kAwaitTimeoutMillis);
+    }
+
+    @Benchmark
+    public ZendriveDriverAttributes getDriverAttrsFromJsonObject(ConfigurationState state)
+            throws JSONException {
+        return ZendriveSetup.getDriverAttrsFromJsonObject(state.configJsonObj);
+    }
+}
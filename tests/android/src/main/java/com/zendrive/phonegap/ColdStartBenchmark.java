@@ -0,0 +1,95 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from the start of the app process until the SDK is set up and the setup call of
+ * javascript succeeded. Every measurement is a new JVM, so that the plugin starts cold as it
+ * does in a new app process.
+ *
+ * The webview takes webviewLoadMillis to load before javascript calls setup, and the SDK
+ * completes setup setupLatencyMillis after it is called.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class ColdStartBenchmark {
+
+    private static final long kAwaitTimeoutMillis = 10000;
+
+    @State(Scope.Benchmark)
+    public static class ProcessState {
+        @Param({"0", "300"})
+        public long webviewLoadMillis;
+
+        @Param({"100"})
+        public long setupLatencyMillis;
+
+        ReplayHarness harness;
+        JSONObject configuration;
+
+        @Setup(Level.Trial)
+        public void setUp() throws JSONException {
+            harness = new ReplayHarness();
+            harness.getSdk().setSetupLatencyMillis(setupLatencyMillis);
+            configuration = new JSONObject(BridgeActionBenchmark.kConfiguration);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            harness.close();
+        }
+
+        List<RecordingCallbackContext.Result> setupFromJavascript()
+                throws InterruptedException {
+            Thread.sleep(webviewLoadMillis);
+            List<RecordingCallbackContext.Result> results = harness.exec("setup", configuration)
+                    .awaitResults(1, kAwaitTimeoutMillis);
+            if (1 != results.size()) {
+                throw new IllegalStateException("Setup did not complete");
+            }
+            return results;
+        }
+    }
+
+    /**
+     * First launch, or a launch by the user: nothing is cached, the SDK is set up once
+     * javascript calls setup.
+     */
+    @Benchmark
+    public List<RecordingCallbackContext.Result> withoutCachedSetup(ProcessState state)
+            throws InterruptedException {
+        return state.setupFromJavascript();
+    }
+
+    /**
+     * Relaunch: the intent service restores the cached setup while the webview loads, and the
+     * setup call of javascript finds the SDK set up with the same configuration.
+     */
+    @Benchmark
+    public List<RecordingCallbackContext.Result> withCachedSetup(ProcessState state)
+            throws InterruptedException, JSONException {
+        state.harness.cacheSetupConfiguration(state.configuration);
+        state.harness.startService();
+        return state.setupFromJavascript();
+    }
+}
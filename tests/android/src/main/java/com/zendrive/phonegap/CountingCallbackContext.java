@@ -0,0 +1,45 @@
+package com.zendrive.phonegap;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+/**
+ * Callback context which only counts the results it receives, for benchmarks which send too
+ * many results to record them all.
+ */
+public final class CountingCallbackContext extends CallbackContext {
+    private long resultsCount;
+    private long messageChars;
+
+    public CountingCallbackContext(String callbackId) {
+        super(callbackId, null);
+    }
+
+    @Override
+    public synchronized void sendPluginResult(PluginResult pluginResult) {
+        if (finished) {
+            return;
+        }
+        finished = !pluginResult.getKeepCallback();
+        resultsCount++;
+        messageChars += pluginResult.getMessage().length();
+        notifyAll();
+    }
+
+    public synchronized long getResultsCount() {
+        return resultsCount;
+    }
+
+    public synchronized long getMessageChars() {
+        return messageChars;
+    }
+
+    /**
+     * Waits until count results were received in total.
+     */
+    public synchronized void awaitResults(long count) throws InterruptedException {
+        while (resultsCount < count) {
+            wait();
+        }
+    }
+}
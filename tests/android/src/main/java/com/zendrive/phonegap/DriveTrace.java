@@ -0,0 +1,140 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.DriveInfo;
+import com.zendrive.sdk.DriveStartInfo;
+import com.zendrive.sdk.LocationPoint;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A drive as the SDK reports it, the start event followed by the end event, which the replay
+ * harness feeds to the plugin.
+ *
+ * Traces are either synthetic, generated from a seed so that runs are reproducible, or
+ * recorded and read from JSON of the form
+ * {"trackingId", "sessionId", "startTimestamp", "endTimestamp", "isValid", "averageSpeed",
+ * "distance", "waypoints": [[latitude, longitude], ...]}.
+ */
+public final class DriveTrace {
+
+    // Synthetic drives have one waypoint per second
+    private static final long kWaypointIntervalMillis = 1000;
+    private static final double kMetersPerDegreeLatitude = 111320;
+    private static final double kMaxSpeedMetersPerSecond = 30;
+    // Chance per waypoint of a synthetic drive to start a stop, and how long stops last
+    private static final double kStopProbability = 0.01;
+    private static final int kMaxStopWaypoints = 60;
+
+    public final DriveStartInfo driveStartInfo;
+    public final DriveInfo driveInfo;
+
+    private DriveTrace(DriveStartInfo driveStartInfo, DriveInfo driveInfo) {
+        this.driveStartInfo = driveStartInfo;
+        this.driveInfo = driveInfo;
+    }
+
+    public static DriveTrace of(DriveInfo driveInfo) {
+        DriveStartInfo driveStartInfo = new DriveStartInfo();
+        driveStartInfo.startTimeMillis = driveInfo.startTimeMillis;
+        if (null != driveInfo.waypoints && !driveInfo.waypoints.isEmpty()) {
+            driveStartInfo.startLocation = driveInfo.waypoints.get(0);
+        }
+        return new DriveTrace(driveStartInfo, driveInfo);
+    }
+
+    /**
+     * Returns a drive of waypointsCount waypoints starting at startTimeMillis, which drives at
+     * varying speed and heading with occasional stops.
+     */
+    public static DriveTrace synthetic(long seed, long startTimeMillis, int waypointsCount) {
+        Random random = new Random(seed);
+        List<LocationPoint> waypoints = new ArrayList<LocationPoint>(waypointsCount);
+        double latitude = 37.7749 + random.nextDouble() * 0.1;
+        double longitude = -122.4194 + random.nextDouble() * 0.1;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        double speed = 10;
+        int stopWaypointsLeft = 0;
+        double distanceMeters = 0;
+        for (int i = 0; i < waypointsCount; i++) {
+            waypoints.add(new LocationPoint(latitude, longitude));
+            if (stopWaypointsLeft > 0) {
+                stopWaypointsLeft--;
+                continue;
+            }
+            if (random.nextDouble() < kStopProbability) {
+                stopWaypointsLeft = 1 + random.nextInt(kMaxStopWaypoints);
+            }
+            heading += (random.nextDouble() - 0.5) * 0.2;
+            speed = Math.max(1, Math.min(kMaxSpeedMetersPerSecond,
+                    speed + (random.nextDouble() - 0.5) * 2));
+            double stepMeters = speed * kWaypointIntervalMillis / 1000;
+            latitude += Math.cos(heading) * stepMeters / kMetersPerDegreeLatitude;
+            longitude += Math.sin(heading) * stepMeters /
+                    (kMetersPerDegreeLatitude * Math.cos(Math.toRadians(latitude)));
+            distanceMeters += stepMeters;
+        }
+
+        DriveInfo driveInfo = new DriveInfo();
+        driveInfo.startTimeMillis = startTimeMillis;
+        driveInfo.endTimeMillis = startTimeMillis +
+                Math.max(0, waypointsCount - 1) * kWaypointIntervalMillis;
+        driveInfo.isValid = waypointsCount > 1;
+        driveInfo.distanceMeters = distanceMeters;
+        driveInfo.averageSpeed = (waypointsCount > 1) ?
+                distanceMeters * 1000 / (driveInfo.endTimeMillis - startTimeMillis) : 0;
+        driveInfo.trackingId = "trace-" + seed;
+        driveInfo.sessionId = (0 == seed % 2) ? null : "session-" + (seed / 2);
+        driveInfo.waypoints = waypoints;
+        return of(driveInfo);
+    }
+
+    public static DriveTrace fromJson(String encodedTrace) throws JSONException {
+        JSONObject traceObject = new JSONObject(encodedTrace);
+        DriveInfo driveInfo = new DriveInfo();
+        driveInfo.trackingId = traceObject.isNull("trackingId") ? null :
+                traceObject.getString("trackingId");
+        driveInfo.sessionId = traceObject.isNull("sessionId") ? null :
+                traceObject.getString("sessionId");
+        driveInfo.startTimeMillis = traceObject.getLong("startTimestamp");
+        driveInfo.endTimeMillis = traceObject.getLong("endTimestamp");
+        driveInfo.isValid = traceObject.optBoolean("isValid", true);
+        driveInfo.averageSpeed = traceObject.optDouble("averageSpeed", 0);
+        driveInfo.distanceMeters = traceObject.optDouble("distance", 0);
+        JSONArray waypointsArray = traceObject.getJSONArray("waypoints");
+        List<LocationPoint> waypoints = new ArrayList<LocationPoint>(waypointsArray.length());
+        for (int i = 0; i < waypointsArray.length(); i++) {
+            JSONArray waypoint = waypointsArray.getJSONArray(i);
+            waypoints.add(new LocationPoint(waypoint.getDouble(0), waypoint.getDouble(1)));
+        }
+        driveInfo.waypoints = waypoints;
+        return of(driveInfo);
+    }
+
+    public String toJson() throws JSONException {
+        JSONObject traceObject = new JSONObject();
+        traceObject.put("trackingId", null == driveInfo.trackingId ?
+                JSONObject.NULL : driveInfo.trackingId);
+        traceObject.put("sessionId", null == driveInfo.sessionId ?
+                JSONObject.NULL : driveInfo.sessionId);
+        traceObject.put("startTimestamp", driveInfo.startTimeMillis);
+        traceObject.put("endTimestamp", driveInfo.endTimeMillis);
+        traceObject.put("isValid", driveInfo.isValid);
+        traceObject.put("averageSpeed", driveInfo.averageSpeed);
+        traceObject.put("distance", driveInfo.distanceMeters);
+        JSONArray waypointsArray = new JSONArray();
+        for (LocationPoint locationPoint : driveInfo.waypoints) {
+            JSONArray waypoint = new JSONArray();
+            waypoint.put(locationPoint.latitude);
+            waypoint.put(locationPoint.longitude);
+            waypointsArray.put(waypoint);
+        }
+        traceObject.put("waypoints", waypointsArray);
+        return traceObject.toString();
+    }
+}
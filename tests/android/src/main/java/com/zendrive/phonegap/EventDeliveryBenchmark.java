@@ -0,0 +1,101 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivery of SDK events to javascript, from the intent service of the plugin to the
+ * callback context, including serialization on the event dispatcher. Run with -prof gc for
+ * allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventDeliveryBenchmark {
+
+    private static final long kStartTimeMillis = 1500000000000L;
+
+    @State(Scope.Benchmark)
+    public static class DriveEndState {
+        @Param({"100", "10000", "100000"})
+        public int waypointsCount;
+
+        // Zendrive.ZendriveWaypointEncoding, 0 for JSON and 2 for delta varint
+        @Param({"0", "2"})
+        public int waypointEncoding;
+
+        ReplayHarness harness;
+        ZendriveIntentService service;
+        CountingCallbackContext callbackContext;
+        DriveTrace trace;
+        long expectedResults;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            harness = new ReplayHarness();
+            callbackContext = new CountingCallbackContext("driveEnd");
+            harness.registerCallback(ZendriveEventType.DRIVE_END, callbackContext,
+                    waypointEncoding, 0, JSONObject.NULL);
+            service = harness.startService();
+            trace = DriveTrace.synthetic(1, kStartTimeMillis, waypointsCount);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            harness.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DriveStartState {
+        ReplayHarness harness;
+        ZendriveIntentService service;
+        CountingCallbackContext callbackContext;
+        DriveTrace trace;
+        long expectedResults;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            harness = new ReplayHarness();
+            callbackContext = new CountingCallbackContext("driveStart");
+            harness.registerCallback(ZendriveEventType.DRIVE_START, callbackContext);
+            service = harness.startService();
+            trace = DriveTrace.synthetic(1, kStartTimeMillis, 1);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            harness.close();
+        }
+    }
+
+    @Benchmark
+    public long onDriveEnd(DriveEndState state) throws InterruptedException {
+        state.service.onDriveEnd(state.trace.driveInfo);
+        state.callbackContext.awaitResults(++state.expectedResults);
+        return state.expectedResults;
+    }
+
+    @Benchmark
+    public long onDriveStart(DriveStartState state) throws InterruptedException {
+        state.service.onDriveStart(state.trace.driveStartInfo);
+        state.callbackContext.awaitResults(++state.expectedResults);
+        return state.expectedResults;
+    }
+}
@@ -0,0 +1,120 @@
+package com.zendrive.phonegap;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shared preferences kept in memory, for the contexts of the replay harness.
+ */
+final class InMemorySharedPreferences implements SharedPreferences {
+    private final Map<String, Object> values = new HashMap<String, Object>();
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return new HashMap<String, Object>(values);
+    }
+
+    @Override
+    public synchronized String getString(String key, String defValue) {
+        return values.containsKey(key) ? (String) values.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defValue) {
+        return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defValue) {
+        return values.containsKey(key) ? (Long) values.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new InMemoryEditor();
+    }
+
+    synchronized void clear() {
+        values.clear();
+    }
+
+    /**
+     * Changes are applied as a whole on commit or apply, as on android.
+     */
+    private final class InMemoryEditor implements Editor {
+        private final Map<String, Object> changes = new HashMap<String, Object>();
+        private boolean isCleared;
+
+        @Override
+        public Editor putString(String key, String value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            // A removed value is stored as null and dropped when applied
+            changes.put(key, null);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            isCleared = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            synchronized (InMemorySharedPreferences.this) {
+                if (isCleared) {
+                    values.clear();
+                }
+                for (Map.Entry<String, Object> change : changes.entrySet()) {
+                    if (null == change.getValue()) {
+                        values.remove(change.getKey());
+                    }
+                    else {
+                        values.put(change.getKey(), change.getValue());
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.zendrive.phonegap;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Callback context which records the results the plugin sends instead of passing them to a
+ * webview. Like a cordova callback context, it is finished by the first result without
+ * keepCallback, later results are counted as dropped.
+ */
+public final class RecordingCallbackContext extends CallbackContext {
+
+    public static final class Result {
+        public final PluginResult.Status status;
+        public final int messageType;
+        public final String message;
+        public final boolean keepCallback;
+        public final long receivedAtNanos;
+
+        Result(PluginResult pluginResult, long receivedAtNanos) {
+            this.status = PluginResult.Status.values()[pluginResult.getStatus()];
+            this.messageType = pluginResult.getMessageType();
+            this.message = pluginResult.getMessage();
+            this.keepCallback = pluginResult.getKeepCallback();
+            this.receivedAtNanos = receivedAtNanos;
+        }
+
+        /**
+         * Whether this result is a batch of events, see Zendrive.setEventBatchingOptions.
+         */
+        public boolean isBatch() {
+            return PluginResult.MESSAGE_TYPE_JSON == messageType && message.startsWith("[");
+        }
+
+        @Override
+        public String toString() {
+            return status + (keepCallback ? " (keep) " : " ") + message;
+        }
+    }
+
+    private final List<Result> results = new ArrayList<Result>();
+    private int droppedResultsCount;
+
+    public RecordingCallbackContext(String callbackId) {
+        super(callbackId, null);
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult) {
+        Result result = new Result(pluginResult, System.nanoTime());
+        synchronized (this) {
+            if (finished) {
+                droppedResultsCount++;
+                return;
+            }
+            finished = !pluginResult.getKeepCallback();
+            results.add(result);
+            notifyAll();
+        }
+    }
+
+    public synchronized List<Result> getResults() {
+        return new ArrayList<Result>(results);
+    }
+
+    public synchronized int getDroppedResultsCount() {
+        return droppedResultsCount;
+    }
+
+    /**
+     * Waits until count results were received or the context is finished, and returns all
+     * results received so far.
+     */
+    public synchronized List<Result> awaitResults(int count, long timeoutMillis)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (results.size() < count && !finished) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            wait(remaining);
+        }
+        return getResults();
+    }
+
+    /**
+     * Returns the events received with keepCallback, with batches split into their events.
+     */
+    public List<JSONObject> getEvents() throws JSONException {
+        List<JSONObject> events = new ArrayList<JSONObject>();
+        for (Result result : getResults()) {
+            if (!result.keepCallback || PluginResult.MESSAGE_TYPE_JSON != result.messageType) {
+                continue;
+            }
+            if (result.isBatch()) {
+                JSONArray batch = new JSONArray(result.message);
+                for (int i = 0; i < batch.length(); i++) {
+                    events.add(batch.getJSONObject(i));
+                }
+            }
+            else {
+                events.add(new JSONObject(result.message));
+            }
+        }
+        return events;
+    }
+
+    public synchronized void clear() {
+        results.clear();
+        droppedResultsCount = 0;
+    }
+}
@@ -0,0 +1,635 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.Zendrive;
+
+import android.app.Activity;
+import android.content.Context;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the android side of the plugin on a plain JVM: javascript calls go through
+ * {@link ZendriveCordovaPlugin#execute} as cordova makes them, SDK events come from
+ * {@link ZendriveSdkStandIn} through the intent service of the plugin, and results are
+ * recorded by {@link RecordingCallbackContext}s.
+ *
+ * {@link #run(LoadProfile)} replays drive traces from concurrent drivers and reports the
+ * throughput, latency and allocations of event delivery. It can also be run from the command
+ * line, see {@link #main(String[])}.
+ *
+ * The plugin keeps process wide state, so a single harness should exist at a time, and it
+ * must be closed to bring the plugin back to the state of a fresh install.
+ */
+public final class ReplayHarness {
+
+    private static final String kServiceName = "Zendrive";
+
+    // Longest time to wait for the plugin to deliver events or run commands
+    private static final long kAwaitTimeoutMillis = 60000;
+
+    // Start time of the first synthetic trace, traces start one minute apart
+    private static final long kFirstTraceStartMillis = 1500000000000L;
+    private static final long kTraceStartIntervalMillis = 60000;
+
+    private static final String kStartTimestampField = "\"startTimestamp\":";
+
+    /**
+     * What {@link #run(LoadProfile)} replays. Every trace is replayed once, as a drive start
+     * followed by a drive end, and traces are spread over the concurrent drivers.
+     */
+    public static final class LoadProfile {
+        int drivesCount = 100;
+        int waypointsCount = 1000;
+        int concurrentDrivers = 1;
+        // Events per second over all drivers, 0 to send them as fast as possible
+        double eventsPerSecond = 0;
+        long seed = 0;
+        List<DriveTrace> traces;
+
+        // Arguments of setProcessEndOfDriveDelegateCallback after hasCallback
+        int waypointEncoding = 0;
+        int waypointChunkSize = 0;
+        int waypointPrecision = 6;
+        boolean isStatisticsEnabled = false;
+
+        public LoadProfile drives(int drivesCount) {
+            this.drivesCount = drivesCount;
+            return this;
+        }
+
+        public LoadProfile waypoints(int waypointsCount) {
+            this.waypointsCount = waypointsCount;
+            return this;
+        }
+
+        public LoadProfile concurrentDrivers(int concurrentDrivers) {
+            this.concurrentDrivers = concurrentDrivers;
+            return this;
+        }
+
+        public LoadProfile eventsPerSecond(double eventsPerSecond) {
+            this.eventsPerSecond = eventsPerSecond;
+            return this;
+        }
+
+        public LoadProfile seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Replays these traces instead of synthetic ones. Their start timestamps must be
+         * distinct, events are matched to their deliveries by start timestamp.
+         */
+        public LoadProfile traces(List<DriveTrace> traces) {
+            this.traces = traces;
+            return this;
+        }
+
+        public LoadProfile waypointEncoding(int waypointEncoding, int waypointPrecision) {
+            this.waypointEncoding = waypointEncoding;
+            this.waypointPrecision = waypointPrecision;
+            return this;
+        }
+
+        public LoadProfile waypointChunkSize(int waypointChunkSize) {
+            this.waypointChunkSize = waypointChunkSize;
+            return this;
+        }
+
+        public LoadProfile statistics(boolean isStatisticsEnabled) {
+            this.isStatisticsEnabled = isStatisticsEnabled;
+            return this;
+        }
+
+        List<DriveTrace> getTraces() {
+            if (null != traces) {
+                return traces;
+            }
+            List<DriveTrace> syntheticTraces = new ArrayList<DriveTrace>(drivesCount);
+            for (int i = 0; i < drivesCount; i++) {
+                syntheticTraces.add(DriveTrace.synthetic(seed + i,
+                        kFirstTraceStartMillis + i * kTraceStartIntervalMillis,
+                        waypointsCount));
+            }
+            return syntheticTraces;
+        }
+    }
+
+    public static final class Report {
+        public final int eventsSent;
+        public final int eventsDelivered;
+        public final int duplicateEvents;
+        public final long elapsedNanos;
+        // Latencies from the SDK event to its delivery to the callback, sorted
+        final long[] latenciesNanos;
+        public final long payloadChars;
+        // Allocated by the event dispatcher during the run, -1 if it could not be measured
+        public final long dispatcherAllocatedBytes;
+        public final int maxQueueDepth;
+        public final long throttledCount;
+
+        Report(int eventsSent, int eventsDelivered, int duplicateEvents, long elapsedNanos,
+               long[] latenciesNanos, long payloadChars, long dispatcherAllocatedBytes,
+               int maxQueueDepth, long throttledCount) {
+            this.eventsSent = eventsSent;
+            this.eventsDelivered = eventsDelivered;
+            this.duplicateEvents = duplicateEvents;
+            this.elapsedNanos = elapsedNanos;
+            this.latenciesNanos = latenciesNanos;
+            this.payloadChars = payloadChars;
+            this.dispatcherAllocatedBytes = dispatcherAllocatedBytes;
+            this.maxQueueDepth = maxQueueDepth;
+            this.throttledCount = throttledCount;
+        }
+
+        public double getEventsPerSecond() {
+            return eventsDelivered * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Returns the latency percentile in milliseconds, 0 if no event was delivered.
+         */
+        public double getLatencyMillis(double percentile) {
+            if (0 == latenciesNanos.length) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latenciesNanos.length) - 1;
+            return latenciesNanos[Math.max(0, Math.min(latenciesNanos.length - 1, index))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d events delivered (%d duplicates) in %.1f ms, " +
+                            "%.0f events/s%n" +
+                            "latency ms: p50 %.3f, p95 %.3f, p99 %.3f, max %.3f%n" +
+                            "payload: %d chars, dispatcher allocated: %d bytes, " +
+                            "max queue depth: %d, throttled: %d",
+                    eventsDelivered, eventsSent, duplicateEvents, elapsedNanos / 1e6,
+                    getEventsPerSecond(), getLatencyMillis(50), getLatencyMillis(95),
+                    getLatencyMillis(99), getLatencyMillis(100), payloadChars,
+                    dispatcherAllocatedBytes, maxQueueDepth, throttledCount);
+        }
+    }
+
+    private final StandInContext context = StandInContext.getSharedInstance();
+    private final ZendriveSdkStandIn sdk = new ZendriveSdkStandIn();
+    private final ExecutorService threadPool = Executors.newCachedThreadPool();
+    private final AtomicInteger nextCallbackId = new AtomicInteger();
+    private final ZendriveCordovaPlugin plugin;
+    private ZendriveIntentService service;
+
+    public ReplayHarness() {
+        Zendrive.setBackend(sdk);
+        final Activity activity = new Activity() {
+            {
+                attachBaseContext(context);
+            }
+        };
+        plugin = new ZendriveCordovaPlugin();
+        plugin.privateInitialize(kServiceName, new CordovaInterface() {
+            @Override
+            public Activity getActivity() {
+                return activity;
+            }
+
+            @Override
+            public Context getContext() {
+                return activity;
+            }
+
+            @Override
+            public ExecutorService getThreadPool() {
+                return threadPool;
+            }
+        }, null);
+    }
+
+    public ZendriveSdkStandIn getSdk() {
+        return sdk;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    /**
+     * Caches a setup configuration as an earlier process of the app would have, so that the
+     * intent service restores it when it starts.
+     */
+    public void cacheSetupConfiguration(JSONObject configuration) throws JSONException {
+        ZendriveSetup.cacheConfiguration(context, configuration);
+    }
+
+    /**
+     * Creates the intent service as the system does when the SDK wakes the app, which also
+     * restores the cached setup. Events are delivered through this service.
+     */
+    public synchronized ZendriveIntentService startService() {
+        if (null == service) {
+            service = sdk.startService(context);
+        }
+        return service;
+    }
+
+    /**
+     * Calls an action of the plugin the way cordova does for exec in zendrive.js, and returns
+     * the callback context which records its results.
+     */
+    public RecordingCallbackContext exec(String action, Object... args) {
+        RecordingCallbackContext callbackContext = new RecordingCallbackContext(
+                kServiceName + nextCallbackId.incrementAndGet());
+        exec(action, callbackContext, args);
+        return callbackContext;
+    }
+
+    /**
+     * Calls an action of the plugin with a callback context of the caller.
+     */
+    public void exec(String action, CallbackContext callbackContext, Object... args) {
+        JSONArray argsArray = new JSONArray();
+        for (Object arg : args) {
+            argsArray.put(null == arg ? JSONObject.NULL : arg);
+        }
+        try {
+            if (!plugin.execute(action, argsArray.toString(), callbackContext)) {
+                callbackContext.sendPluginResult(
+                        new PluginResult(PluginResult.Status.INVALID_ACTION));
+            }
+        } catch (JSONException e) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION));
+        } catch (RuntimeException e) {
+            callbackContext.error(e.getMessage());
+        }
+    }
+
+    /**
+     * Registers a callback for eventType, as Zendrive.registerForDelegateCallbacks does.
+     * Options are the arguments which follow hasCallback, for drive end events.
+     */
+    public RecordingCallbackContext registerCallback(ZendriveEventType eventType,
+                                                     Object... options) {
+        RecordingCallbackContext callbackContext = new RecordingCallbackContext(
+                kServiceName + nextCallbackId.incrementAndGet());
+        registerCallback(eventType, callbackContext, options);
+        return callbackContext;
+    }
+
+    public void registerCallback(ZendriveEventType eventType, CallbackContext callbackContext,
+                                 Object... options) {
+        Object[] args = new Object[options.length + 1];
+        args[0] = true;
+        System.arraycopy(options, 0, args, 1, options.length);
+        exec(getCallbackAction(eventType), callbackContext, args);
+    }
+
+    public void unregisterCallback(ZendriveEventType eventType) {
+        exec(getCallbackAction(eventType), false);
+    }
+
+    /**
+     * Waits until the events dispatched so far, and the tasks the bridge thread queued in the
+     * background, were delivered or journaled.
+     */
+    public void awaitEventsDispatched() throws InterruptedException {
+        while (true) {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final AtomicBoolean isShutdown = new AtomicBoolean();
+            ZendriveManager.getSharedInstance().getEventDispatcher().dispatchWithoutWaiting(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            latch.countDown();
+                        }
+                    }, new Runnable() {
+                        @Override
+                        public void run() {
+                            isShutdown.set(true);
+                            latch.countDown();
+                        }
+                    });
+            await(latch, "events to be dispatched");
+            if (!isShutdown.get()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until the commands queued so far, such as setup, completed.
+     */
+    public void awaitCommandsCompleted() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        ZendriveCommandQueue.getSharedInstance().enqueue(
+                new ZendriveCommandQueue.Command("await", null, null) {
+                    @Override
+                    void execute() {
+                        latch.countDown();
+                        success();
+                    }
+                });
+        await(latch, "commands to complete");
+    }
+
+    /**
+     * Replays the traces of profile into the plugin, with callbacks registered for drive
+     * start and drive end events, and waits until all events were delivered.
+     */
+    public Report run(LoadProfile profile) throws InterruptedException, JSONException {
+        final List<DriveTrace> traces = profile.getTraces();
+        RecordingCallbackContext driveStartCallback =
+                registerCallback(ZendriveEventType.DRIVE_START);
+        RecordingCallbackContext driveEndCallback = registerCallback(ZendriveEventType.DRIVE_END,
+                profile.waypointEncoding, profile.waypointChunkSize, JSONObject.NULL,
+                profile.waypointPrecision, profile.isStatisticsEnabled);
+        final ZendriveIntentService eventSource = startService();
+        awaitEventsDispatched();
+        driveStartCallback.clear();
+        driveEndCallback.clear();
+
+        ZendriveEventDispatcher eventDispatcher =
+                ZendriveManager.getSharedInstance().getEventDispatcher();
+        eventDispatcher.resetMetrics();
+        long dispatcherAllocatedBytesBefore = getDispatcherAllocatedBytes();
+
+        final Map<Long, Long> driveStartSentAtNanos = new ConcurrentHashMap<Long, Long>();
+        final Map<Long, Long> driveEndSentAtNanos = new ConcurrentHashMap<Long, Long>();
+        final int concurrentDrivers = Math.max(1, profile.concurrentDrivers);
+        final long eventIntervalNanos = (profile.eventsPerSecond > 0) ?
+                (long) (concurrentDrivers * 1e9 / profile.eventsPerSecond) : 0;
+        final CountDownLatch driversDone = new CountDownLatch(concurrentDrivers);
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        for (int driver = 0; driver < concurrentDrivers; driver++) {
+            final int firstTrace = driver;
+            threadPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startSignal.await();
+                        long nextEventAtNanos = System.nanoTime();
+                        for (int i = firstTrace; i < traces.size(); i += concurrentDrivers) {
+                            DriveTrace trace = traces.get(i);
+                            nextEventAtNanos = pace(nextEventAtNanos, eventIntervalNanos);
+                            driveStartSentAtNanos.put(trace.driveStartInfo.startTimeMillis,
+                                    System.nanoTime());
+                            eventSource.onDriveStart(trace.driveStartInfo);
+                            nextEventAtNanos = pace(nextEventAtNanos, eventIntervalNanos);
+                            driveEndSentAtNanos.put(trace.driveInfo.startTimeMillis,
+                                    System.nanoTime());
+                            eventSource.onDriveEnd(trace.driveInfo);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        driversDone.countDown();
+                    }
+                }
+            });
+        }
+
+        long startedAtNanos = System.nanoTime();
+        startSignal.countDown();
+        await(driversDone, "drivers to send their events");
+        awaitEventsDispatched();
+        long elapsedNanos = System.nanoTime() - startedAtNanos;
+
+        long dispatcherAllocatedBytesAfter = getDispatcherAllocatedBytes();
+        long dispatcherAllocatedBytes = (dispatcherAllocatedBytesBefore < 0 ||
+                dispatcherAllocatedBytesAfter < 0) ? -1 :
+                dispatcherAllocatedBytesAfter - dispatcherAllocatedBytesBefore;
+
+        List<Long> latencies = new ArrayList<Long>(traces.size() * 2);
+        AtomicLong payloadChars = new AtomicLong();
+        int[] duplicateEvents = new int[1];
+        int eventsDelivered = collectLatencies(driveStartCallback, driveStartSentAtNanos,
+                latencies, payloadChars, duplicateEvents);
+        eventsDelivered += collectLatencies(driveEndCallback, driveEndSentAtNanos, latencies,
+                payloadChars, duplicateEvents);
+        long[] latenciesNanos = new long[latencies.size()];
+        for (int i = 0; i < latenciesNanos.length; i++) {
+            latenciesNanos[i] = latencies.get(i);
+        }
+        Arrays.sort(latenciesNanos);
+
+        return new Report(traces.size() * 2, eventsDelivered, duplicateEvents[0], elapsedNanos,
+                latenciesNanos, payloadChars.get(), dispatcherAllocatedBytes,
+                eventDispatcher.getMaxQueueDepth(), eventDispatcher.getThrottledCount());
+    }
+
+    /**
+     * Tears the plugin down and deletes its files and preferences, so that the next harness
+     * starts from a fresh install.
+     */
+    public void close() throws InterruptedException {
+        awaitCommandsCompleted();
+        ZendriveManager.teardown();
+        ZendriveSetup.teardown(context);
+        context.clear();
+        sdk.reset();
+        Zendrive.setBackend(null);
+        threadPool.shutdownNow();
+        threadPool.awaitTermination(kAwaitTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Counts the events a callback received, with their latency from sentAtNanos, which maps
+     * the start timestamps of drives to the time their event was sent.
+     */
+    private static int collectLatencies(RecordingCallbackContext callbackContext,
+                                        Map<Long, Long> sentAtNanos, List<Long> latencies,
+                                        AtomicLong payloadChars, int[] duplicateEvents)
+            throws JSONException {
+        Map<Long, Boolean> delivered = new ConcurrentHashMap<Long, Boolean>();
+        for (RecordingCallbackContext.Result result : callbackContext.getResults()) {
+            payloadChars.addAndGet(result.message.length());
+            List<Long> startTimestamps = new ArrayList<Long>();
+            if (result.isBatch()) {
+                JSONArray batch = new JSONArray(result.message);
+                for (int i = 0; i < batch.length(); i++) {
+                    startTimestamps.add(batch.getJSONObject(i).getLong("startTimestamp"));
+                }
+            }
+            else {
+                // Waypoint chunks of streamed drives have no start timestamp
+                int index = result.message.indexOf(kStartTimestampField);
+                if (index < 0) {
+                    continue;
+                }
+                int start = index + kStartTimestampField.length();
+                int end = start;
+                while (end < result.message.length() &&
+                        Character.isDigit(result.message.charAt(end))) {
+                    end++;
+                }
+                startTimestamps.add(Long.parseLong(result.message.substring(start, end)));
+            }
+            for (Long startTimestamp : startTimestamps) {
+                Long sentAt = sentAtNanos.get(startTimestamp);
+                if (null == sentAt) {
+                    continue;
+                }
+                if (null != delivered.put(startTimestamp, true)) {
+                    duplicateEvents[0]++;
+                    continue;
+                }
+                latencies.add(result.receivedAtNanos - sentAt);
+            }
+        }
+        return delivered.size();
+    }
+
+    /**
+     * Returns the bytes allocated so far by the event dispatcher thread, -1 if the JVM cannot
+     * tell.
+     */
+    private static long getDispatcherAllocatedBytes() throws InterruptedException {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        final com.sun.management.ThreadMXBean allocationBean =
+                (com.sun.management.ThreadMXBean) threadBean;
+        final long[] allocatedBytes = new long[] { -1 };
+        final CountDownLatch latch = new CountDownLatch(1);
+        ZendriveManager.getSharedInstance().getEventDispatcher().dispatch(new Runnable() {
+            @Override
+            public void run() {
+                allocatedBytes[0] = allocationBean.getThreadAllocatedBytes(
+                        Thread.currentThread().getId());
+                latch.countDown();
+            }
+        });
+        await(latch, "the event dispatcher");
+        return allocatedBytes[0];
+    }
+
+    private static long pace(long nextEventAtNanos, long eventIntervalNanos) {
+        if (0 == eventIntervalNanos) {
+            return nextEventAtNanos;
+        }
+        long waitNanos = nextEventAtNanos - System.nanoTime();
+        if (waitNanos > 0) {
+            LockSupport.parkNanos(waitNanos);
+        }
+        return nextEventAtNanos + eventIntervalNanos;
+    }
+
+    private static void await(CountDownLatch latch, String what) throws InterruptedException {
+        if (!latch.await(kAwaitTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Timed out waiting for " + what);
+        }
+    }
+
+    private static String getCallbackAction(ZendriveEventType eventType) {
+        switch (eventType) {
+            case DRIVE_START:
+                return "setProcessStartOfDriveDelegateCallback";
+            case DRIVE_END:
+                return "setProcessEndOfDriveDelegateCallback";
+            case DRIVE_RESUME:
+                return "setProcessResumeOfDriveDelegateCallback";
+            case ACCIDENT:
+                return "setProcessAccidentDetectedDelegateCallback";
+            case LOCATION_PERMISSIONS_CHANGE:
+                return "setProcessLocationPermissionsChangeDelegateCallback";
+            case LOCATION_SETTINGS_CHANGE:
+                return "setProcessLocationSettingsChangeDelegateCallback";
+            case ACTIVE_DRIVE_INFO_CHANGE:
+                return "setActiveDriveInfoUpdateCallback";
+            default:
+                throw new IllegalArgumentException("No callback action for " + eventType);
+        }
+    }
+
+    /**
+     * Replays a load profile and prints the report. Options:
+     * --drives=N --waypoints=N --drivers=N --rate=EVENTS_PER_SECOND --seed=N
+     * --encoding=N --precision=N --chunk=N --statistics --trace=FILE (repeatable).
+     */
+    public static void main(String[] args) throws Exception {
+        LoadProfile profile = new LoadProfile();
+        List<DriveTrace> traces = new ArrayList<DriveTrace>();
+        int precision = profile.waypointPrecision;
+        int encoding = profile.waypointEncoding;
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            String value = (option.length > 1) ? option[1] : "";
+            if ("--drives".equals(option[0])) {
+                profile.drives(Integer.parseInt(value));
+            }
+            else if ("--waypoints".equals(option[0])) {
+                profile.waypoints(Integer.parseInt(value));
+            }
+            else if ("--drivers".equals(option[0])) {
+                profile.concurrentDrivers(Integer.parseInt(value));
+            }
+            else if ("--rate".equals(option[0])) {
+                profile.eventsPerSecond(Double.parseDouble(value));
+            }
+            else if ("--seed".equals(option[0])) {
+                profile.seed(Long.parseLong(value));
+            }
+            else if ("--encoding".equals(option[0])) {
+                encoding = Integer.parseInt(value);
+            }
+            else if ("--precision".equals(option[0])) {
+                precision = Integer.parseInt(value);
+            }
+            else if ("--chunk".equals(option[0])) {
+                profile.waypointChunkSize(Integer.parseInt(value));
+            }
+            else if ("--statistics".equals(option[0])) {
+                profile.statistics(true);
+            }
+            else if ("--trace".equals(option[0])) {
+                traces.add(readTrace(value));
+            }
+            else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        profile.waypointEncoding(encoding, precision);
+        if (!traces.isEmpty()) {
+            profile.traces(Collections.unmodifiableList(traces));
+        }
+
+        ReplayHarness harness = new ReplayHarness();
+        try {
+            System.out.println(harness.run(profile));
+        } finally {
+            harness.close();
+        }
+        System.exit(0);
+    }
+
+    private static DriveTrace readTrace(String path) throws IOException, JSONException {
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        return DriveTrace.fromJson(new String(bytes, Charset.forName("UTF-8")));
+    }
+}
@@ -0,0 +1,90 @@
+package com.zendrive.phonegap;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Application context of the replay harness, with temporary files and databases directories
+ * and shared preferences kept in memory.
+ *
+ * The plugin keeps its event journal in the files directory of the first context it is given
+ * for the lifetime of the process, so there is a single context per JVM.
+ */
+final class StandInContext extends Context {
+    private static StandInContext sharedInstance;
+
+    private final File filesDir;
+    private final File databasesDir;
+    private final Map<String, InMemorySharedPreferences> preferences =
+            new HashMap<String, InMemorySharedPreferences>();
+
+    private StandInContext(File filesDir, File databasesDir) {
+        this.filesDir = filesDir;
+        this.databasesDir = databasesDir;
+    }
+
+    static synchronized StandInContext getSharedInstance() {
+        if (null == sharedInstance) {
+            try {
+                File filesDir = Files.createTempDirectory("zendrive-files").toFile();
+                filesDir.deleteOnExit();
+                File databasesDir = Files.createTempDirectory("zendrive-databases").toFile();
+                databasesDir.deleteOnExit();
+                sharedInstance = new StandInContext(filesDir, databasesDir);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot create the app directories", e);
+            }
+        }
+        return sharedInstance;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public File getFilesDir() {
+        return filesDir;
+    }
+
+    @Override
+    public File getDatabasePath(String name) {
+        return new File(databasesDir, name);
+    }
+
+    @Override
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        InMemorySharedPreferences namedPreferences = preferences.get(name);
+        if (null == namedPreferences) {
+            namedPreferences = new InMemorySharedPreferences();
+            preferences.put(name, namedPreferences);
+        }
+        return namedPreferences;
+    }
+
+    /**
+     * Deletes all files and preferences, as if the app data was cleared. The plugin must be
+     * torn down first so that the journal is closed. Databases are kept, since the drive
+     * history of the plugin stays open for the lifetime of the process.
+     */
+    synchronized void clear() {
+        File[] files = filesDir.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    throw new IllegalStateException("Cannot delete " + file);
+                }
+            }
+        }
+        for (InMemorySharedPreferences namedPreferences : preferences.values()) {
+            namedPreferences.clear();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.LocationPoint;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drive statistics computed natively, against the work javascript did to compute them from
+ * the drive end payload: parse the waypoints into objects, then compute the bounding box,
+ * haversine distances and stops waypoint object by waypoint object. The javascript workload
+ * is reproduced with org.json objects standing in for javascript objects. Run with -prof gc
+ * for allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaypointStatisticsBenchmark {
+
+    private static final double kEarthRadiusMeters = 6371008.8;
+
+    /**
+     * Statistics as the javascript of an application computed them, see
+     * {@link #computeAsJavascript(JSONArray)}.
+     */
+    static final class JavascriptStatistics {
+        double minLatitude;
+        double maxLatitude;
+        double minLongitude;
+        double maxLongitude;
+        double pathDistanceMeters;
+        double maxSegmentDistanceMeters;
+        int stopCount;
+    }
+
+    @State(Scope.Benchmark)
+    public static class DriveState {
+        @Param({"1000", "10000", "100000"})
+        public int waypointsCount;
+
+        List<LocationPoint> waypoints;
+        String encodedWaypoints;
+        JSONArray parsedWaypoints;
+
+        @Setup(Level.Trial)
+        public void setUp() throws JSONException {
+            waypoints = DriveTrace.synthetic(20, 1500000000000L, waypointsCount)
+                    .driveInfo.waypoints;
+            encodedWaypoints = encodeWaypoints(waypoints);
+            parsedWaypoints = new JSONArray(encodedWaypoints);
+        }
+    }
+
+    @Benchmark
+    public Object nativeStatistics(DriveState state) {
+        return WaypointStatistics.compute(state.waypoints);
+    }
+
+    /**
+     * What javascript did once a drive ended: parse the payload, then iterate.
+     */
+    @Benchmark
+    public JavascriptStatistics javascriptParseAndCompute(DriveState state)
+            throws JSONException {
+        return computeAsJavascript(new JSONArray(state.encodedWaypoints));
+    }
+
+    /**
+     * The iteration alone, for applications which parse the waypoints for other reasons.
+     */
+    @Benchmark
+    public JavascriptStatistics javascriptCompute(DriveState state) throws JSONException {
+        return computeAsJavascript(state.parsedWaypoints);
+    }
+
+    /**
+     * Computes the statistics of WaypointStatistics the straightforward way javascript does,
+     * from waypoint objects and with a haversine per pair of points.
+     */
+    static JavascriptStatistics computeAsJavascript(JSONArray waypoints) throws JSONException {
+        JavascriptStatistics statistics = new JavascriptStatistics();
+        if (0 == waypoints.length()) {
+            return statistics;
+        }
+        JSONObject first = waypoints.getJSONObject(0);
+        statistics.minLatitude = first.getDouble("latitude");
+        statistics.maxLatitude = statistics.minLatitude;
+        statistics.minLongitude = first.getDouble("longitude");
+        statistics.maxLongitude = statistics.minLongitude;
+        JSONObject previous = first;
+        JSONObject anchor = first;
+        int runLength = 1;
+        for (int i = 1; i < waypoints.length(); i++) {
+            JSONObject waypoint = waypoints.getJSONObject(i);
+            double latitude = waypoint.getDouble("latitude");
+            double longitude = waypoint.getDouble("longitude");
+            statistics.minLatitude = Math.min(statistics.minLatitude, latitude);
+            statistics.maxLatitude = Math.max(statistics.maxLatitude, latitude);
+            statistics.minLongitude = Math.min(statistics.minLongitude, longitude);
+            statistics.maxLongitude = Math.max(statistics.maxLongitude, longitude);
+
+            double segmentDistanceMeters = haversine(previous, waypoint);
+            statistics.pathDistanceMeters += segmentDistanceMeters;
+            statistics.maxSegmentDistanceMeters =
+                    Math.max(statistics.maxSegmentDistanceMeters, segmentDistanceMeters);
+
+            if (haversine(anchor, waypoint) <= WaypointStatistics.kStopRadiusMeters) {
+                runLength++;
+            }
+            else {
+                if (runLength >= WaypointStatistics.kMinStopWaypoints) {
+                    statistics.stopCount++;
+                }
+                anchor = waypoint;
+                runLength = 1;
+            }
+            previous = waypoint;
+        }
+        if (runLength >= WaypointStatistics.kMinStopWaypoints) {
+            statistics.stopCount++;
+        }
+        return statistics;
+    }
+
+    /**
+     * The waypoints as zendrive.js receives them in the drive end payload.
+     */
+    static String encodeWaypoints(List<LocationPoint> waypoints) throws JSONException {
+        JSONStringer stringer = new JSONStringer().array();
+        for (LocationPoint waypoint : waypoints) {
+            stringer.object()
+                    .key("latitude").value(waypoint.latitude)
+                    .key("longitude").value(waypoint.longitude)
+                    .endObject();
+        }
+        return stringer.endArray().toString();
+    }
+
+    private static double haversine(JSONObject from, JSONObject to) throws JSONException {
+        double latitude1 = Math.toRadians(from.getDouble("latitude"));
+        double latitude2 = Math.toRadians(to.getDouble("latitude"));
+        double sinHalfLatitudeDelta = Math.sin((latitude2 - latitude1) / 2);
+        double sinHalfLongitudeDelta = Math.sin(Math.toRadians(
+                to.getDouble("longitude") - from.getDouble("longitude")) / 2);
+        double a = sinHalfLatitudeDelta * sinHalfLatitudeDelta + Math.cos(latitude1) *
+                Math.cos(latitude2) * sinHalfLongitudeDelta * sinHalfLongitudeDelta;
+        return 2 * kEarthRadiusMeters * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,128 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.ActiveDriveInfo;
+import com.zendrive.sdk.Zendrive;
+import com.zendrive.sdk.ZendriveConfiguration;
+import com.zendrive.sdk.ZendriveDriveDetectionMode;
+import com.zendrive.sdk.ZendriveOperationCallback;
+import com.zendrive.sdk.ZendriveOperationResult;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for the Zendrive SDK. It records the setups and drive detection mode changes
+ * the plugin makes and delivers events to the plugin through its intent service, as the SDK
+ * does.
+ *
+ * Setup completes on the calling thread unless a setup latency is set, in which case the
+ * callback is invoked from another thread once the latency elapsed, like the SDK does. Other
+ * operations complete successfully right away.
+ */
+public final class ZendriveSdkStandIn extends Zendrive.DefaultBackend {
+
+    private final ScheduledExecutorService callbackExecutor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ZendriveSdkStandIn");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final List<ZendriveConfiguration> setupConfigurations =
+            new ArrayList<ZendriveConfiguration>();
+    private final List<ZendriveDriveDetectionMode> driveDetectionModes =
+            new ArrayList<ZendriveDriveDetectionMode>();
+    private volatile long setupLatencyMillis;
+    private volatile boolean isSetupFailing;
+    private volatile ActiveDriveInfo activeDriveInfo;
+
+    public void setSetupLatencyMillis(long setupLatencyMillis) {
+        this.setupLatencyMillis = setupLatencyMillis;
+    }
+
+    public void setSetupFailing(boolean isSetupFailing) {
+        this.isSetupFailing = isSetupFailing;
+    }
+
+    public void setActiveDriveInfo(ActiveDriveInfo activeDriveInfo) {
+        this.activeDriveInfo = activeDriveInfo;
+    }
+
+    /**
+     * Returns the configurations the SDK was set up with, oldest first.
+     */
+    public synchronized List<ZendriveConfiguration> getSetupConfigurations() {
+        return new ArrayList<ZendriveConfiguration>(setupConfigurations);
+    }
+
+    public synchronized List<ZendriveDriveDetectionMode> getDriveDetectionModes() {
+        return new ArrayList<ZendriveDriveDetectionMode>(driveDetectionModes);
+    }
+
+    public synchronized void reset() {
+        setupConfigurations.clear();
+        driveDetectionModes.clear();
+        setupLatencyMillis = 0;
+        isSetupFailing = false;
+        activeDriveInfo = null;
+    }
+
+    @Override
+    public void setup(Context context, ZendriveConfiguration configuration,
+                      Class<? extends com.zendrive.sdk.ZendriveIntentService> intentServiceClass,
+                      final ZendriveOperationCallback callback) {
+        synchronized (this) {
+            setupConfigurations.add(configuration);
+        }
+        final ZendriveOperationResult result = isSetupFailing ?
+                ZendriveOperationResult.createError("Setup failed") :
+                ZendriveOperationResult.createSuccess();
+        if (null == callback) {
+            return;
+        }
+        long latencyMillis = setupLatencyMillis;
+        if (latencyMillis <= 0) {
+            callback.onCompletion(result);
+            return;
+        }
+        callbackExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                callback.onCompletion(result);
+            }
+        }, latencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void setZendriveDriveDetectionMode(ZendriveDriveDetectionMode mode) {
+        driveDetectionModes.add(mode);
+    }
+
+    @Override
+    public ActiveDriveInfo getActiveDriveInfo() {
+        return activeDriveInfo;
+    }
+
+    /**
+     * Creates the intent service of the plugin the way the system does when the SDK starts
+     * the app process, and returns it so that events can be delivered through it.
+     */
+    public ZendriveIntentService startService(final Context context) {
+        ZendriveIntentService service = new ZendriveIntentService() {
+            {
+                attachBaseContext(context);
+            }
+        };
+        service.onCreate();
+        return service;
+    }
+}
@@ -0,0 +1,12 @@
+package android.app;
+
+import android.content.ContextWrapper;
+
+/**
+ * Stub of the android activity. Tests attach it to a context with attachBaseContext.
+ */
+public class Activity extends ContextWrapper {
+    public Activity() {
+        super(null);
+    }
+}
@@ -0,0 +1,16 @@
+package android.app;
+
+/**
+ * Stub of the android intent service.
+ */
+public abstract class IntentService extends Service {
+    private final String name;
+
+    public IntentService(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,19 @@
+package android.app;
+
+import android.content.ContextWrapper;
+
+/**
+ * Stub of the android service. Tests attach it to a context with attachBaseContext before
+ * calling onCreate, as the system does.
+ */
+public abstract class Service extends ContextWrapper {
+    public Service() {
+        super(null);
+    }
+
+    public void onCreate() {
+    }
+
+    public void onDestroy() {
+    }
+}
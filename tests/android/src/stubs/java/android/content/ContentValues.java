@@ -0,0 +1,48 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stub of the android content values, a map of column values.
+ */
+public final class ContentValues {
+    private final Map<String, Object> values = new HashMap<String, Object>();
+
+    public void put(String key, String value) {
+        values.put(key, value);
+    }
+
+    public void put(String key, Integer value) {
+        values.put(key, value);
+    }
+
+    public void put(String key, Long value) {
+        values.put(key, value);
+    }
+
+    public void put(String key, Double value) {
+        values.put(key, value);
+    }
+
+    public void put(String key, Boolean value) {
+        values.put(key, value);
+    }
+
+    public void put(String key, byte[] value) {
+        values.put(key, value);
+    }
+
+    public Object get(String key) {
+        return values.get(key);
+    }
+
+    public Set<String> keySet() {
+        return values.keySet();
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,18 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * Stub of the android context, reduced to what the plugin uses.
+ */
+public abstract class Context {
+    public static final int MODE_PRIVATE = 0;
+
+    public abstract Context getApplicationContext();
+
+    public abstract File getFilesDir();
+
+    public abstract File getDatabasePath(String name);
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+}
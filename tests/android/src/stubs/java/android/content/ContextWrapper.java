@@ -0,0 +1,45 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * Stub of the android context wrapper, which delegates to the context it is attached to.
+ */
+public class ContextWrapper extends Context {
+    private Context base;
+
+    public ContextWrapper(Context base) {
+        this.base = base;
+    }
+
+    protected void attachBaseContext(Context base) {
+        if (null != this.base) {
+            throw new IllegalStateException("Base context already set");
+        }
+        this.base = base;
+    }
+
+    public Context getBaseContext() {
+        return base;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return base.getApplicationContext();
+    }
+
+    @Override
+    public File getFilesDir() {
+        return base.getFilesDir();
+    }
+
+    @Override
+    public File getDatabasePath(String name) {
+        return base.getDatabasePath(name);
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        return base.getSharedPreferences(name, mode);
+    }
+}
@@ -0,0 +1,27 @@
+package android.database;
+
+import java.io.Closeable;
+
+/**
+ * Stub of the android cursor interface, reduced to what the plugin uses.
+ */
+public interface Cursor extends Closeable {
+    boolean moveToFirst();
+
+    boolean moveToNext();
+
+    boolean isNull(int columnIndex);
+
+    int getInt(int columnIndex);
+
+    long getLong(int columnIndex);
+
+    double getDouble(int columnIndex);
+
+    String getString(int columnIndex);
+
+    byte[] getBlob(int columnIndex);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,13 @@
+package android.database;
+
+/**
+ * Stub of the android SQL exception.
+ */
+public class SQLException extends RuntimeException {
+    public SQLException() {
+    }
+
+    public SQLException(String error) {
+        super(error);
+    }
+}
@@ -0,0 +1,269 @@
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Stub of the android SQLite database, reduced to what the plugin uses. It runs on SQLite
+ * through JDBC, so that the SQL of the plugin is executed as written. Like on android,
+ * selection arguments are bound as strings.
+ */
+public final class SQLiteDatabase {
+
+    public interface CursorFactory {
+    }
+
+    private final Connection connection;
+    private boolean isTransactionSuccessful;
+
+    SQLiteDatabase(Connection connection) {
+        this.connection = connection;
+    }
+
+    public void execSQL(String sql) {
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                statement.execute(sql);
+            } finally {
+                statement.close();
+            }
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        }
+    }
+
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            bindStrings(statement, selectionArgs);
+            return new ResultSetCursor(statement, statement.executeQuery());
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        }
+    }
+
+    /**
+     * Returns the row id of the inserted row, or -1 if the insert failed.
+     */
+    public long insert(String table, String nullColumnHack, ContentValues values) {
+        StringBuilder columns = new StringBuilder();
+        StringBuilder placeholders = new StringBuilder();
+        Object[] args = new Object[values.size()];
+        int i = 0;
+        for (String column : values.keySet()) {
+            if (i > 0) {
+                columns.append(", ");
+                placeholders.append(", ");
+            }
+            columns.append(column);
+            placeholders.append('?');
+            args[i++] = values.get(column);
+        }
+        String sql = "INSERT INTO " + table + " (" + columns + ") VALUES (" + placeholders + ")";
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try {
+                for (i = 0; i < args.length; i++) {
+                    statement.setObject(i + 1, args[i]);
+                }
+                statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+            return queryLong("SELECT last_insert_rowid()");
+        } catch (java.sql.SQLException e) {
+            return -1;
+        }
+    }
+
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        String sql = "DELETE FROM " + table + ((null != whereClause) ? " WHERE " + whereClause : "");
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try {
+                bindStrings(statement, whereArgs);
+                return statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        }
+    }
+
+    public void beginTransaction() {
+        try {
+            connection.setAutoCommit(false);
+            isTransactionSuccessful = false;
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        }
+    }
+
+    public void setTransactionSuccessful() {
+        isTransactionSuccessful = true;
+    }
+
+    public void endTransaction() {
+        try {
+            if (isTransactionSuccessful) {
+                connection.commit();
+            }
+            else {
+                connection.rollback();
+            }
+            connection.setAutoCommit(true);
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        }
+    }
+
+    int getVersion() {
+        try {
+            return (int) queryLong("PRAGMA user_version");
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        }
+    }
+
+    void setVersion(int version) {
+        execSQL("PRAGMA user_version = " + version);
+    }
+
+    void close() {
+        try {
+            connection.close();
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        }
+    }
+
+    private long queryLong(String sql) throws java.sql.SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery(sql);
+            resultSet.next();
+            return resultSet.getLong(1);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static void bindStrings(PreparedStatement statement, String[] args)
+            throws java.sql.SQLException {
+        if (null == args) {
+            return;
+        }
+        for (int i = 0; i < args.length; i++) {
+            statement.setString(i + 1, args[i]);
+        }
+    }
+
+    private static SQLException wrap(java.sql.SQLException e) {
+        SQLException exception = new SQLException(e.getMessage());
+        exception.initCause(e);
+        return exception;
+    }
+
+    /**
+     * Cursor over the rows of a query. Columns are indexed from 0, as on android.
+     */
+    private static final class ResultSetCursor implements Cursor {
+        private final Statement statement;
+        private final ResultSet resultSet;
+        private boolean isBeforeFirst = true;
+
+        ResultSetCursor(Statement statement, ResultSet resultSet) {
+            this.statement = statement;
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public boolean moveToFirst() {
+            if (!isBeforeFirst) {
+                throw new UnsupportedOperationException("Cursor can only move forward");
+            }
+            return moveToNext();
+        }
+
+        @Override
+        public boolean moveToNext() {
+            isBeforeFirst = false;
+            try {
+                return resultSet.next();
+            } catch (java.sql.SQLException e) {
+                throw wrap(e);
+            }
+        }
+
+        @Override
+        public boolean isNull(int columnIndex) {
+            try {
+                return null == resultSet.getObject(columnIndex + 1);
+            } catch (java.sql.SQLException e) {
+                throw wrap(e);
+            }
+        }
+
+        @Override
+        public int getInt(int columnIndex) {
+            try {
+                return resultSet.getInt(columnIndex + 1);
+            } catch (java.sql.SQLException e) {
+                throw wrap(e);
+            }
+        }
+
+        @Override
+        public long getLong(int columnIndex) {
+            try {
+                return resultSet.getLong(columnIndex + 1);
+            } catch (java.sql.SQLException e) {
+                throw wrap(e);
+            }
+        }
+
+        @Override
+        public double getDouble(int columnIndex) {
+            try {
+                return resultSet.getDouble(columnIndex + 1);
+            } catch (java.sql.SQLException e) {
+                throw wrap(e);
+            }
+        }
+
+        @Override
+        public String getString(int columnIndex) {
+            try {
+                return resultSet.getString(columnIndex + 1);
+            } catch (java.sql.SQLException e) {
+                throw wrap(e);
+            }
+        }
+
+        @Override
+        public byte[] getBlob(int columnIndex) {
+            try {
+                return resultSet.getBytes(columnIndex + 1);
+            } catch (java.sql.SQLException e) {
+                throw wrap(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                statement.close();
+            } catch (java.sql.SQLException e) {
+                throw wrap(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package android.database.sqlite;
+
+import android.content.Context;
+import android.database.SQLException;
+
+import java.io.File;
+import java.sql.DriverManager;
+
+/**
+ * Stub of the android SQLite open helper. The database is opened in the database path of the
+ * context on first use, and created with onCreate if its version is 0, as on android.
+ */
+public abstract class SQLiteOpenHelper {
+    private final Context context;
+    private final String name;
+    private final int version;
+    private SQLiteDatabase database;
+
+    public SQLiteOpenHelper(Context context, String name, SQLiteDatabase.CursorFactory factory,
+                            int version) {
+        this.context = context;
+        this.name = name;
+        this.version = version;
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+    public synchronized SQLiteDatabase getWritableDatabase() {
+        if (null != database) {
+            return database;
+        }
+        File path = context.getDatabasePath(name);
+        SQLiteDatabase db;
+        try {
+            db = new SQLiteDatabase(
+                    DriverManager.getConnection("jdbc:sqlite:" + path.getAbsolutePath()));
+        } catch (java.sql.SQLException e) {
+            SQLException exception = new SQLException("Cannot open " + path);
+            exception.initCause(e);
+            throw exception;
+        }
+        int oldVersion = db.getVersion();
+        if (oldVersion != version) {
+            db.beginTransaction();
+            try {
+                if (0 == oldVersion) {
+                    onCreate(db);
+                }
+                else {
+                    onUpgrade(db, oldVersion, version);
+                }
+                db.setVersion(version);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        database = db;
+        return db;
+    }
+
+    public SQLiteDatabase getReadableDatabase() {
+        return getWritableDatabase();
+    }
+
+    public synchronized void close() {
+        if (null != database) {
+            database.close();
+            database = null;
+        }
+    }
+}
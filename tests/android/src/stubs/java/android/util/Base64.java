@@ -0,0 +1,44 @@
+package android.util;
+
+/**
+ * Stub of the android Base64 utility, backed by java.util.Base64. Only the flags the plugin
+ * uses are supported.
+ */
+public final class Base64 {
+    public static final int DEFAULT = 0;
+    public static final int NO_PADDING = 1;
+    public static final int NO_WRAP = 2;
+    public static final int URL_SAFE = 8;
+
+    private Base64() {
+    }
+
+    public static String encodeToString(byte[] input, int flags) {
+        java.util.Base64.Encoder encoder = (0 != (flags & URL_SAFE)) ?
+                java.util.Base64.getUrlEncoder() : java.util.Base64.getEncoder();
+        if (0 != (flags & NO_PADDING)) {
+            encoder = encoder.withoutPadding();
+        }
+        String encoded = encoder.encodeToString(input);
+        if (0 != (flags & NO_WRAP)) {
+            return encoded;
+        }
+        // Android wraps lines at 76 characters and ends the output with a newline
+        StringBuilder wrapped = new StringBuilder(encoded.length() + encoded.length() / 76 + 1);
+        for (int i = 0; i < encoded.length(); i += 76) {
+            wrapped.append(encoded, i, Math.min(encoded.length(), i + 76)).append('\n');
+        }
+        return wrapped.toString();
+    }
+
+    /**
+     * Throws IllegalArgumentException on malformed input, as android does.
+     */
+    public static byte[] decode(String str, int flags) {
+        String stripped = str.replaceAll("\\s", "");
+        if (0 != (flags & URL_SAFE)) {
+            return java.util.Base64.getUrlDecoder().decode(stripped);
+        }
+        return java.util.Base64.getDecoder().decode(stripped);
+    }
+}
@@ -0,0 +1,54 @@
+package android.util;
+
+/**
+ * Stub of the android logger. Messages are written to stderr when the zendrive.tests.log
+ * system property is set, and dropped otherwise so that load tests stay quiet.
+ */
+public final class Log {
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    private static final boolean isEnabled = null != System.getProperty("zendrive.tests.log");
+
+    private Log() {
+    }
+
+    public static int d(String tag, String msg) {
+        return println(DEBUG, tag, msg, null);
+    }
+
+    public static int i(String tag, String msg) {
+        return println(INFO, tag, msg, null);
+    }
+
+    public static int w(String tag, String msg) {
+        return println(WARN, tag, msg, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return println(WARN, tag, msg, tr);
+    }
+
+    public static int e(String tag, String msg) {
+        return println(ERROR, tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println(ERROR, tag, msg, tr);
+    }
+
+    private static int println(int priority, String tag, String msg, Throwable tr) {
+        if (!isEnabled) {
+            return 0;
+        }
+        String line = "VVDIWE".charAt(priority - VERBOSE + 1) + "/" + tag + ": " + msg;
+        System.err.println(line);
+        if (null != tr) {
+            tr.printStackTrace();
+        }
+        return line.length();
+    }
+}
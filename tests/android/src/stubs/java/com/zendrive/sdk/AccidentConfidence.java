@@ -0,0 +1,9 @@
+package com.zendrive.sdk;
+
+/**
+ * Stub of the SDK accident confidence.
+ */
+public enum AccidentConfidence {
+    HIGH,
+    LOW
+}
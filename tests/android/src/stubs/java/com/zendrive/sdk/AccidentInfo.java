@@ -0,0 +1,12 @@
+package com.zendrive.sdk;
+
+/**
+ * Stub of the SDK accident event.
+ */
+public class AccidentInfo {
+    public long timestampMillis;
+    public LocationPoint location;
+    public AccidentConfidence confidence;
+    public String trackingId;
+    public String sessionId;
+}
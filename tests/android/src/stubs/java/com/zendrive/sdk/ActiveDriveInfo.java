@@ -0,0 +1,10 @@
+package com.zendrive.sdk;
+
+/**
+ * Stub of the SDK active drive.
+ */
+public class ActiveDriveInfo {
+    public long startTimeMillis;
+    public String trackingId;
+    public String sessionId;
+}
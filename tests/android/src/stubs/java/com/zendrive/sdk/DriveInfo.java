@@ -0,0 +1,17 @@
+package com.zendrive.sdk;
+
+import java.util.List;
+
+/**
+ * Stub of the SDK drive end event.
+ */
+public class DriveInfo {
+    public long startTimeMillis;
+    public long endTimeMillis;
+    public boolean isValid;
+    public double averageSpeed;
+    public double distanceMeters;
+    public List<LocationPoint> waypoints;
+    public String trackingId;
+    public String sessionId;
+}
@@ -0,0 +1,12 @@
+package com.zendrive.sdk;
+
+/**
+ * Stub of the SDK drive resume event.
+ */
+public class DriveResumeInfo {
+    public long startTimeMillis;
+    public long driveGapStartTimestampMillis;
+    public long driveGapEndTimestampMillis;
+    public String trackingId;
+    public String sessionId;
+}
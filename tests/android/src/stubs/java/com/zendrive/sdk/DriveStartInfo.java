@@ -0,0 +1,9 @@
+package com.zendrive.sdk;
+
+/**
+ * Stub of the SDK drive start event.
+ */
+public class DriveStartInfo {
+    public long startTimeMillis;
+    public LocationPoint startLocation;
+}
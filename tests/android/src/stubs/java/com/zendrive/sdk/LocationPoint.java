@@ -0,0 +1,14 @@
+package com.zendrive.sdk;
+
+/**
+ * Stub of an SDK location.
+ */
+public class LocationPoint {
+    public double latitude;
+    public double longitude;
+
+    public LocationPoint(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+}
@@ -0,0 +1,120 @@
+package com.zendrive.sdk;
+
+import android.content.Context;
+
+/**
+ * Stub of the Zendrive SDK entry point. Calls are forwarded to a {@link Backend}, which tests
+ * replace to observe the calls the plugin makes or to complete them asynchronously. The
+ * default backend completes every operation successfully right away and has no active drive.
+ */
+public final class Zendrive {
+
+    public interface Backend {
+        void setup(Context context, ZendriveConfiguration configuration,
+                   Class<? extends ZendriveIntentService> intentServiceClass,
+                   ZendriveOperationCallback callback);
+
+        void teardown(ZendriveOperationCallback callback);
+
+        void startDrive(String trackingId);
+
+        void stopDrive(String trackingId);
+
+        void startSession(String sessionId);
+
+        void stopSession();
+
+        void setZendriveDriveDetectionMode(ZendriveDriveDetectionMode mode);
+
+        ActiveDriveInfo getActiveDriveInfo();
+    }
+
+    public static class DefaultBackend implements Backend {
+        @Override
+        public void setup(Context context, ZendriveConfiguration configuration,
+                          Class<? extends ZendriveIntentService> intentServiceClass,
+                          ZendriveOperationCallback callback) {
+            if (null != callback) {
+                callback.onCompletion(ZendriveOperationResult.createSuccess());
+            }
+        }
+
+        @Override
+        public void teardown(ZendriveOperationCallback callback) {
+            if (null != callback) {
+                callback.onCompletion(ZendriveOperationResult.createSuccess());
+            }
+        }
+
+        @Override
+        public void startDrive(String trackingId) {
+        }
+
+        @Override
+        public void stopDrive(String trackingId) {
+        }
+
+        @Override
+        public void startSession(String sessionId) {
+        }
+
+        @Override
+        public void stopSession() {
+        }
+
+        @Override
+        public void setZendriveDriveDetectionMode(ZendriveDriveDetectionMode mode) {
+        }
+
+        @Override
+        public ActiveDriveInfo getActiveDriveInfo() {
+            return null;
+        }
+    }
+
+    private static volatile Backend backend = new DefaultBackend();
+
+    private Zendrive() {
+    }
+
+    /**
+     * Installs backend, or the default backend if it is null.
+     */
+    public static void setBackend(Backend backend) {
+        Zendrive.backend = (null != backend) ? backend : new DefaultBackend();
+    }
+
+    public static void setup(Context context, ZendriveConfiguration configuration,
+                             Class<? extends ZendriveIntentService> intentServiceClass,
+                             ZendriveOperationCallback callback) {
+        backend.setup(context, configuration, intentServiceClass, callback);
+    }
+
+    public static void teardown(ZendriveOperationCallback callback) {
+        backend.teardown(callback);
+    }
+
+    public static void startDrive(String trackingId) {
+        backend.startDrive(trackingId);
+    }
+
+    public static void stopDrive(String trackingId) {
+        backend.stopDrive(trackingId);
+    }
+
+    public static void startSession(String sessionId) {
+        backend.startSession(sessionId);
+    }
+
+    public static void stopSession() {
+        backend.stopSession();
+    }
+
+    public static void setZendriveDriveDetectionMode(ZendriveDriveDetectionMode mode) {
+        backend.setZendriveDriveDetectionMode(mode);
+    }
+
+    public static ActiveDriveInfo getActiveDriveInfo() {
+        return backend.getActiveDriveInfo();
+    }
+}
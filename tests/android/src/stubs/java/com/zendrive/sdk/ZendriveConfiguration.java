@@ -0,0 +1,38 @@
+package com.zendrive.sdk;
+
+/**
+ * Stub of the SDK configuration.
+ */
+public final class ZendriveConfiguration {
+    private final String applicationKey;
+    private final String driverId;
+    private final ZendriveDriveDetectionMode driveDetectionMode;
+    private ZendriveDriverAttributes driverAttributes;
+
+    public ZendriveConfiguration(String applicationKey, String driverId,
+                                 ZendriveDriveDetectionMode driveDetectionMode) {
+        this.applicationKey = applicationKey;
+        this.driverId = driverId;
+        this.driveDetectionMode = driveDetectionMode;
+    }
+
+    public String getApplicationKey() {
+        return applicationKey;
+    }
+
+    public String getDriverId() {
+        return driverId;
+    }
+
+    public ZendriveDriveDetectionMode getDriveDetectionMode() {
+        return driveDetectionMode;
+    }
+
+    public ZendriveDriverAttributes getDriverAttributes() {
+        return driverAttributes;
+    }
+
+    public void setDriverAttributes(ZendriveDriverAttributes driverAttributes) {
+        this.driverAttributes = driverAttributes;
+    }
+}
@@ -0,0 +1,9 @@
+package com.zendrive.sdk;
+
+/**
+ * Stub of the SDK drive detection modes.
+ */
+public enum ZendriveDriveDetectionMode {
+    AUTO_ON,
+    AUTO_OFF
+}
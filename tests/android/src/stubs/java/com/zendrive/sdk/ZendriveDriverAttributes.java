@@ -0,0 +1,74 @@
+package com.zendrive.sdk;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stub of the driver attributes passed with the SDK configuration.
+ */
+public final class ZendriveDriverAttributes {
+    private String firstName;
+    private String lastName;
+    private String email;
+    private String group;
+    private String phoneNumber;
+    private Date driverStartDate;
+    private final Map<String, String> customAttributes = new HashMap<String, String>();
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public void setGroup(String group) {
+        this.group = group;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    public void setPhoneNumber(String phoneNumber) {
+        this.phoneNumber = phoneNumber;
+    }
+
+    public Date getDriverStartDate() {
+        return driverStartDate;
+    }
+
+    public void setDriverStartDate(Date driverStartDate) {
+        this.driverStartDate = driverStartDate;
+    }
+
+    public String getCustomAttribute(String key) {
+        return customAttributes.get(key);
+    }
+
+    public void setCustomAttribute(String key, String value) {
+        customAttributes.put(key, value);
+    }
+}
@@ -0,0 +1,24 @@
+package com.zendrive.sdk;
+
+import android.app.IntentService;
+
+/**
+ * Stub of the service through which the SDK delivers events to the application.
+ */
+public abstract class ZendriveIntentService extends IntentService {
+    public ZendriveIntentService(String name) {
+        super(name);
+    }
+
+    public abstract void onDriveStart(DriveStartInfo driveStartInfo);
+
+    public abstract void onDriveEnd(DriveInfo driveInfo);
+
+    public abstract void onDriveResume(DriveResumeInfo driveResumeInfo);
+
+    public abstract void onAccident(AccidentInfo accidentInfo);
+
+    public abstract void onLocationPermissionsChange(boolean granted);
+
+    public abstract void onLocationSettingsChange(ZendriveLocationSettingsResult result);
+}
@@ -0,0 +1,16 @@
+package com.zendrive.sdk;
+
+/**
+ * Stub of the SDK location settings event.
+ */
+public final class ZendriveLocationSettingsResult {
+    private final boolean isSuccess;
+
+    public ZendriveLocationSettingsResult(boolean isSuccess) {
+        this.isSuccess = isSuccess;
+    }
+
+    public boolean isSuccess() {
+        return isSuccess;
+    }
+}
@@ -0,0 +1,8 @@
+package com.zendrive.sdk;
+
+/**
+ * Stub of the callback of asynchronous SDK operations.
+ */
+public interface ZendriveOperationCallback {
+    void onCompletion(ZendriveOperationResult result);
+}
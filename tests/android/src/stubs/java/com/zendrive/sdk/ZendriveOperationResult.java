@@ -0,0 +1,30 @@
+package com.zendrive.sdk;
+
+/**
+ * Stub of the result of an asynchronous SDK operation.
+ */
+public final class ZendriveOperationResult {
+    private final boolean isSuccess;
+    private final String errorMessage;
+
+    private ZendriveOperationResult(boolean isSuccess, String errorMessage) {
+        this.isSuccess = isSuccess;
+        this.errorMessage = errorMessage;
+    }
+
+    public static ZendriveOperationResult createSuccess() {
+        return new ZendriveOperationResult(true, null);
+    }
+
+    public static ZendriveOperationResult createError(String errorMessage) {
+        return new ZendriveOperationResult(false, errorMessage);
+    }
+
+    public boolean isSuccess() {
+        return isSuccess;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+}
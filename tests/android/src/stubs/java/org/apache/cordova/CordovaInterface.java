@@ -0,0 +1,17 @@
+package org.apache.cordova;
+
+import android.app.Activity;
+import android.content.Context;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Stub of the interface cordova gives plugins to the activity.
+ */
+public interface CordovaInterface {
+    Activity getActivity();
+
+    Context getContext();
+
+    ExecutorService getThreadPool();
+}
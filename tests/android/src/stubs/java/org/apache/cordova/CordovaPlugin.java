@@ -0,0 +1,47 @@
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * Stub of the cordova plugin base class. The plugin manager calls privateInitialize once, then
+ * execute with the raw arguments of every exec call from javascript.
+ */
+public class CordovaPlugin {
+    public CordovaWebView webView;
+    public CordovaInterface cordova;
+    private String serviceName;
+
+    public final void privateInitialize(String serviceName, CordovaInterface cordova,
+                                        CordovaWebView webView) {
+        this.serviceName = serviceName;
+        this.cordova = cordova;
+        this.webView = webView;
+        initialize(cordova, webView);
+        pluginInitialize();
+    }
+
+    public void initialize(CordovaInterface cordova, CordovaWebView webView) {
+    }
+
+    protected void pluginInitialize() {
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public boolean execute(String action, String rawArgs, CallbackContext callbackContext)
+            throws JSONException {
+        JSONArray args = new JSONArray(rawArgs);
+        return execute(action, args, callbackContext);
+    }
+
+    public boolean execute(String action, JSONArray args, CallbackContext callbackContext)
+            throws JSONException {
+        return false;
+    }
+
+    public void onDestroy() {
+    }
+}
@@ -0,0 +1,8 @@
+package org.apache.cordova;
+
+/**
+ * Stub of the cordova webview, reduced to sending plugin results to javascript.
+ */
+public interface CordovaWebView {
+    void sendPluginResult(PluginResult cr, String callbackId);
+}
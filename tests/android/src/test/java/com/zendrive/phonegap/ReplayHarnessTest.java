@@ -0,0 +1,95 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayHarnessTest {
+    private ReplayHarness harness;
+
+    @Before
+    public void setUp() {
+        harness = new ReplayHarness();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        harness.close();
+    }
+
+    @Test
+    public void deliversEveryEventFromConcurrentDrivers() throws Exception {
+        ReplayHarness.Report report = harness.run(new ReplayHarness.LoadProfile()
+                .drives(200).waypoints(500).concurrentDrivers(4));
+
+        assertEquals(400, report.eventsSent);
+        assertEquals(report.eventsSent, report.eventsDelivered);
+        assertEquals(0, report.duplicateEvents);
+        assertTrue(report.getLatencyMillis(100) > 0);
+    }
+
+    @Test
+    public void deliversStreamedDrivesInChunks() throws Exception {
+        ReplayHarness.Report report = harness.run(new ReplayHarness.LoadProfile()
+                .drives(10).waypoints(1000).waypointChunkSize(300).waypointEncoding(2, 6));
+
+        assertEquals(report.eventsSent, report.eventsDelivered);
+        assertEquals(0, report.duplicateEvents);
+    }
+
+    @Test
+    public void replaysEventsSentBeforeCallbacksAreRegistered() throws Exception {
+        DriveTrace trace = DriveTrace.synthetic(7, 1500000000000L, 120);
+        ZendriveIntentService service = harness.startService();
+        service.onDriveStart(trace.driveStartInfo);
+        service.onDriveEnd(trace.driveInfo);
+        harness.awaitEventsDispatched();
+
+        RecordingCallbackContext driveStartCallback =
+                harness.registerCallback(ZendriveEventType.DRIVE_START);
+        RecordingCallbackContext driveEndCallback =
+                harness.registerCallback(ZendriveEventType.DRIVE_END);
+        harness.awaitEventsDispatched();
+
+        List<JSONObject> driveStarts = driveStartCallback.getEvents();
+        assertEquals(1, driveStarts.size());
+        assertEquals(trace.driveStartInfo.startTimeMillis,
+                driveStarts.get(0).getLong("startTimestamp"));
+        List<JSONObject> driveEnds = driveEndCallback.getEvents();
+        assertEquals(1, driveEnds.size());
+        assertEquals(trace.driveInfo.endTimeMillis, driveEnds.get(0).getLong("endTimestamp"));
+        assertEquals(120, driveEnds.get(0).getJSONArray("waypoints").length());
+    }
+
+    @Test
+    public void replaysRecordedTraces() throws Exception {
+        DriveTrace recorded = DriveTrace.fromJson(
+                DriveTrace.synthetic(3, 1500000000000L, 50).toJson());
+        DriveTrace other = DriveTrace.fromJson(
+                DriveTrace.synthetic(4, 1500000060000L, 80).toJson());
+
+        ReplayHarness.Report report = harness.run(new ReplayHarness.LoadProfile()
+                .traces(Arrays.asList(recorded, other)));
+
+        assertEquals(4, report.eventsDelivered);
+    }
+
+    @Test
+    public void finishedCallbackDropsLaterResults() {
+        RecordingCallbackContext callbackContext = harness.exec("unsubscribe", "unknown");
+
+        assertTrue(callbackContext.isFinished());
+        assertEquals(1, callbackContext.getResults().size());
+        assertFalse(callbackContext.getResults().get(0).keepCallback);
+        callbackContext.success();
+        assertEquals(1, callbackContext.getDroppedResultsCount());
+    }
+}
@@ -0,0 +1,214 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.LocationPoint;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WaypointEncoderTest {
+    private static final File kZendriveJs = new File("../../www/zendrive.js");
+
+    // Sends the cases of the file given as argument to the end of drive callback registered
+    // with Zendrive.registerForDelegateCallbacks, and prints the waypoints as
+    // [[latitude, longitude], ...] per case
+    private static final String kNodeDecoder =
+            "var Module = require('module');\n" +
+            "var load = Module._load;\n" +
+            "var processEndOfDrive;\n" +
+            "Module._load = function(request) {\n" +
+            "    if ('cordova/exec' === request) {\n" +
+            "        return function(success, error, service, action) {\n" +
+            "            if ('setProcessEndOfDriveDelegateCallback' === action) {\n" +
+            "                processEndOfDrive = success;\n" +
+            "            }\n" +
+            "        };\n" +
+            "    }\n" +
+            "    return load.apply(this, arguments);\n" +
+            "};\n" +
+            "var Zendrive = require(process.argv[2]);\n" +
+            "var cases = JSON.parse(require('fs').readFileSync(process.argv[3], 'utf8'));\n" +
+            "var waypoints;\n" +
+            "var callback = new Zendrive.ZendriveCallback();\n" +
+            "callback.processEndOfDrive = function(driveInfo) { waypoints = driveInfo.waypoints; };\n" +
+            "Zendrive.registerForDelegateCallbacks(callback);\n" +
+            "var decoded = cases.map(function(c) {\n" +
+            "    processEndOfDrive(c);\n" +
+            "    return waypoints.map(function(w) { return [w.latitude, w.longitude]; });\n" +
+            "});\n" +
+            "process.stdout.write(JSON.stringify(decoded));\n";
+
+    @Test
+    public void roundTripsWithinPrecision() {
+        Random random = new Random(15);
+        for (int precision = WaypointEncoder.kMinDeltaVarintPrecision;
+             precision <= WaypointEncoder.kMaxDeltaVarintPrecision; precision++) {
+            List<LocationPoint> waypoints = getDrive(random, 2000);
+            List<LocationPoint> decoded = WaypointEncoder.decodeDeltaVarint(
+                    WaypointEncoder.encodeDeltaVarint(waypoints, precision), precision);
+
+            // Half a unit of the last digit, with room for the rounding of the division
+            double maxError = 0.5 / Math.pow(10, precision) + 1e-12;
+            assertEquals(waypoints.size(), decoded.size());
+            for (int i = 0; i < waypoints.size(); i++) {
+                assertTrue("latitude " + i + " at precision " + precision,
+                        Math.abs(waypoints.get(i).latitude - decoded.get(i).latitude) <=
+                                maxError);
+                assertTrue("longitude " + i + " at precision " + precision,
+                        Math.abs(waypoints.get(i).longitude - decoded.get(i).longitude) <=
+                                maxError);
+            }
+
+            // Decoded waypoints are already quantized and encode to the same bytes
+            assertEquals(WaypointEncoder.encodeDeltaVarint(waypoints, precision),
+                    WaypointEncoder.encodeDeltaVarint(decoded, precision));
+        }
+    }
+
+    @Test
+    public void roundTripsExtremeCoordinates() {
+        List<LocationPoint> waypoints = Arrays.asList(
+                new LocationPoint(90, 180), new LocationPoint(-90, -180),
+                new LocationPoint(0, 0), new LocationPoint(-0.0, -0.0),
+                new LocationPoint(89.999999999, -179.999999999),
+                new LocationPoint(1e-9, -1e-9));
+        List<LocationPoint> decoded = WaypointEncoder.decodeDeltaVarint(
+                WaypointEncoder.encodeDeltaVarint(waypoints, 9), 9);
+
+        assertEquals(waypoints.size(), decoded.size());
+        for (int i = 0; i < waypoints.size(); i++) {
+            assertEquals(waypoints.get(i).latitude, decoded.get(i).latitude, 0);
+            assertEquals(waypoints.get(i).longitude, decoded.get(i).longitude, 0);
+        }
+    }
+
+    @Test
+    public void encodesNoWaypointsAsEmptyString() {
+        assertEquals("", WaypointEncoder.encodeDeltaVarint(null, 6));
+        assertEquals("", WaypointEncoder.encodeDeltaVarint(
+                Collections.<LocationPoint>emptyList(), 6));
+        assertEquals(0, WaypointEncoder.decodeDeltaVarint("", 6).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedWaypoints() {
+        byte[] bytes = WaypointEncoder.encodeDeltaVarintBytes(
+                Arrays.asList(new LocationPoint(37.774929, -122.419416)), 6);
+        WaypointEncoder.decodeDeltaVarintBytes(Arrays.copyOf(bytes, bytes.length - 1), 6);
+    }
+
+    @Test
+    public void decodesAsZendriveJs() throws Exception {
+        Assume.assumeTrue("node is not installed", isNodeInstalled());
+
+        Random random = new Random(20);
+        JSONArray cases = new JSONArray();
+        List<List<LocationPoint>> expected = new ArrayList<List<LocationPoint>>();
+        for (int precision = WaypointEncoder.kMinDeltaVarintPrecision;
+             precision <= WaypointEncoder.kMaxDeltaVarintPrecision; precision++) {
+            String encoded = WaypointEncoder.encodeDeltaVarint(getDrive(random, 500), precision);
+            JSONObject result = new JSONObject();
+            result.put("encodedWaypoints", encoded);
+            result.put("waypointsEncoding", 2);
+            result.put("waypointsPrecision", precision);
+            cases.put(result);
+            expected.add(WaypointEncoder.decodeDeltaVarint(encoded, precision));
+        }
+
+        JSONArray decoded = new JSONArray(runNodeDecoder(cases.toString()));
+
+        assertEquals(expected.size(), decoded.length());
+        for (int i = 0; i < expected.size(); i++) {
+            JSONArray waypoints = decoded.getJSONArray(i);
+            assertEquals(expected.get(i).size(), waypoints.length());
+            for (int j = 0; j < waypoints.length(); j++) {
+                assertEquals(expected.get(i).get(j).latitude,
+                        waypoints.getJSONArray(j).getDouble(0), 0);
+                assertEquals(expected.get(i).get(j).longitude,
+                        waypoints.getJSONArray(j).getDouble(1), 0);
+            }
+        }
+    }
+
+    /**
+     * Returns a drive of waypointsCount fixes a second apart, somewhere on earth.
+     */
+    private static List<LocationPoint> getDrive(Random random, int waypointsCount) {
+        List<LocationPoint> waypoints = new ArrayList<LocationPoint>(waypointsCount);
+        double latitude = (random.nextDouble() - 0.5) * 170;
+        double longitude = (random.nextDouble() - 0.5) * 350;
+        for (int i = 0; i < waypointsCount; i++) {
+            latitude += (random.nextDouble() - 0.5) * 4e-4;
+            longitude += (random.nextDouble() - 0.5) * 4e-4;
+            waypoints.add(new LocationPoint(latitude, longitude));
+        }
+        return waypoints;
+    }
+
+    private static boolean isNodeInstalled() {
+        try {
+            Process process = new ProcessBuilder("node", "--version").start();
+            readFully(process.getInputStream());
+            return 0 == process.waitFor();
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String runNodeDecoder(String cases) throws Exception {
+        File script = File.createTempFile("decode", ".js");
+        File input = File.createTempFile("cases", ".json");
+        try {
+            write(script, kNodeDecoder);
+            write(input, cases);
+            Process process = new ProcessBuilder("node", script.getAbsolutePath(),
+                    kZendriveJs.getCanonicalPath(), input.getAbsolutePath())
+                    .redirectErrorStream(true)
+                    .start();
+            String output = readFully(process.getInputStream());
+            assertEquals(output, 0, process.waitFor());
+            return output;
+        } finally {
+            script.delete();
+            input.delete();
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static String readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = inputStream.read(buffer)) > 0) {
+            output.write(buffer, 0, length);
+        }
+        return output.toString("UTF-8");
+    }
+}
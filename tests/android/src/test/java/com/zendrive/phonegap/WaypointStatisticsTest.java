@@ -0,0 +1,68 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.LocationPoint;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WaypointStatisticsTest {
+
+    @Test
+    public void agreesWithJavascriptComputation() throws Exception {
+        for (int seed = 0; seed < 20; seed++) {
+            List<LocationPoint> waypoints = DriveTrace.synthetic(seed, 1500000000000L,
+                    1000 + 500 * seed).driveInfo.waypoints;
+            WaypointStatistics statistics = WaypointStatistics.compute(waypoints);
+            WaypointStatisticsBenchmark.JavascriptStatistics expected =
+                    WaypointStatisticsBenchmark.computeAsJavascript(new JSONArray(
+                            WaypointStatisticsBenchmark.encodeWaypoints(waypoints)));
+
+            assertEquals(waypoints.size(), statistics.waypointsCount);
+            assertEquals(expected.minLatitude, statistics.minLatitude, 0);
+            assertEquals(expected.maxLatitude, statistics.maxLatitude, 0);
+            assertEquals(expected.minLongitude, statistics.minLongitude, 0);
+            assertEquals(expected.maxLongitude, statistics.maxLongitude, 0);
+            assertEquals(expected.pathDistanceMeters, statistics.pathDistanceMeters,
+                    1e-9 * expected.pathDistanceMeters);
+            assertEquals(expected.maxSegmentDistanceMeters, statistics.maxSegmentDistanceMeters,
+                    1e-9 * expected.maxSegmentDistanceMeters);
+            assertEquals(expected.stopCount, statistics.stopCount);
+        }
+    }
+
+    @Test
+    public void countsStops() {
+        // A degree of latitude is about 111 km, 1e-5 degrees about 1.1 m
+        List<LocationPoint> waypoints = Arrays.asList(
+                new LocationPoint(37.0, -122.0),
+                new LocationPoint(37.00001, -122.0),
+                new LocationPoint(37.00002, -122.0),
+                new LocationPoint(37.001, -122.0),
+                new LocationPoint(37.002, -122.0),
+                new LocationPoint(37.00201, -122.0),
+                new LocationPoint(37.00202, -122.0));
+
+        WaypointStatistics statistics = WaypointStatistics.compute(waypoints);
+
+        assertEquals(2, statistics.stopCount);
+        assertEquals(37.0, statistics.minLatitude, 0);
+        assertEquals(37.00202, statistics.maxLatitude, 0);
+        assertTrue(statistics.pathDistanceMeters > 224 && statistics.pathDistanceMeters < 225);
+    }
+
+    @Test
+    public void computesNothingWithoutWaypoints() {
+        assertEquals(0, WaypointStatistics.compute(null).waypointsCount);
+        WaypointStatistics statistics =
+                WaypointStatistics.compute(Collections.<LocationPoint>emptyList());
+        assertEquals(0, statistics.stopCount);
+        assertEquals(0, statistics.pathDistanceMeters, 0);
+    }
+}
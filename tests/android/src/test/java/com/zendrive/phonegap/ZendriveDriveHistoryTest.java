@@ -0,0 +1,198 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.DriveInfo;
+import com.zendrive.sdk.LocationPoint;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives recorded by the drive history as they end, read back through the plugin actions.
+ * The history runs on SQLite, so that its queries are executed as written.
+ */
+public class ZendriveDriveHistoryTest {
+    private static final long kFirstDriveStartMillis = 1500000000000L;
+    private static final int kWaypointsCount = 30;
+    private static final int kWaypointPrecision = 6;
+    private static final long kAwaitTimeoutMillis = 5000;
+
+    private ReplayHarness harness;
+    private ZendriveIntentService service;
+
+    @Before
+    public void setUp() throws Exception {
+        harness = new ReplayHarness();
+        service = harness.startService();
+        // The database outlives the harness, drives of earlier tests are deleted
+        setMaxDrives(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        harness.close();
+    }
+
+    @Test
+    public void pagesThroughDrivesMostRecentFirst() throws Exception {
+        setMaxDrives(10);
+        List<DriveInfo> drives = new ArrayList<DriveInfo>();
+        for (int i = 0; i < 7; i++) {
+            drives.add(getDrive(i, kFirstDriveStartMillis + i * 60000L));
+        }
+        // Drives 3 and 4 start at the same time and end up on different pages, they are
+        // ordered by id
+        drives.get(3).startTimeMillis = drives.get(4).startTimeMillis;
+        recordDrives(drives);
+
+        List<String> trackingIds = new ArrayList<String>();
+        List<Integer> pageSizes = new ArrayList<Integer>();
+        Object pageToken = JSONObject.NULL;
+        do {
+            JSONObject page = queryDrives(new JSONObject().put("limit", 3)
+                    .put("pageToken", pageToken));
+            JSONArray pageDrives = page.getJSONArray("drives");
+            pageSizes.add(pageDrives.length());
+            for (int i = 0; i < pageDrives.length(); i++) {
+                trackingIds.add(pageDrives.getJSONObject(i).getString("trackingId"));
+            }
+            pageToken = page.get("nextPageToken");
+        } while (JSONObject.NULL != pageToken);
+
+        assertEquals("[3, 3, 1]", pageSizes.toString());
+        assertEquals("[trace-6, trace-5, trace-4, trace-3, trace-2, trace-1, trace-0]",
+                trackingIds.toString());
+    }
+
+    @Test
+    public void filtersDrives() throws Exception {
+        setMaxDrives(10);
+        List<DriveInfo> drives = new ArrayList<DriveInfo>();
+        for (int i = 0; i < 5; i++) {
+            drives.add(getDrive(i, kFirstDriveStartMillis + i * 60000L));
+        }
+        recordDrives(drives);
+
+        JSONObject page = queryDrives(new JSONObject()
+                .put("startTimestamp", drives.get(1).startTimeMillis)
+                .put("endTimestamp", drives.get(3).endTimeMillis));
+        assertEquals("[trace-3, trace-2, trace-1]", getTrackingIds(page).toString());
+        assertEquals(JSONObject.NULL, page.get("nextPageToken"));
+
+        page = queryDrives(new JSONObject().put("trackingId", "trace-2"));
+        assertEquals("[trace-2]", getTrackingIds(page).toString());
+        JSONObject summary = page.getJSONArray("drives").getJSONObject(0);
+        assertEquals(drives.get(2).startTimeMillis, summary.getLong("startTimestamp"));
+        assertEquals(drives.get(2).endTimeMillis, summary.getLong("endTimestamp"));
+        assertEquals(kWaypointsCount, summary.getInt("waypointsCount"));
+        assertTrue(summary.getBoolean("isValid"));
+    }
+
+    @Test
+    public void keepsOnlyMostRecentDrives() throws Exception {
+        setMaxDrives(3);
+        List<DriveInfo> drives = new ArrayList<DriveInfo>();
+        for (int i = 0; i < 5; i++) {
+            drives.add(getDrive(i, kFirstDriveStartMillis + i * 60000L));
+        }
+        recordDrives(drives);
+        assertEquals("[trace-4, trace-3, trace-2]", getTrackingIds(queryDrives(null)).toString());
+
+        setMaxDrives(2);
+        assertEquals("[trace-4, trace-3]", getTrackingIds(queryDrives(null)).toString());
+
+        setMaxDrives(0);
+        assertEquals("[]", getTrackingIds(queryDrives(null)).toString());
+        // The history is disabled
+        recordDrives(drives);
+        assertEquals("[]", getTrackingIds(queryDrives(null)).toString());
+    }
+
+    @Test
+    public void returnsWaypointsOfDrive() throws Exception {
+        setMaxDrives(10);
+        DriveInfo drive = getDrive(1, kFirstDriveStartMillis);
+        List<DriveInfo> drives = new ArrayList<DriveInfo>();
+        drives.add(drive);
+        recordDrives(drives);
+        long driveId = queryDrives(null).getJSONArray("drives").getJSONObject(0)
+                .getLong("driveId");
+
+        JSONObject waypoints = new JSONObject(
+                awaitResult(harness.exec("getDriveHistoryWaypoints", driveId)).message);
+        assertEquals(kWaypointPrecision, waypoints.getInt("waypointsPrecision"));
+        List<LocationPoint> decoded = WaypointEncoder.decodeDeltaVarintBytes(
+                android.util.Base64.decode(waypoints.getString("encodedWaypoints"),
+                        android.util.Base64.NO_WRAP), kWaypointPrecision);
+        assertEquals(kWaypointsCount, decoded.size());
+        for (int i = 0; i < kWaypointsCount; i++) {
+            assertEquals(drive.waypoints.get(i).latitude, decoded.get(i).latitude, 1e-6);
+            assertEquals(drive.waypoints.get(i).longitude, decoded.get(i).longitude, 1e-6);
+        }
+
+        RecordingCallbackContext.Result result =
+                awaitResult(harness.exec("getDriveHistoryWaypoints", driveId + 1));
+        assertEquals(PluginResult.Status.ERROR, result.status);
+    }
+
+    @Test
+    public void invalidPageTokenIsReported() throws Exception {
+        setMaxDrives(10);
+        for (String pageToken : new String[] { "not a token", "1:", "1:2:3", "x:1" }) {
+            RecordingCallbackContext.Result result = awaitResult(harness.exec(
+                    "queryDriveHistory", new JSONObject().put("pageToken", pageToken)));
+            assertEquals(PluginResult.Status.ERROR, result.status);
+            assertNotNull(result.message);
+            assertTrue(result.message, result.message.contains("Invalid page token"));
+        }
+    }
+
+    private static DriveInfo getDrive(int seed, long startTimeMillis) {
+        return DriveTrace.synthetic(seed, startTimeMillis, kWaypointsCount).driveInfo;
+    }
+
+    private void recordDrives(List<DriveInfo> drives) throws InterruptedException {
+        for (DriveInfo drive : drives) {
+            service.onDriveEnd(drive);
+        }
+        harness.awaitEventsDispatched();
+    }
+
+    private void setMaxDrives(int maxDrives) throws Exception {
+        RecordingCallbackContext.Result result = awaitResult(harness.exec(
+                "setDriveHistoryOptions", new JSONObject().put("maxDrives", maxDrives)));
+        assertEquals(PluginResult.Status.OK, result.status);
+    }
+
+    private JSONObject queryDrives(JSONObject query) throws Exception {
+        RecordingCallbackContext.Result result =
+                awaitResult(harness.exec("queryDriveHistory", query));
+        assertEquals(result.message, PluginResult.Status.OK, result.status);
+        return new JSONObject(result.message);
+    }
+
+    private static List<String> getTrackingIds(JSONObject page) throws JSONException {
+        JSONArray drives = page.getJSONArray("drives");
+        List<String> trackingIds = new ArrayList<String>();
+        for (int i = 0; i < drives.length(); i++) {
+            trackingIds.add(drives.getJSONObject(i).getString("trackingId"));
+        }
+        return trackingIds;
+    }
+
+    private static RecordingCallbackContext.Result awaitResult(
+            RecordingCallbackContext callbackContext) throws InterruptedException {
+        return callbackContext.awaitResults(1, kAwaitTimeoutMillis).get(0);
+    }
+}
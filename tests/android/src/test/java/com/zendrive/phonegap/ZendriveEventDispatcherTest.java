@@ -0,0 +1,129 @@
+package com.zendrive.phonegap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A full event queue never blocks the bridge thread, and blocks SDK threads for at most
+ * kMaxQueueWaitMillis.
+ */
+public class ZendriveEventDispatcherTest {
+    private ZendriveEventDispatcher dispatcher;
+    private CountDownLatch releaseWorker;
+
+    @Before
+    public void setUp() {
+        dispatcher = new ZendriveEventDispatcher();
+        releaseWorker = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        releaseWorker.countDown();
+        dispatcher.shutdown();
+        dispatcher.awaitTermination(5000);
+    }
+
+    @Test
+    public void dispatchGivesUpWhenQueueStaysFull() {
+        fillQueue();
+
+        long startNanos = System.nanoTime();
+        assertFalse(dispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }));
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        assertTrue("waited " + waitedMillis + " ms",
+                waitedMillis >= ZendriveEventDispatcher.kMaxQueueWaitMillis - 50);
+        assertFalse(dispatcher.isShutdown());
+    }
+
+    @Test
+    public void bridgeTasksAreQueuedInOrderWithoutWaiting() throws Exception {
+        fillQueue();
+
+        final List<Integer> order = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch done = new CountDownLatch(3);
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            final int task = i;
+            dispatcher.dispatchWithoutWaiting(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(task);
+                    done.countDown();
+                }
+            }, null);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) < 500);
+
+        releaseWorker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("[0, 1, 2]", order.toString());
+    }
+
+    @Test
+    public void bridgeTaskIsHandedBackAfterShutdown() throws Exception {
+        fillQueue();
+
+        final CountDownLatch handedBack = new CountDownLatch(1);
+        dispatcher.dispatchWithoutWaiting(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                handedBack.countDown();
+            }
+        });
+        dispatcher.shutdown();
+        // Tasks queued before shutdown run first
+        assertFalse(handedBack.await(100, TimeUnit.MILLISECONDS));
+
+        releaseWorker.countDown();
+        assertTrue(handedBack.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Blocks the worker thread and fills the queue behind it.
+     */
+    private void fillQueue() {
+        final CountDownLatch isWorkerBlocked = new CountDownLatch(1);
+        assertTrue(dispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                isWorkerBlocked.countDown();
+                try {
+                    releaseWorker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }));
+        try {
+            assertTrue(isWorkerBlocked.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        while (dispatcher.getQueueDepth() < 64) {
+            assertTrue(dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.zendrive.phonegap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Journaled records are only removed once their drain is committed, and the journal is kept
+ * under its size limit in UTF-8 bytes.
+ */
+public class ZendriveEventJournalTest {
+    // Size limit of the journal
+    private static final long kMaxJournalBytes = 4 * 1024 * 1024;
+
+    private File directory;
+    private ZendriveEventJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("zendrive-journal").toFile();
+        journal = new ZendriveEventJournal(directory);
+    }
+
+    @After
+    public void tearDown() {
+        journal.close();
+        File[] files = directory.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void drainedRecordsStayUntilCommitted() {
+        journal.append("driveStart", "{\"a\":1}");
+        journal.append("driveStart", "{\"a\":2}");
+        ZendriveEventJournal.Drain drain = journal.drain("driveStart");
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":2}"), drain.payloads);
+
+        // The process dies before the events are delivered
+        assertEquals(drain.payloads, reopen().drain("driveStart").payloads);
+
+        journal.commit(drain);
+        assertEquals(Collections.emptyList(), reopen().drain("driveStart").payloads);
+    }
+
+    @Test
+    public void pendingDrainIsNotReturnedAgain() {
+        journal.append("driveStart", "{\"a\":1}");
+        ZendriveEventJournal.Drain drain = journal.drain("driveStart");
+        journal.append("driveStart", "{\"a\":2}");
+
+        ZendriveEventJournal.Drain nextDrain = journal.drain("driveStart");
+        assertEquals(Collections.singletonList("{\"a\":2}"), nextDrain.payloads);
+        journal.release(nextDrain);
+
+        // Records appended after the drain are kept
+        journal.commit(drain);
+        assertEquals(Collections.singletonList("{\"a\":2}"),
+                reopen().drain("driveStart").payloads);
+    }
+
+    @Test
+    public void releasedDrainIsReturnedAgain() {
+        journal.append("driveStart", "{\"a\":1}");
+        journal.release(journal.drain("driveStart"));
+        assertEquals(Collections.singletonList("{\"a\":1}"),
+                journal.drain("driveStart").payloads);
+    }
+
+    @Test
+    public void commitOnlyRemovesRecordsOfTheDrain() {
+        journal.append("driveEnd", "{\"b\":1}");
+        journal.append("driveStart", "{\"a\":1}");
+        ZendriveEventJournal.Drain driveEndDrain = journal.drain("driveEnd");
+        ZendriveEventJournal.Drain driveStartDrain = journal.drain("driveStart");
+        journal.append("driveStart", "{\"a\":2}");
+
+        // Removing the drive end record moves the records of the pending drive start drain
+        journal.commit(driveEndDrain);
+        journal.commit(driveStartDrain);
+
+        ZendriveEventJournal reopened = reopen();
+        assertEquals(Collections.emptyList(), reopened.drain("driveEnd").payloads);
+        assertEquals(Collections.singletonList("{\"a\":2}"),
+                reopened.drain("driveStart").payloads);
+    }
+
+    @Test
+    public void skipsDamagedRecords() throws IOException {
+        journal.append("driveStart", "{\"a\":1}");
+        journal.close();
+        File journalFile = new File(directory, "zendrive_event_journal");
+        Files.write(journalFile.toPath(), "driveStart\t7\t0\t{\"a\":2}\ndriveSt".getBytes("UTF-8"),
+                java.nio.file.StandardOpenOption.APPEND);
+        journal.append("driveStart", "{\"a\":3}");
+
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":3}"),
+                journal.drain("driveStart").payloads);
+    }
+
+    @Test
+    public void sizeLimitIsInBytes() {
+        // Three bytes per character in UTF-8
+        char[] characters = new char[1000];
+        Arrays.fill(characters, '€');
+        String payload = "\"" + new String(characters) + "\"";
+        File journalFile = new File(directory, "zendrive_event_journal");
+        long maxJournalLength = 0;
+        for (int i = 0; i < 2000; i++) {
+            journal.append("driveStart", payload);
+            maxJournalLength = Math.max(maxJournalLength, journalFile.length());
+        }
+        assertTrue("journal of " + maxJournalLength + " bytes",
+                maxJournalLength <= kMaxJournalBytes + 3 * payload.length() + 64);
+        assertTrue("journal of " + journalFile.length() + " bytes",
+                journalFile.length() < kMaxJournalBytes);
+    }
+
+    private ZendriveEventJournal reopen() {
+        journal.close();
+        return new ZendriveEventJournal(directory);
+    }
+}
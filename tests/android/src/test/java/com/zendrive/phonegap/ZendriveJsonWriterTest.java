@@ -0,0 +1,123 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The writer must produce the same bytes as android's org.json for the same keys and values.
+ */
+public class ZendriveJsonWriterTest {
+
+    @Test
+    public void writesDoublesAsOrgJson() throws JSONException {
+        double[] values = {
+                0.0, -0.0, 1.0, -1.0, 12.0, 0.1, -0.1, 1e-7, 1.5e-320, Double.MIN_VALUE,
+                Double.MAX_VALUE, -Double.MAX_VALUE, 1e15, 1e16, 1e19, -1e19,
+                9007199254740993.0, Math.pow(2, 63), -Math.pow(2, 63), Math.pow(2, 64),
+                Long.MAX_VALUE, Long.MIN_VALUE, 37.774929, -122.419416, 180.0, -90.0
+        };
+        for (double value : values) {
+            assertDoubleAsOrgJson(value);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            assertDoubleAsOrgJson(Double.longBitsToDouble(random.nextLong()));
+            assertDoubleAsOrgJson((random.nextDouble() - 0.5) * 360);
+            assertDoubleAsOrgJson(Math.round(random.nextDouble() * 1e6) / 1e6);
+        }
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsNaN() throws JSONException {
+        ZendriveJsonWriter.obtain().value(Double.NaN);
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsInfinity() throws JSONException {
+        ZendriveJsonWriter.obtain().value(Double.NEGATIVE_INFINITY);
+    }
+
+    @Test
+    public void writesLongsAsOrgJson() throws JSONException {
+        long[] values = {0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE,
+                Long.MIN_VALUE, 1500000000000L};
+        for (long value : values) {
+            String expected = new JSONObject().put("v", value).toString();
+            assertEquals(expected,
+                    ZendriveJsonWriter.obtain().beginObject().key("v").value(value)
+                            .endObject().toString());
+        }
+    }
+
+    @Test
+    public void escapesEveryCharacterAsOrgJson() throws JSONException {
+        StringBuilder characters = new StringBuilder();
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            characters.append((char) c);
+            if (characters.length() == 512 || c == Character.MAX_VALUE) {
+                assertStringAsOrgJson(characters.toString());
+                characters.setLength(0);
+            }
+        }
+        String[] values = {"", "/", "</script>", "\"quoted\"", "back\\slash", "tab\tline\n",
+                "\u0000\u001f\u007f", "  ", "🚗", "\ud83d", "\ude97x"};
+        for (String value : values) {
+            assertStringAsOrgJson(value);
+        }
+    }
+
+    @Test
+    public void writesNestedValuesAsOrgJson() throws JSONException {
+        // JSONStringer writes keys in order, as JSONObject.toString does on android
+        JSONStringer expected = new JSONStringer().object();
+        expected.key("a/b").value("c\"d");
+        expected.key("isValid").value(false);
+        expected.key("nothing").value(JSONObject.NULL);
+        expected.key("waypoints").array();
+        expected.object().key("latitude").value(-0.0).key("longitude").value(12.0).endObject();
+        expected.value(JSONObject.NULL);
+        expected.array().endArray();
+        expected.endArray();
+        expected.key("empty").object().endObject();
+        expected.endObject();
+
+        ZendriveJsonWriter writer = ZendriveJsonWriter.obtain();
+        writer.beginObject();
+        writer.key("a/b").value("c\"d");
+        writer.key("isValid").value(false);
+        writer.key("nothing").value((String) null);
+        writer.key("waypoints").beginArray();
+        writer.beginObject().key("latitude").value(-0.0).key("longitude").value(12.0)
+                .endObject();
+        writer.nullValue();
+        writer.beginArray().endArray();
+        writer.endArray();
+        writer.key("empty").encodedValue("{}");
+        writer.endObject();
+
+        assertEquals(expected.toString(), writer.toString());
+    }
+
+    private static void assertDoubleAsOrgJson(double value) throws JSONException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        String expected = new JSONObject().put("v", value).toString();
+        assertEquals(expected,
+                ZendriveJsonWriter.obtain().beginObject().key("v").value(value).endObject()
+                        .toString());
+    }
+
+    private static void assertStringAsOrgJson(String value) throws JSONException {
+        String expected = new JSONObject().put(value, value).toString();
+        assertEquals(expected,
+                ZendriveJsonWriter.obtain().beginObject().key(value).value(value).endObject()
+                        .toString());
+    }
+}
@@ -0,0 +1,157 @@
+package com.zendrive.phonegap;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * SDK events racing with ZendriveManager.teardown and with callbacks being replaced. Every
+ * event must reach javascript exactly once, either directly or replayed from the journal.
+ */
+public class ZendriveManagerConcurrencyTest {
+    private static final int kSendersCount = 4;
+    private static final int kDrivesPerSender = 250;
+    private static final int kWaypointsCount = 20;
+    private static final long kFirstDriveStartMillis = 1500000000000L;
+
+    private ReplayHarness harness;
+
+    @Before
+    public void setUp() {
+        harness = new ReplayHarness();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        harness.close();
+    }
+
+    @Test
+    public void deliversEveryEventOnceWhileTearingDown() throws Exception {
+        final List<RecordingCallbackContext> driveStartCallbacks =
+                new CopyOnWriteArrayList<RecordingCallbackContext>();
+        final List<RecordingCallbackContext> driveEndCallbacks =
+                new CopyOnWriteArrayList<RecordingCallbackContext>();
+        driveStartCallbacks.add(harness.registerCallback(ZendriveEventType.DRIVE_START));
+        driveEndCallbacks.add(harness.registerCallback(ZendriveEventType.DRIVE_END));
+        final ZendriveIntentService service = harness.startService();
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean isSending = new AtomicBoolean(true);
+        final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+        List<Thread> senders = new ArrayList<Thread>();
+        for (int i = 0; i < kSendersCount; i++) {
+            final int sender = i;
+            senders.add(new Thread("sender-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < kDrivesPerSender; j++) {
+                            DriveTrace trace = DriveTrace.synthetic(sender * kDrivesPerSender + j,
+                                    getDriveStartMillis(sender, j), kWaypointsCount);
+                            service.onDriveStart(trace.driveStartInfo);
+                            service.onDriveEnd(trace.driveInfo);
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            });
+        }
+        Thread tearingDown = new Thread("teardown") {
+            @Override
+            public void run() {
+                try {
+                    start.await();
+                    while (isSending.get()) {
+                        ZendriveManager.teardown();
+                        Thread.sleep(2);
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }
+        };
+        Thread registering = new Thread("register") {
+            @Override
+            public void run() {
+                try {
+                    start.await();
+                    while (isSending.get()) {
+                        driveStartCallbacks.add(
+                                harness.registerCallback(ZendriveEventType.DRIVE_START));
+                        driveEndCallbacks.add(
+                                harness.registerCallback(ZendriveEventType.DRIVE_END));
+                        Thread.sleep(1);
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }
+        };
+
+        for (Thread sender : senders) {
+            sender.start();
+        }
+        tearingDown.start();
+        registering.start();
+        start.countDown();
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        isSending.set(false);
+        tearingDown.join();
+        registering.join();
+        assertNull(failures.isEmpty() ? null : failures.get(0));
+
+        // Callbacks registered on a manager torn down at the same time never get the journaled
+        // events, registering again on the current manager replays them
+        harness.awaitEventsDispatched();
+        driveStartCallbacks.add(harness.registerCallback(ZendriveEventType.DRIVE_START));
+        driveEndCallbacks.add(harness.registerCallback(ZendriveEventType.DRIVE_END));
+        harness.awaitEventsDispatched();
+
+        assertDeliveredOnce(driveStartCallbacks);
+        assertDeliveredOnce(driveEndCallbacks);
+    }
+
+    private static long getDriveStartMillis(int sender, int drive) {
+        return kFirstDriveStartMillis + (sender * kDrivesPerSender + drive) * 1000L;
+    }
+
+    private static void assertDeliveredOnce(List<RecordingCallbackContext> callbacks)
+            throws Exception {
+        Map<Long, Integer> deliveries = new HashMap<Long, Integer>();
+        int droppedResultsCount = 0;
+        for (RecordingCallbackContext callbackContext : callbacks) {
+            droppedResultsCount += callbackContext.getDroppedResultsCount();
+            for (JSONObject event : callbackContext.getEvents()) {
+                long startTimestamp = event.getLong("startTimestamp");
+                Integer count = deliveries.get(startTimestamp);
+                deliveries.put(startTimestamp, null == count ? 1 : count + 1);
+            }
+        }
+        assertEquals("results sent to finished callbacks", 0, droppedResultsCount);
+        for (int sender = 0; sender < kSendersCount; sender++) {
+            for (int drive = 0; drive < kDrivesPerSender; drive++) {
+                long startTimestamp = getDriveStartMillis(sender, drive);
+                assertEquals("deliveries of drive " + startTimestamp, Integer.valueOf(1),
+                        deliveries.remove(startTimestamp));
+            }
+        }
+        assertEquals("unexpected drives " + deliveries.keySet(), 0, deliveries.size());
+    }
+}
@@ -0,0 +1,302 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.AccidentConfidence;
+import com.zendrive.sdk.AccidentInfo;
+import com.zendrive.sdk.ActiveDriveInfo;
+import com.zendrive.sdk.DriveInfo;
+import com.zendrive.sdk.DriveResumeInfo;
+import com.zendrive.sdk.DriveStartInfo;
+import com.zendrive.sdk.LocationPoint;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Payloads sent to javascript must be byte for byte those the plugin sent when it built them
+ * as JSONObjects. The expected payloads are built here the way the plugin used to.
+ *
+ * JSONObject on android keeps keys in insertion order, the build of org.json used on the JVM
+ * does not. Expected payloads are written with JSONStringer instead, which is what
+ * JSONObject.toString uses, putting keys in the order the plugin put them.
+ */
+public class ZendriveManagerPayloadTest {
+    private static final long kAwaitTimeoutMillis = 10000;
+
+    // Ids with every kind of character org.json escapes
+    private static final String kTrackingId = "trip/1 \"a\\b\"\t\n\r\b\f\u0000\u001f\u007f é🚗";
+    private static final String kSessionId = "</session>";
+
+    private ReplayHarness harness;
+    private ZendriveIntentService service;
+
+    @Before
+    public void setUp() {
+        harness = new ReplayHarness();
+        service = harness.startService();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        harness.close();
+    }
+
+    @Test
+    public void sendsDriveStartAsJsonObject() throws Exception {
+        RecordingCallbackContext callbackContext =
+                harness.registerCallback(ZendriveEventType.DRIVE_START);
+        DriveStartInfo withLocation = new DriveStartInfo();
+        withLocation.startTimeMillis = 1500000000000L;
+        withLocation.startLocation = new LocationPoint(37.774929, -0.0);
+        DriveStartInfo withoutLocation = new DriveStartInfo();
+        withoutLocation.startTimeMillis = -1;
+
+        service.onDriveStart(withLocation);
+        service.onDriveStart(withoutLocation);
+        harness.awaitEventsDispatched();
+
+        assertMessages(callbackContext, getDriveStartObject(withLocation),
+                getDriveStartObject(withoutLocation));
+    }
+
+    @Test
+    public void sendsDriveEndAsJsonObject() throws Exception {
+        RecordingCallbackContext callbackContext =
+                harness.registerCallback(ZendriveEventType.DRIVE_END);
+        DriveInfo drive = getDrive();
+        DriveInfo withoutWaypoints = getDrive();
+        withoutWaypoints.waypoints = null;
+        withoutWaypoints.isValid = true;
+        withoutWaypoints.averageSpeed = 0.1;
+
+        service.onDriveEnd(drive);
+        service.onDriveEnd(withoutWaypoints);
+        harness.awaitEventsDispatched();
+
+        assertMessages(callbackContext, getDriveEndObject(drive),
+                getDriveEndObject(withoutWaypoints));
+    }
+
+    @Test
+    public void replaysJournaledDriveEndAsJsonObject() throws Exception {
+        // Journaled waypoints are quantized to 9 decimal digits, which keeps locations
+        // reported by the SDK exact
+        DriveInfo drive = getDrive();
+        drive.distanceMeters = 1234.5;
+        drive.waypoints = new ArrayList<LocationPoint>(Arrays.asList(
+                new LocationPoint(37.774929, -122.419416),
+                new LocationPoint(37.7750123, -122.4195001),
+                new LocationPoint(-33.86882, 151.20929),
+                new LocationPoint(0.0, 180.0),
+                new LocationPoint(-90.0, -0.000001)));
+        service.onDriveEnd(drive);
+        harness.awaitEventsDispatched();
+
+        RecordingCallbackContext callbackContext =
+                harness.registerCallback(ZendriveEventType.DRIVE_END);
+        harness.awaitEventsDispatched();
+
+        assertMessages(callbackContext, getDriveEndObject(drive));
+    }
+
+    @Test
+    public void sendsDriveResumeAsJsonObject() throws Exception {
+        RecordingCallbackContext callbackContext =
+                harness.registerCallback(ZendriveEventType.DRIVE_RESUME);
+        DriveResumeInfo withIds = new DriveResumeInfo();
+        withIds.startTimeMillis = 1500000000000L;
+        withIds.driveGapStartTimestampMillis = 1500000060000L;
+        withIds.driveGapEndTimestampMillis = 1500000120000L;
+        withIds.trackingId = kTrackingId;
+        withIds.sessionId = kSessionId;
+        DriveResumeInfo withoutIds = new DriveResumeInfo();
+
+        service.onDriveResume(withIds);
+        service.onDriveResume(withoutIds);
+        harness.awaitEventsDispatched();
+
+        assertMessages(callbackContext, getDriveResumeObject(withIds),
+                getDriveResumeObject(withoutIds));
+    }
+
+    @Test
+    public void sendsAccidentAsJsonObject() throws Exception {
+        RecordingCallbackContext callbackContext =
+                harness.registerCallback(ZendriveEventType.ACCIDENT);
+        AccidentInfo high = new AccidentInfo();
+        high.timestampMillis = 1500000000000L;
+        high.location = new LocationPoint(-33.8688, 151.2093);
+        high.confidence = AccidentConfidence.HIGH;
+        high.trackingId = kTrackingId;
+        high.sessionId = kSessionId;
+        AccidentInfo low = new AccidentInfo();
+        low.confidence = AccidentConfidence.LOW;
+
+        service.onAccident(high);
+        service.onAccident(low);
+        harness.awaitEventsDispatched();
+
+        assertMessages(callbackContext, getAccidentObject(high), getAccidentObject(low));
+    }
+
+    @Test
+    public void sendsActiveDriveInfoAsJsonObject() throws Exception {
+        ActiveDriveInfo activeDriveInfo = new ActiveDriveInfo();
+        activeDriveInfo.startTimeMillis = 1500000000000L;
+        activeDriveInfo.trackingId = kTrackingId;
+        activeDriveInfo.sessionId = null;
+        harness.getSdk().setActiveDriveInfo(activeDriveInfo);
+
+        // Queried from the SDK, then answered from the cache
+        for (int i = 0; i < 2; i++) {
+            List<RecordingCallbackContext.Result> results = harness.exec("getActiveDriveInfo")
+                    .awaitResults(1, kAwaitTimeoutMillis);
+            assertEquals(1, results.size());
+            assertEquals(getActiveDriveInfoObject(activeDriveInfo), results.get(0).message);
+        }
+
+        RecordingCallbackContext callbackContext =
+                harness.registerCallback(ZendriveEventType.ACTIVE_DRIVE_INFO_CHANGE);
+        harness.awaitEventsDispatched();
+        harness.getSdk().setActiveDriveInfo(null);
+        ZendriveManager.getSharedInstance().invalidateActiveDriveInfo();
+        harness.awaitEventsDispatched();
+
+        assertMessages(callbackContext, getActiveDriveInfoChangeObject(activeDriveInfo),
+                getActiveDriveInfoChangeObject(null));
+    }
+
+    private static DriveInfo getDrive() {
+        DriveInfo drive = new DriveInfo();
+        drive.startTimeMillis = 1500000000000L;
+        drive.endTimeMillis = 1500000600000L;
+        drive.isValid = false;
+        drive.averageSpeed = 12.0;
+        drive.distanceMeters = -0.0;
+        drive.trackingId = kTrackingId;
+        drive.sessionId = kSessionId;
+        drive.waypoints = new ArrayList<LocationPoint>(Arrays.asList(
+                new LocationPoint(37.774929, -122.419416),
+                new LocationPoint(0.0, -0.0),
+                new LocationPoint(1e-7, 180.0),
+                new LocationPoint(-90.0, 0.30000000000000004),
+                new LocationPoint(Double.MIN_VALUE, -1e-300)));
+        return drive;
+    }
+
+    private static String getDriveStartObject(DriveStartInfo driveStartInfo)
+            throws JSONException {
+        JSONStringer driveStartInfoObject = new JSONStringer().object();
+        driveStartInfoObject.key("startTimestamp").value(driveStartInfo.startTimeMillis);
+        driveStartInfoObject.key("startLocation");
+        putLocationPoint(driveStartInfoObject, driveStartInfo.startLocation);
+        return driveStartInfoObject.endObject().toString();
+    }
+
+    private static String getDriveEndObject(DriveInfo driveInfo) throws JSONException {
+        JSONStringer driveInfoObject = new JSONStringer().object();
+        driveInfoObject.key("startTimestamp").value(driveInfo.startTimeMillis);
+        driveInfoObject.key("endTimestamp").value(driveInfo.endTimeMillis);
+        driveInfoObject.key("isValid").value(driveInfo.isValid);
+        driveInfoObject.key("averageSpeed").value(driveInfo.averageSpeed);
+        driveInfoObject.key("distance").value(driveInfo.distanceMeters);
+        driveInfoObject.key("waypoints").array();
+        if (null != driveInfo.waypoints) {
+            for (LocationPoint waypoint : driveInfo.waypoints) {
+                putLocationPoint(driveInfoObject, waypoint);
+            }
+        }
+        driveInfoObject.endArray();
+        return driveInfoObject.endObject().toString();
+    }
+
+    private static String getDriveResumeObject(DriveResumeInfo driveResumeInfo)
+            throws JSONException {
+        JSONStringer driveResumeInfoObject = new JSONStringer().object();
+        driveResumeInfoObject.key("startTimestamp").value(driveResumeInfo.startTimeMillis);
+        driveResumeInfoObject.key("driveGapStartTimestamp")
+                .value(driveResumeInfo.driveGapStartTimestampMillis);
+        driveResumeInfoObject.key("driveGapEndTimestamp")
+                .value(driveResumeInfo.driveGapEndTimestampMillis);
+        driveResumeInfoObject.key("trackingId").value((driveResumeInfo.trackingId != null) ?
+                driveResumeInfo.trackingId : JSONObject.NULL);
+        driveResumeInfoObject.key("sessionId").value((driveResumeInfo.sessionId != null) ?
+                driveResumeInfo.sessionId : JSONObject.NULL);
+        return driveResumeInfoObject.endObject().toString();
+    }
+
+    private static String getAccidentObject(AccidentInfo accidentInfo) throws JSONException {
+        JSONStringer accidentInfoObject = new JSONStringer().object();
+        accidentInfoObject.key("timestamp").value(accidentInfo.timestampMillis);
+        accidentInfoObject.key("location");
+        putLocationPoint(accidentInfoObject, accidentInfo.location);
+        accidentInfoObject.key("confidence")
+                .value((accidentInfo.confidence == AccidentConfidence.HIGH) ? 0 : 1);
+        accidentInfoObject.key("trackingId").value((accidentInfo.trackingId != null) ?
+                accidentInfo.trackingId : JSONObject.NULL);
+        accidentInfoObject.key("sessionId").value((accidentInfo.sessionId != null) ?
+                accidentInfo.sessionId : JSONObject.NULL);
+        return accidentInfoObject.endObject().toString();
+    }
+
+    private static String getActiveDriveInfoObject(ActiveDriveInfo activeDriveInfo)
+            throws JSONException {
+        JSONStringer activeDriveInfoObject = new JSONStringer().object();
+        putActiveDriveInfo(activeDriveInfoObject, activeDriveInfo);
+        return activeDriveInfoObject.endObject().toString();
+    }
+
+    private static String getActiveDriveInfoChangeObject(ActiveDriveInfo activeDriveInfo)
+            throws JSONException {
+        JSONStringer activeDriveInfoChangeObject = new JSONStringer().object();
+        activeDriveInfoChangeObject.key("activeDriveInfo");
+        if (null == activeDriveInfo) {
+            activeDriveInfoChangeObject.value(JSONObject.NULL);
+        }
+        else {
+            activeDriveInfoChangeObject.object();
+            putActiveDriveInfo(activeDriveInfoChangeObject, activeDriveInfo);
+            activeDriveInfoChangeObject.endObject();
+        }
+        return activeDriveInfoChangeObject.endObject().toString();
+    }
+
+    private static void putActiveDriveInfo(JSONStringer target, ActiveDriveInfo activeDriveInfo)
+            throws JSONException {
+        target.key("startTimestamp").value(activeDriveInfo.startTimeMillis);
+        target.key("trackingId").value((activeDriveInfo.trackingId != null) ?
+                activeDriveInfo.trackingId : JSONObject.NULL);
+        target.key("sessionId").value((activeDriveInfo.sessionId != null) ?
+                activeDriveInfo.sessionId : JSONObject.NULL);
+    }
+
+    private static void putLocationPoint(JSONStringer target, LocationPoint locationPoint)
+            throws JSONException {
+        if (null == locationPoint) {
+            target.value(JSONObject.NULL);
+            return;
+        }
+        target.object();
+        target.key("latitude").value(locationPoint.latitude);
+        target.key("longitude").value(locationPoint.longitude);
+        target.endObject();
+    }
+
+    private static void assertMessages(RecordingCallbackContext callbackContext,
+                                       String... expected) {
+        List<String> messages = new ArrayList<String>();
+        for (RecordingCallbackContext.Result result : callbackContext.getResults()) {
+            messages.add(result.message);
+        }
+        assertEquals(Arrays.asList(expected), messages);
+    }
+}
@@ -0,0 +1,113 @@
+package com.zendrive.phonegap;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Every event is counted once, as delivered or as journaled, also when it was batched, and
+ * events are only counted as dropped when nothing received them.
+ */
+public class ZendrivePluginMetricsTest {
+    private static final int kDrivesCount = 3;
+    private static final long kFirstDriveStartMillis = 1500000000000L;
+    private static final long kAwaitTimeoutMillis = 5000;
+
+    private ReplayHarness harness;
+
+    @Before
+    public void setUp() throws Exception {
+        harness = new ReplayHarness();
+        getEventMetrics(ZendriveEventType.DRIVE_START, true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        harness.close();
+    }
+
+    @Test
+    public void batchedEventsAreCountedWhenSent() throws Exception {
+        enableBatching();
+        RecordingCallbackContext callbackContext =
+                harness.registerCallback(ZendriveEventType.DRIVE_START);
+        sendDriveStarts();
+        assertEquals(0, getEventMetrics(ZendriveEventType.DRIVE_START, false).getInt("delivered"));
+
+        // Changing the options flushes the pending batch
+        disableBatching();
+        assertEquals(kDrivesCount, callbackContext.getEvents().size());
+        JSONObject eventMetrics = getEventMetrics(ZendriveEventType.DRIVE_START, false);
+        assertEquals(kDrivesCount, eventMetrics.getInt("delivered"));
+        assertEquals(0, eventMetrics.getInt("journaled"));
+    }
+
+    @Test
+    public void batchedEventsOfRemovedCallbackAreOnlyCountedAsJournaled() throws Exception {
+        enableBatching();
+        RecordingCallbackContext callbackContext =
+                harness.registerCallback(ZendriveEventType.DRIVE_START);
+        sendDriveStarts();
+        harness.unregisterCallback(ZendriveEventType.DRIVE_START);
+
+        disableBatching();
+        assertEquals(0, callbackContext.getEvents().size());
+        JSONObject eventMetrics = getEventMetrics(ZendriveEventType.DRIVE_START, false);
+        assertEquals(kDrivesCount, eventMetrics.getInt("received"));
+        assertEquals(0, eventMetrics.getInt("delivered"));
+        assertEquals(kDrivesCount, eventMetrics.getInt("journaled"));
+    }
+
+    @Test
+    public void eventWithoutCallbackIsDroppedUnlessSubscribed() throws Exception {
+        ZendriveIntentService service = harness.startService();
+        service.onLocationPermissionsChange(true);
+        harness.awaitEventsDispatched();
+        assertEquals(1, getEventMetrics(ZendriveEventType.LOCATION_PERMISSIONS_CHANGE, true)
+                .getInt("dropped"));
+
+        RecordingCallbackContext subscriber = harness.exec("subscribe", "metrics", null);
+        service.onLocationPermissionsChange(false);
+        harness.awaitEventsDispatched();
+        assertEquals(1, subscriber.getEvents().size());
+        assertEquals(0, getEventMetrics(ZendriveEventType.LOCATION_PERMISSIONS_CHANGE, false)
+                .getInt("dropped"));
+    }
+
+    private void sendDriveStarts() throws InterruptedException {
+        ZendriveIntentService service = harness.startService();
+        for (int i = 0; i < kDrivesCount; i++) {
+            DriveTrace trace = DriveTrace.synthetic(i, kFirstDriveStartMillis + i * 1000L, 2);
+            service.onDriveStart(trace.driveStartInfo);
+        }
+        harness.awaitEventsDispatched();
+    }
+
+    private void enableBatching() throws Exception {
+        setBatchingOptions(new JSONObject().put("flushInterval", 60000).put("maxBatchSize", 100));
+    }
+
+    private void disableBatching() throws Exception {
+        setBatchingOptions(null);
+    }
+
+    private void setBatchingOptions(JSONObject options) throws Exception {
+        RecordingCallbackContext callbackContext =
+                harness.exec("setEventBatchingOptions", options);
+        assertEquals(PluginResult.Status.OK,
+                callbackContext.awaitResults(1, kAwaitTimeoutMillis).get(0).status);
+    }
+
+    private JSONObject getEventMetrics(ZendriveEventType eventType, boolean reset)
+            throws InterruptedException, JSONException {
+        RecordingCallbackContext callbackContext = harness.exec("getPluginMetrics", reset);
+        String message = callbackContext.awaitResults(1, kAwaitTimeoutMillis).get(0).message;
+        return new JSONObject(message).getJSONObject("events")
+                .getJSONObject(eventType.journalName);
+    }
+}
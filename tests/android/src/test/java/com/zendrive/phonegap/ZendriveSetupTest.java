@@ -0,0 +1,182 @@
+package com.zendrive.phonegap;
+
+import com.zendrive.sdk.ZendriveConfiguration;
+import com.zendrive.sdk.ZendriveDriveDetectionMode;
+
+import android.content.Context;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ZendriveSetupTest {
+    private static final long kAwaitTimeoutMillis = 10000;
+    private static final long kSetupLatencyMillis = 20;
+    private static final int kRacesCount = 20;
+
+    private ReplayHarness harness;
+
+    @Before
+    public void setUp() {
+        harness = new ReplayHarness();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        harness.close();
+    }
+
+    @Test
+    public void restoreRacingJavascriptSetupAppliesJavascriptConfigurationLast()
+            throws Exception {
+        for (int i = 0; i < kRacesCount; i++) {
+            if (i > 0) {
+                harness.close();
+                harness = new ReplayHarness();
+            }
+            harness.getSdk().setSetupLatencyMillis(kSetupLatencyMillis);
+            harness.cacheSetupConfiguration(getConfiguration("cached-driver", 0));
+
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread serviceStart = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        harness.startService();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            serviceStart.start();
+            start.countDown();
+            RecordingCallbackContext setupCallback =
+                    harness.exec("setup", getConfiguration("js-driver", 1));
+            serviceStart.join();
+
+            List<RecordingCallbackContext.Result> results =
+                    setupCallback.awaitResults(1, kAwaitTimeoutMillis);
+            harness.awaitCommandsCompleted();
+
+            assertEquals(1, results.size());
+            assertEquals(PluginResult.Status.OK, results.get(0).status);
+            List<ZendriveConfiguration> setups = harness.getSdk().getSetupConfigurations();
+            assertTrue("SDK set up " + setups.size() + " times",
+                    1 == setups.size() || 2 == setups.size());
+            ZendriveConfiguration lastSetup = setups.get(setups.size() - 1);
+            assertEquals("js-driver", lastSetup.getDriverId());
+            assertEquals(ZendriveDriveDetectionMode.AUTO_OFF, lastSetup.getDriveDetectionMode());
+            assertEquals("js-driver", getCachedConfiguration().getString("driverId"));
+        }
+    }
+
+    @Test
+    public void restoreAfterJavascriptSetupIsSkipped() throws Exception {
+        harness.cacheSetupConfiguration(getConfiguration("cached-driver", 0));
+        harness.exec("setup", getConfiguration("js-driver", 0))
+                .awaitResults(1, kAwaitTimeoutMillis);
+
+        harness.startService();
+        harness.awaitCommandsCompleted();
+
+        List<ZendriveConfiguration> setups = harness.getSdk().getSetupConfigurations();
+        assertEquals(1, setups.size());
+        assertEquals("js-driver", setups.get(0).getDriverId());
+    }
+
+    @Test
+    public void javascriptSetupAfterRestoreOnlyChangesDriveDetectionMode() throws Exception {
+        harness.getSdk().setSetupLatencyMillis(kSetupLatencyMillis);
+        harness.cacheSetupConfiguration(getConfiguration("driver", 0));
+        harness.startService();
+
+        List<RecordingCallbackContext.Result> results =
+                harness.exec("setup", getConfiguration("driver", 1))
+                        .awaitResults(1, kAwaitTimeoutMillis);
+
+        assertEquals(PluginResult.Status.OK, results.get(0).status);
+        assertEquals(1, harness.getSdk().getSetupConfigurations().size());
+        assertEquals(Arrays.asList(ZendriveDriveDetectionMode.AUTO_OFF),
+                harness.getSdk().getDriveDetectionModes());
+        assertEquals(1, getCachedConfiguration().getInt("driveDetectionMode"));
+    }
+
+    @Test
+    public void failedRestoreIsRetriedByJavascriptSetup() throws Exception {
+        harness.getSdk().setSetupFailing(true);
+        harness.cacheSetupConfiguration(getConfiguration("driver", 0));
+        harness.startService();
+        harness.awaitCommandsCompleted();
+        harness.getSdk().setSetupFailing(false);
+
+        List<RecordingCallbackContext.Result> results =
+                harness.exec("setup", getConfiguration("driver", 0))
+                        .awaitResults(1, kAwaitTimeoutMillis);
+
+        assertEquals(PluginResult.Status.OK, results.get(0).status);
+        assertEquals(2, harness.getSdk().getSetupConfigurations().size());
+    }
+
+    @Test
+    public void cachesNoDriverAttributes() throws Exception {
+        harness.exec("setup", getConfiguration("driver", 1)).awaitResults(1, kAwaitTimeoutMillis);
+
+        JSONObject cachedConfiguration = getCachedConfiguration();
+        List<String> keys = new ArrayList<String>();
+        Iterator<?> keysIterator = cachedConfiguration.keys();
+        while (keysIterator.hasNext()) {
+            keys.add((String) keysIterator.next());
+        }
+        Collections.sort(keys);
+        assertEquals(Arrays.asList("applicationKey", "driveDetectionMode", "driverId",
+                "fingerprint"), keys);
+
+        // A later process restores the setup without the attributes
+        ZendriveSetup.teardown(harness.getContext());
+        harness.getContext().getSharedPreferences("zendrive_setup", Context.MODE_PRIVATE)
+                .edit().putString("configuration", cachedConfiguration.toString()).apply();
+        harness.getSdk().reset();
+        harness.startService();
+        harness.awaitCommandsCompleted();
+        List<ZendriveConfiguration> setups = harness.getSdk().getSetupConfigurations();
+        assertEquals(1, setups.size());
+        assertEquals("application-key", setups.get(0).getApplicationKey());
+        assertEquals("driver", setups.get(0).getDriverId());
+        assertEquals(ZendriveDriveDetectionMode.AUTO_OFF, setups.get(0).getDriveDetectionMode());
+        assertNull(setups.get(0).getDriverAttributes());
+    }
+
+    private static JSONObject getConfiguration(String driverId, int driveDetectionMode)
+            throws JSONException {
+        JSONObject configuration = new JSONObject();
+        configuration.put("applicationKey", "application-key");
+        configuration.put("driverId", driverId);
+        configuration.put("driveDetectionMode", driveDetectionMode);
+        JSONObject driverAttributes = new JSONObject();
+        driverAttributes.put("firstName", "First");
+        driverAttributes.put("customAttributes", new JSONObject().put("region", "west"));
+        configuration.put("driverAttributes", driverAttributes);
+        return configuration;
+    }
+
+    private JSONObject getCachedConfiguration() throws JSONException {
+        return new JSONObject(harness.getContext()
+                .getSharedPreferences("zendrive_setup", Context.MODE_PRIVATE)
+                .getString("configuration", null));
+    }
+}
@@ -7,6 +7,166 @@ var exec = require('cordova/exec');
  */
 var Zendrive = {};
 
+/**
+ * Decodes waypoints sent using @{@link Zendrive.ZendriveWaypointEncoding.ZendriveWaypointEncodingPolyline}
+ * @private
+ */
+var decodePolyline = function(encoded) {
+    var waypoints = [];
+    var index = 0, latitude = 0, longitude = 0;
+    var decodeValue = function() {
+        var result = 0, shift = 0, b;
+        do {
+            b = encoded.charCodeAt(index++) - 63;
+            result |= (b & 0x1f) << shift;
+            shift += 5;
+        } while (b >= 0x20);
+        return (result & 1) ? ~(result >> 1) : (result >> 1);
+    };
+    while (index < encoded.length) {
+        latitude += decodeValue();
+        longitude += decodeValue();
+        var locationPoint = new Zendrive.ZendriveLocationPoint();
+        locationPoint.latitude = latitude / 1e5;
+        locationPoint.longitude = longitude / 1e5;
+        waypoints.push(locationPoint);
+    }
+    return waypoints;
+};
+
+/**
+ * Decodes waypoints sent using @{@link Zendrive.ZendriveWaypointEncoding.ZendriveWaypointEncodingDeltaVarint}
+ * @private
+ */
+var decodeDeltaVarint = function(encoded, precision) {
+    var bytes = atob(encoded);
+    var scale = Math.pow(10, precision);
+    var waypoints = [];
+    var index = 0, latitude = 0, longitude = 0;
+    var decodeValue = function() {
+        // Values can exceed 32 bits, so bitwise operators are not used
+        var result = 0, multiplier = 1, b;
+        do {
+            b = bytes.charCodeAt(index++);
+            result += (b & 0x7f) * multiplier;
+            multiplier *= 128;
+        } while (b >= 0x80);
+        return (result % 2) ? -(result + 1) / 2 : result / 2;
+    };
+    while (index < bytes.length) {
+        latitude += decodeValue();
+        longitude += decodeValue();
+        var locationPoint = new Zendrive.ZendriveLocationPoint();
+        locationPoint.latitude = latitude / scale;
+        locationPoint.longitude = longitude / scale;
+        waypoints.push(locationPoint);
+    }
+    return waypoints;
+};
+
+/**
+ * Replaces encoded waypoints in a drive info with a waypoints property which is decoded
+ * only when it is first accessed. encodedWaypoints is either a single encoded string or,
+ * for streamed drives, a list of encoded chunks.
+ * @private
+ */
+var attachLazyWaypoints = function(driveInfo) {
+    if (null == driveInfo || null == driveInfo.encodedWaypoints) {
+        return driveInfo;
+    }
+    var encodedWaypoints = [].concat(driveInfo.encodedWaypoints);
+    var decode = decodePolyline;
+    if (Zendrive.ZendriveWaypointEncoding.ZendriveWaypointEncodingDeltaVarint === driveInfo.waypointsEncoding) {
+        var precision = driveInfo.waypointsPrecision;
+        decode = function(encoded) { return decodeDeltaVarint(encoded, precision); };
+    }
+    var waypoints = null;
+    delete driveInfo.encodedWaypoints;
+    delete driveInfo.waypointsEncoding;
+    delete driveInfo.waypointsPrecision;
+    Object.defineProperty(driveInfo, "waypoints", {
+        enumerable: true,
+        configurable: true,
+        get: function() {
+            if (null == waypoints) {
+                waypoints = [];
+                for (var i = 0; i < encodedWaypoints.length; i++) {
+                    waypoints = waypoints.concat(decode(encodedWaypoints[i]));
+                }
+            }
+            return waypoints;
+        }
+    });
+    return driveInfo;
+};
+
+/**
+ * Reassembles drives whose waypoints are streamed in chunks, see
+ * @{@link Zendrive.ZendriveCallback}.waypointChunkSize, and invokes the callback once per
+ * complete drive.
+ * @private
+ */
+var assembleStreamedDrives = function(callback) {
+    if (null == callback) {
+        return null;
+    }
+    var pendingDrives = {};
+    return function(event) {
+        if (null == event || undefined === event.waypointsStreamId) {
+            callback(attachLazyWaypoints(event));
+            return;
+        }
+        var streamId = event.waypointsStreamId;
+        if (undefined === event.chunkSequence) {
+            // Drive info without waypoints, the chunks follow
+            event.receivedChunks = [];
+            pendingDrives[streamId] = event;
+            return;
+        }
+        var driveInfo = pendingDrives[streamId];
+        if (undefined === driveInfo || event.chunkSequence !== driveInfo.receivedChunks.length) {
+            delete pendingDrives[streamId];
+            console.error("Zendrive: discarding incomplete drive " + streamId);
+            return;
+        }
+        driveInfo.receivedChunks.push(event);
+        if (!event.isLastChunk) {
+            return;
+        }
+
+        delete pendingDrives[streamId];
+        var chunks = driveInfo.receivedChunks;
+        if (chunks.length > 0 && null != chunks[0].encodedWaypoints) {
+            driveInfo.encodedWaypoints = chunks.map(function(chunk) { return chunk.encodedWaypoints; });
+            driveInfo.waypointsEncoding = chunks[0].waypointsEncoding;
+            driveInfo.waypointsPrecision = chunks[0].waypointsPrecision;
+        } else {
+            driveInfo.waypoints = [].concat.apply([], chunks.map(function(chunk) { return chunk.waypoints; }));
+        }
+        delete driveInfo.receivedChunks;
+        delete driveInfo.waypointsStreamId;
+        delete driveInfo.waypointsCount;
+        callback(attachLazyWaypoints(driveInfo));
+    };
+};
+
+/**
+ * Wraps an event callback so that it is invoked once per event, both for single events and
+ * for batches of events sent when event batching is enabled.
+ * @private
+ */
+var forEachEvent = function(callback, transform) {
+    if (null == callback) {
+        return null;
+    }
+    return function(result) {
+        var events = Array.isArray(result) ? result : [result];
+        for (var i = 0; i < events.length; i++) {
+            callback(transform ? transform(events[i]) : events[i]);
+        }
+    };
+};
+
 /**
  * @class Callback for Zendrive
  * @param {Zendrive.ZendriveCallback.processStartOfDrive} processStartOfDrive - Called on callback
@@ -43,6 +203,83 @@ Zendrive.ZendriveCallback = function(processStartOfDrive, processEndOfDrive, pro
      * @memberOf Zendrive.ZendriveCallback
      */
     this.processLocationDenied = processLocationDenied;
+
+    /**
+     * Encoding used to send waypoints of a drive to processEndOfDrive. Irrespective of the
+     * encoding, waypoints are available as @{@link Zendrive.ZendriveDriveInfo}.waypoints.
+     * This is an android specific setting.
+     * @type {Zendrive.ZendriveWaypointEncoding}
+     */
+    this.waypointEncoding = Zendrive.ZendriveWaypointEncoding.ZendriveWaypointEncodingJSON;
+
+    /**
+     * When positive, waypoints of a drive are sent from the native layer in chunks of this many
+     * points after the rest of the drive information, which bounds the memory used to send very
+     * long drives. The chunks are reassembled before processEndOfDrive is called.
+     * This is an android specific setting.
+     * @type {Number}
+     */
+    this.waypointChunkSize = 0;
+
+    /**
+     * Precision in decimal digits of waypoints sent using
+     * @{@link Zendrive.ZendriveWaypointEncoding.ZendriveWaypointEncodingDeltaVarint}, from 1 to 9.
+     * The default of 6 keeps waypoints within about 10 centimeters of the recorded location.
+     * This is an android specific setting.
+     * @type {Number}
+     */
+    this.waypointPrecision = 6;
+
+    /**
+     * When set, waypoints of a drive are simplified in the native layer before they are sent.
+     * The number of waypoints before simplification is then available as
+     * @{@link Zendrive.ZendriveDriveInfo}.originalWaypointsCount. This is an android specific setting.
+     * @type {Zendrive.ZendriveWaypointSimplification}
+     */
+    this.waypointSimplification = null;
+
+    /**
+     * When true, @{@link Zendrive.ZendriveDriveInfo}.statistics is computed natively from all
+     * waypoints of the drive, before any simplification. This is an android specific setting.
+     * @type {Boolean}
+     */
+    this.driveStatistics = false;
+
+    /**
+     * This is an android specific callback. Called on callback when a drive resumes after a gap
+     * in its data, for example when the app was killed during the drive.
+     * @callback processResumeOfDrive
+     * @param {Zendrive.ZendriveDriveResumeInfo} driveResumeInfo Information about the resumed drive.
+     * @memberOf Zendrive.ZendriveCallback
+     */
+    this.processResumeOfDrive = null;
+
+    /**
+     * This is an android specific callback. Called on callback when Zendrive SDK detects an
+     * accident during a drive.
+     * @callback processAccidentDetected
+     * @param {Zendrive.ZendriveAccidentInfo} accidentInfo Information about the accident.
+     * @memberOf Zendrive.ZendriveCallback
+     */
+    this.processAccidentDetected = null;
+
+    /**
+     * This is an android specific callback. Called on callback when location permission for the
+     * application is granted or revoked.
+     * @callback processLocationPermissionsChange
+     * @param {Boolean} isGranted Whether location permission is now granted.
+     * @memberOf Zendrive.ZendriveCallback
+     */
+    this.processLocationPermissionsChange = null;
+
+    /**
+     * This is an android specific callback. Called on callback when location settings of the
+     * device change.
+     * @callback processLocationSettingsChange
+     * @param {Boolean} isSuccess Whether location settings now satisfy the requirements of the SDK.
+     * @memberOf Zendrive.ZendriveCallback
+     */
+    this.processLocationSettingsChange = null;
 };
 
 Zendrive.registerForDelegateCallbacks = function(zendriveCallback) {
@@ -51,22 +288,134 @@ Zendrive.registerForDelegateCallbacks = function(zendriveCallback) {
     // We are allowing to clear out existing individual callbacks by sending null
     // for callback and the bool as false for first argument
     var processStartOfDriveCallback = callbackNotNull ? zendriveCallback.processStartOfDrive :null;
-    exec(processStartOfDriveCallback, null, "Zendrive", "setProcessStartOfDriveDelegateCallback",
-        [(null != processStartOfDriveCallback)]);
+    exec(forEachEvent(processStartOfDriveCallback), null,
+        "Zendrive", "setProcessStartOfDriveDelegateCallback", [(null != processStartOfDriveCallback)]);
 
     var processEndOfDriveCallback = callbackNotNull ? zendriveCallback.processEndOfDrive :null;
-    exec(processEndOfDriveCallback, null, "Zendrive", "setProcessEndOfDriveDelegateCallback",
-        [(null != processEndOfDriveCallback)]);
+    var waypointEncoding = callbackNotNull ? zendriveCallback.waypointEncoding :null;
+    var waypointChunkSize = callbackNotNull ? zendriveCallback.waypointChunkSize :null;
+    var waypointSimplification = callbackNotNull ? zendriveCallback.waypointSimplification :null;
+    var waypointPrecision = callbackNotNull ? zendriveCallback.waypointPrecision :null;
+    var driveStatistics = callbackNotNull ? (true === zendriveCallback.driveStatistics) :false;
+    exec(forEachEvent(assembleStreamedDrives(processEndOfDriveCallback)), null,
+        "Zendrive", "setProcessEndOfDriveDelegateCallback",
+        [(null != processEndOfDriveCallback), waypointEncoding, waypointChunkSize,
+            waypointSimplification, waypointPrecision, driveStatistics]);
 
     var processLocationDeniedCallback = callbackNotNull ? zendriveCallback.processLocationDenied :null;
     exec(processLocationDeniedCallback, null, "Zendrive", "setProcessLocationDeniedDelegateCallback",
         [(null != processLocationDeniedCallback)]);
+
+    var processResumeOfDriveCallback = callbackNotNull ? zendriveCallback.processResumeOfDrive :null;
+    exec(forEachEvent(processResumeOfDriveCallback), null,
+        "Zendrive", "setProcessResumeOfDriveDelegateCallback", [(null != processResumeOfDriveCallback)]);
+
+    var processAccidentDetectedCallback = callbackNotNull ? zendriveCallback.processAccidentDetected :null;
+    exec(forEachEvent(processAccidentDetectedCallback), null,
+        "Zendrive", "setProcessAccidentDetectedDelegateCallback", [(null != processAccidentDetectedCallback)]);
+
+    var processLocationPermissionsChangeCallback = callbackNotNull ?
+        zendriveCallback.processLocationPermissionsChange :null;
+    exec(forEachEvent(processLocationPermissionsChangeCallback, function(event) { return event.isGranted; }),
+        null, "Zendrive", "setProcessLocationPermissionsChangeDelegateCallback",
+        [(null != processLocationPermissionsChangeCallback)]);
+
+    var processLocationSettingsChangeCallback = callbackNotNull ?
+        zendriveCallback.processLocationSettingsChange :null;
+    exec(forEachEvent(processLocationSettingsChangeCallback, function(event) { return event.isSuccess; }),
+        null, "Zendrive", "setProcessLocationSettingsChangeDelegateCallback",
+        [(null != processLocationSettingsChangeCallback)]);
+};
+
+/**
+ * Enables or disables batching of events sent to @{@link Zendrive.ZendriveCallback}. When batching
+ * is enabled, events are delivered to javascript together, which reduces the cost of bursts of
+ * events. The callbacks are still invoked once per event. Batching is disabled by default and
+ * after @{@link Zendrive.teardown}. This is an android specific setting.
+ *
+ * @param {Zendrive.ZendriveEventBatchingOptions} eventBatchingOptions - Pass null to disable batching.
+ * @param {Function} successCallback - Called when the options have been applied.
+ * @param {Zendrive.failureCallback} errorCallback - Called if the options could not be applied.
+ */
+Zendrive.setEventBatchingOptions = function(eventBatchingOptions, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "setEventBatchingOptions", [eventBatchingOptions]);
+};
+
+/**
+ * Gets counters and latency histograms collected by the plugin. This is an android specific
+ * diagnostic meant for tuning the event and batching options.
+ *
+ * The metrics object has:
+ * - events: per event type, the number of events received from the SDK, delivered to javascript,
+ *   journaled because no callback was registered, dropped because they could neither be journaled
+ *   nor sent to a subscriber or because the event queue stayed full, and replayed from the journal,
+ *   along with the latency from the SDK event to its delivery.
+ * - actions: per plugin action, the latency until the action was handled and the failure count.
+ * - dispatcher: the current and maximum depth of the event queue, the number of dispatched
+ *   events and how often a thread had to wait for the queue.
+ * Latencies have count, mean, max, p50, p90 and p99, in milliseconds.
+ *
+ * @param {Boolean} reset - Pass true to reset all metrics after reading them.
+ * @param {Function} successCallback - Called with the metrics object.
+ * @param {Zendrive.failureCallback} errorCallback - Called if the metrics could not be read.
+ */
+Zendrive.getPluginMetrics = function(reset, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "getPluginMetrics", [(true === reset)]);
+};
+
+/**
+ * Enables, resizes or disables the history of drives completed on this device. Once enabled,
+ * every drive is recorded natively when it ends, even if the application is not running in
+ * the foreground, and can be read back with @{@link Zendrive.queryDriveHistory}. The history
+ * is disabled by default. This is an android specific setting which persists across launches.
+ *
+ * @param {Zendrive.ZendriveDriveHistoryOptions} driveHistoryOptions - The history options.
+ * @param {Function} successCallback - Called when the options have been applied.
+ * @param {Zendrive.failureCallback} errorCallback - Called if the options could not be applied.
+ */
+Zendrive.setDriveHistoryOptions = function(driveHistoryOptions, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "setDriveHistoryOptions", [driveHistoryOptions]);
+};
+
+/**
+ * Gets a page of drives from the drive history, most recent first. Drives are returned without
+ * waypoints, use @{@link Zendrive.getDriveHistoryWaypoints} to load the waypoints of a drive.
+ * This is an android specific method.
+ *
+ * @param {Zendrive.ZendriveDriveHistoryQuery} query - Filters and page of the query, null for
+ * the first page of all drives.
+ * @param {Function} successCallback - Called with an object which has drives, an array of
+ * @{@link Zendrive.ZendriveDriveSummary}, and nextPageToken which is null on the last page.
+ * @param {Zendrive.failureCallback} errorCallback - Called if the history could not be read.
+ */
+Zendrive.queryDriveHistory = function(query, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "queryDriveHistory", [query]);
+};
+
+/**
+ * Loads the waypoints of a drive from the drive history. This is an android specific method.
+ *
+ * @param {Number} driveId - The driveId of a @{@link Zendrive.ZendriveDriveSummary}.
+ * @param {Function} successCallback - Called with an array of @{@link Zendrive.ZendriveLocationPoint}.
+ * @param {Zendrive.failureCallback} errorCallback - Called if the drive is not in the history.
+ */
+Zendrive.getDriveHistoryWaypoints = function(driveId, successCallback, errorCallback) {
+    var onWaypoints = function(result) {
+        successCallback(decodeDeltaVarint(result.encodedWaypoints, result.waypointsPrecision));
+    };
+    exec(onWaypoints, errorCallback, "Zendrive", "getDriveHistoryWaypoints", [driveId]);
 };
 
 /**
  * Initializes the Zendrive library to automatically detect driving and collect data.
  * Client code should call this method before anything else in the Zendrive API.
  *
+ * On android the configuration of the last successful setup is remembered natively, and the SDK
+ * is set up with it when it starts the application in the background, before the webview is
+ * loaded. @{@link Zendrive.teardown} forgets the configuration.
+ * Calling setup again with the same configuration, for example on every resume, is cheap: the
+ * SDK is not set up again, and if only the driveDetectionMode changed just the mode is updated.
+ *
  * @param  {Zendrive.ZendriveConfiguration} zendriveConfiguration - The configuration object used to setup
  * the SDK. This object contains your credentials along with additional setup parameters that you
  * can use to provide meta-information about the user or to tune the sdk functionality.
@@ -81,6 +430,8 @@ Zendrive.setup = function(zendriveConfiguration, zendriveCallback, successCallba
     /**
      * Setup success callback
      * @callback setupSuccessCallback
+     * @param {Zendrive.ZendriveCommandResult} result On android, the latencies of the setup call.
+     * Setup is never coalesced, so isCoalesced is always false.
      * @memberOf Zendrive
      */
     var setupSuccessCallback = successCallback;
@@ -111,9 +462,12 @@ Zendrive.teardown = function() {
  * @param  {String} driveTrackingId - Pass a tracking Id to correlate apps internal data with the
  *  drive data. Cannot be null or empty string. Cannot be longer than 64 characters. Sending null or
  *  empty string as tracking id is a no-op.
+ * @param  {Zendrive.commandSuccessCallback} successCallback - Optional, called once the drive was started.
+ * On android a startDrive with the same tracking id as the one queued right before it is coalesced.
+ * @param  {Zendrive.failureCallback} errorCallback - Optional, called if the drive could not be started.
  */
-Zendrive.startDrive = function(driveTrackingId) {
-    exec(null, null, "Zendrive", "startDrive", [driveTrackingId]);
+Zendrive.startDrive = function(driveTrackingId, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "startDrive", [driveTrackingId]);
 };
 
 /**
@@ -131,15 +485,84 @@ Zendrive.getActiveDriveInfo = function(callback) {
     exec(activeDriveCallback, null, "Zendrive", "getActiveDriveInfo", []);
 };
 
+/**
+ * Subscribes to changes of the active drive information instead of polling
+ * @{@link Zendrive.getActiveDriveInfo}. The callback is invoked with the current information
+ * right away and then whenever a drive starts, ends or resumes, or a drive or session is started
+ * or stopped by the application. Pass null to unsubscribe. This is an android specific method.
+ * @param  {Zendrive.activeDriveCallback} callback - Callback containing active drive information,
+ * or null if there is no active drive.
+ */
+Zendrive.registerForActiveDriveInfoUpdates = function(callback) {
+    exec(forEachEvent(callback, function(event) { return event.activeDriveInfo; }), null,
+        "Zendrive", "setActiveDriveInfoUpdateCallback", [(null != callback)]);
+};
+
+/**
+ * Events sent to subscribers, other than driveEnd, are passed to the subscriber callback the same
+ * way as to the corresponding @{@link Zendrive.ZendriveCallback} callback.
+ * @private
+ */
+var subscriberEventTransforms = {
+    locationPermissionsChange: function(event) { return event.isGranted; },
+    locationSettingsChange: function(event) { return event.isSuccess; },
+    activeDriveInfoChange: function(event) { return event.activeDriveInfo; }
+};
+
+/**
+ * Subscribes to Zendrive events in addition to @{@link Zendrive.ZendriveCallback}, so that several
+ * modules of an application can receive events without replacing each other's callbacks. Each
+ * subscriber has its own id, subscribing again with the same id replaces the subscription.
+ *
+ * Subscribers receive events delivered while they are subscribed. Events which happen while the
+ * application is not running are only replayed to @{@link Zendrive.ZendriveCallback}. Drives are
+ * sent to subscribers with the waypoint options of @{@link Zendrive.ZendriveCallback}.
+ * Subscriptions end with @{@link Zendrive.teardown}. This is an android specific method.
+ *
+ * @param {String} subscriberId - Identifier of the subscriber.
+ * @param {Zendrive.ZendriveEventSubscription} subscription - Events of interest, null for all events.
+ * @param {Function} callback - Called with the @{@link Zendrive.ZendriveEventType} and the event,
+ * which is what the corresponding @{@link Zendrive.ZendriveCallback} callback receives.
+ * @param {Zendrive.failureCallback} errorCallback - Called if the subscription is invalid.
+ */
+Zendrive.subscribe = function(subscriberId, subscription, callback, errorCallback) {
+    var processEndOfDrive = assembleStreamedDrives(function(driveInfo) {
+        callback(Zendrive.ZendriveEventType.ZendriveEventTypeDriveEnd, driveInfo);
+    });
+    var onEvent = function(result) {
+        if (Zendrive.ZendriveEventType.ZendriveEventTypeDriveEnd === result.eventType) {
+            processEndOfDrive(result.event);
+            return;
+        }
+        var transform = subscriberEventTransforms[result.eventType];
+        callback(result.eventType, transform ? transform(result.event) : result.event);
+    };
+    exec(onEvent, errorCallback, "Zendrive", "subscribe", [subscriberId, subscription]);
+};
+
+/**
+ * Ends a subscription made with @{@link Zendrive.subscribe}. This is an android specific method.
+ *
+ * @param {String} subscriberId - Identifier of the subscriber.
+ * @param {Function} successCallback - Called when the subscription has ended.
+ * @param {Zendrive.failureCallback} errorCallback - Called if there is no subscriber with this id.
+ */
+Zendrive.unsubscribe = function(subscriberId, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "unsubscribe", [subscriberId]);
+};
+
 /**
  * This should be called to indicate the end of a drive started by invoking @{@link Zendrive.startDrive}
  *
  * @param  {String} driveTrackingId - This trackingId should match the trackingId sent to
  * @{@link Zendrive.startDrive} while starting the current drive. If the trackingIds do not match, this
  * function is a no-op. Cannot be null or empty string.
+ * @param  {Zendrive.commandSuccessCallback} successCallback - Optional, called once the drive was stopped.
+ * stopDrive is never coalesced.
+ * @param  {Zendrive.failureCallback} errorCallback - Optional, called if the drive could not be stopped.
  */
-Zendrive.stopDrive = function(driveTrackingId) {
-    exec(null, null,"Zendrive","stopDrive", [driveTrackingId]);
+Zendrive.stopDrive = function(driveTrackingId, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "stopDrive", [driveTrackingId]);
 };
 
 /**
@@ -155,18 +578,25 @@ Zendrive.stopDrive = function(driveTrackingId) {
  *  with a new sessionId will stop the ongoing session and start a new one.
  * @param  {String} sessionId - an identifier that identifies this session uniquely. Cannot be null
  * or an empty string. Cannot be longer than 64 characters.
+ * @param  {Zendrive.commandSuccessCallback} successCallback - Optional, called once the session was started.
+ * On android a startSession with the same session id as the one queued right before it is coalesced.
+ * @param  {Zendrive.failureCallback} errorCallback - Optional, called if the session could not be started.
  */
-Zendrive.startSession = function(sessionId) {
-    exec(null, null,"Zendrive","startSession", [sessionId]);
+Zendrive.startSession = function(sessionId, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "startSession", [sessionId]);
 };
 
 /**
  * Stop currently ongoing session. No-op if no session is ongoing. Trips that start after this call
  * do not belong to the session. Ongoing trips at the time of this call will continue to belong to
  * the session that was just stopped.
+ *
+ * @param  {Zendrive.commandSuccessCallback} successCallback - Optional, called once the session was stopped.
+ * On android a stopSession queued right after another stopSession is coalesced.
+ * @param  {Zendrive.failureCallback} errorCallback - Optional, called if the session could not be stopped.
  */
-Zendrive.stopSession = function() {
-    exec(null, null,"Zendrive","stopSession", []);
+Zendrive.stopSession = function(successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "stopSession", []);
 };
 
 /**
@@ -175,11 +605,23 @@ Zendrive.stopSession = function() {
  * with @{@link Zendrive.ZendriveConfiguration} during setup.
  *
  * @param {Zendrive.ZendriveDriveDetectionMode}
+ * @param {Zendrive.commandSuccessCallback} successCallback - Optional, called once the mode was changed.
+ * On android, when several mode changes are queued back to back only the last one is applied, and the
+ * others succeed with isCoalesced set.
+ * @param {Zendrive.failureCallback} errorCallback - Optional, called if the mode could not be changed.
  */
-Zendrive.setDriveDetectionMode = function(driveDetectionMode) {
-    exec(null, null, "Zendrive", "setDriveDetectionMode", [driveDetectionMode]);
+Zendrive.setDriveDetectionMode = function(driveDetectionMode, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, "Zendrive", "setDriveDetectionMode", [driveDetectionMode]);
 };
 
+/**
+ * Success callback of the drive, session and drive detection mode methods
+ * @callback commandSuccessCallback
+ * @param {Zendrive.ZendriveCommandResult} result On android, the latencies of the call. On iOS no
+ * result is passed.
+ * @memberOf Zendrive
+ */
+
 /**
  * Dictates the functioning of Zendrive’s drive detection
  * @enum {number}
@@ -202,6 +644,83 @@ Zendrive.ZendriveDriveDetectionMode = {
     ZendriveDriveDetectionModeAutoOFF: 1
 };
 
+/**
+ * Encoding used to send waypoints of a drive from the native layer.
+ * @enum {number}
+ */
+Zendrive.ZendriveWaypointEncoding = {
+    /**
+     * Each waypoint is sent as a separate object. This is the Default encoding.
+     * @type {Number}
+     */
+    ZendriveWaypointEncodingJSON : 0,
+
+    /**
+     * Waypoints are sent as a Google encoded polyline string with a precision of 1e-5 degrees.
+     * This is much cheaper for long drives and the waypoints are decoded only when
+     * @{@link Zendrive.ZendriveDriveInfo}.waypoints is first accessed.
+     * @type {Number}
+     */
+    ZendriveWaypointEncodingPolyline: 1,
+
+    /**
+     * Waypoints are quantized to @{@link Zendrive.ZendriveCallback}.waypointPrecision decimal
+     * digits, and each coordinate is sent as the difference from the previous one in a base64
+     * encoded varint. This is the most compact encoding and, like the polyline encoding, it is
+     * decoded only when @{@link Zendrive.ZendriveDriveInfo}.waypoints is first accessed.
+     * @type {Number}
+     */
+    ZendriveWaypointEncodingDeltaVarint: 2
+};
+
+/**
+ * Types of events sent to subscribers, see @{@link Zendrive.subscribe}.
+ * @enum {string}
+ */
+Zendrive.ZendriveEventType = {
+    /**
+     * The event is a @{@link Zendrive.ZendriveDriveStartInfo}.
+     * @type {String}
+     */
+    ZendriveEventTypeDriveStart: "driveStart",
+
+    /**
+     * The event is a @{@link Zendrive.ZendriveDriveInfo}.
+     * @type {String}
+     */
+    ZendriveEventTypeDriveEnd: "driveEnd",
+
+    /**
+     * The event is a @{@link Zendrive.ZendriveDriveResumeInfo}.
+     * @type {String}
+     */
+    ZendriveEventTypeDriveResume: "driveResume",
+
+    /**
+     * The event is a @{@link Zendrive.ZendriveAccidentInfo}.
+     * @type {String}
+     */
+    ZendriveEventTypeAccident: "accident",
+
+    /**
+     * The event is a Boolean, whether location permission is granted.
+     * @type {String}
+     */
+    ZendriveEventTypeLocationPermissionsChange: "locationPermissionsChange",
+
+    /**
+     * The event is a Boolean, whether location settings satisfy the requirements of the SDK.
+     * @type {String}
+     */
+    ZendriveEventTypeLocationSettingsChange: "locationSettingsChange",
+
+    /**
+     * The event is a @{@link Zendrive.ZendriveActiveDriveInfo}, or null if there is no active drive.
+     * @type {String}
+     */
+    ZendriveEventTypeActiveDriveInfoChange: "activeDriveInfoChange"
+};
+
 /**
  * @class Additional attributes of a Zendrive driver.
  * The application can specify both predefined and custom attributes for a driver.
@@ -304,6 +823,180 @@ Zendrive.ZendriveConfiguration = function (applicationKey, driverId) {
     this.driveDetectionMode = Zendrive.ZendriveDriveDetectionMode.ZendriveDriveDetectionModeAutoON;
 };
 
+/**
+ * @class Options for batching of events, see @{@link Zendrive.setEventBatchingOptions}.
+ * @constructor
+ * @param {Number} flushInterval - Maximum time in milliseconds for which an event is held back.
+ * @param {Number} maxBatchSize - Maximum number of events delivered together.
+ */
+Zendrive.ZendriveEventBatchingOptions = function (flushInterval, maxBatchSize) {
+    /**
+     * Maximum time in milliseconds for which an event is held back before being delivered.
+     * @type {Number}
+     */
+    this.flushInterval = flushInterval;
+
+    /**
+     * Events are delivered as soon as this many of them are pending. Should be at least 2.
+     * @type {Number}
+     */
+    this.maxBatchSize = maxBatchSize;
+};
+
+/**
+ * @class Events of interest to a subscriber, see @{@link Zendrive.subscribe}.
+ * @constructor
+ * @param {Array} eventTypes - @{@link Zendrive.ZendriveEventType} values, null or empty for all events.
+ */
+Zendrive.ZendriveEventSubscription = function (eventTypes) {
+    /**
+     * The @{@link Zendrive.ZendriveEventType} values subscribed to, null or empty for all events.
+     * @type {Array}
+     */
+    this.eventTypes = eventTypes;
+
+    /**
+     * Only drives which are valid are sent to the subscriber.
+     * @type {Boolean}
+     */
+    this.onlyValidDrives = false;
+
+    /**
+     * Only drives at least this many metres long are sent to the subscriber.
+     * @type {Number}
+     */
+    this.minDistance = 0;
+};
+
+/**
+ * @class Simplification of drive waypoints to a route suitable for rendering on a map.
+ * See @{@link Zendrive.ZendriveCallback}.waypointSimplification.
+ * @constructor
+ * @param {Number} tolerance - Waypoints closer than this many metres to the simplified route are dropped.
+ * @param {Number} maxWaypoints - Maximum number of waypoints sent, 0 for no limit.
+ */
+Zendrive.ZendriveWaypointSimplification = function (tolerance, maxWaypoints) {
+    /**
+     * Tolerance in metres of the Douglas-Peucker simplification, 0 to skip it.
+     * @type {Number}
+     */
+    this.tolerance = tolerance;
+
+    /**
+     * Maximum number of waypoints sent. If more remain after simplification, evenly spaced
+     * waypoints are picked. 0 for no limit.
+     * @type {Number}
+     */
+    this.maxWaypoints = maxWaypoints;
+};
+
+/**
+ * @class Options of the drive history, see @{@link Zendrive.setDriveHistoryOptions}.
+ * @constructor
+ * @param {Number} maxDrives - Number of most recent drives kept, 0 to disable the history.
+ */
+Zendrive.ZendriveDriveHistoryOptions = function (maxDrives) {
+    /**
+     * Number of most recent drives kept in the history. Older drives are deleted. Setting
+     * this to 0 disables the history and deletes all recorded drives.
+     * @type {Number}
+     */
+    this.maxDrives = maxDrives;
+};
+
+/**
+ * @class Query of the drive history, see @{@link Zendrive.queryDriveHistory}. All filters are
+ * optional.
+ * @constructor
+ */
+Zendrive.ZendriveDriveHistoryQuery = function () {
+    /**
+     * Only drives which started at or after this timestamp in milliseconds since epoch.
+     * @type {Number}
+     */
+    this.startTimestamp = null;
+
+    /**
+     * Only drives which ended at or before this timestamp in milliseconds since epoch.
+     * @type {Number}
+     */
+    this.endTimestamp = null;
+
+    /**
+     * Only drives with this tracking id.
+     * @type {String}
+     */
+    this.trackingId = null;
+
+    /**
+     * Maximum number of drives returned, from 1 to 100. Defaults to 20.
+     * @type {Number}
+     */
+    this.limit = 20;
+
+    /**
+     * The nextPageToken returned by the previous query, to get the next page of the same query.
+     * @type {String}
+     */
+    this.pageToken = null;
+};
+
+/**
+ * @class Result of setup and of the drive, session and drive detection mode methods on android.
+ * These calls run one at a time in call order.
+ * @constructor
+ */
+Zendrive.ZendriveCommandResult = function () {
+    /**
+     * Time in milliseconds the call waited for the calls before it.
+     * @type {Number}
+     */
+    this.queueLatency = 0;
+
+    /**
+     * Time in milliseconds the call took to run, 0 if it was coalesced.
+     * @type {Number}
+     */
+    this.executionLatency = 0;
+
+    /**
+     * True if the call was not run because a call queued next to it made it redundant.
+     * @type {Boolean}
+     */
+    this.isCoalesced = false;
+};
+
+/**
+ * @class A drive in the drive history, see @{@link Zendrive.queryDriveHistory}. This has all
+ * the properties of @{@link Zendrive.ZendriveDriveInfo} except waypoints.
+ * @constructor
+ */
+Zendrive.ZendriveDriveSummary = function () {
+    /**
+     * Identifier of the drive in the history.
+     * @type {Number}
+     */
+    this.driveId = 0;
+
+    /**
+     * The number of waypoints of the drive, see @{@link Zendrive.getDriveHistoryWaypoints}.
+     * @type {Number}
+     */
+    this.waypointsCount = 0;
+
+    /**
+     * The tracking id of the drive, if any.
+     * @type {String}
+     */
+    this.trackingId = null;
+
+    /**
+     * The session id of the drive, if any.
+     * @type {String}
+     */
+    this.sessionId = null;
+};
+
 /**
  * @class Wrapper for meta-information related to a drive.
  * @constructor
@@ -347,6 +1040,44 @@ Zendrive.ZendriveDriveInfo = function () {
      * @type {Array}
      */
     this.waypoints = [];
+
+    /**
+     * Statistics of the waypoints, only present when
+     * @{@link Zendrive.ZendriveCallback}.driveStatistics is enabled. This is android specific.
+     * @type {Zendrive.ZendriveDriveStatistics}
+     */
+    this.statistics = null;
+}
+
+/**
+ * @class Statistics of the waypoints of a drive, see @{@link Zendrive.ZendriveCallback}.driveStatistics.
+ * @constructor
+ */
+Zendrive.ZendriveDriveStatistics = function () {
+    /**
+     * Bounding box of the waypoints, with minLatitude, maxLatitude, minLongitude and maxLongitude.
+     * Null if the drive has no waypoints.
+     * @type {Object}
+     */
+    this.boundingBox = null;
+
+    /**
+     * Length in metres of the path through all waypoints.
+     * @type {Number}
+     */
+    this.pathDistance = 0.0;
+
+    /**
+     * Length in metres of the longest segment between consecutive waypoints.
+     * @type {Number}
+     */
+    this.maxSegmentDistance = 0.0;
+
+    /**
+     * Number of stops, detected as at least 3 consecutive waypoints within 15 metres of the first of them.
+     * @type {Number}
+     */
+    this.stopCount = 0;
 }
 
 /**
@@ -395,6 +1126,94 @@ Zendrive.ZendriveDriveStartInfo = function () {
     this.startLocation = null;
 }
 
+/**
+ * @class Information about a drive which resumed after a gap in its data.
+ * @constructor
+ */
+Zendrive.ZendriveDriveResumeInfo = function () {
+    /**
+     * The start timestamp of trip in milliseconds since epoch.
+     * @type {Number}
+     */
+    this.startTimestamp = 0;
+
+    /**
+     * Timestamp in milliseconds since epoch at which the gap in the drive started.
+     * @type {Number}
+     */
+    this.driveGapStartTimestamp = 0;
+
+    /**
+     * Timestamp in milliseconds since epoch at which the gap in the drive ended.
+     * @type {Number}
+     */
+    this.driveGapEndTimestamp = 0;
+
+    /**
+     * tracking Id correlates apps internal data with the drive data.
+     * @type {String}
+     */
+    this.trackingId;
+
+    /**
+     * Identifier that identifies this session uniquely.
+     * @type {String}
+     */
+    this.sessionId;
+}
+
+/**
+ * Confidence of an accident detected by Zendrive SDK.
+ * @enum {number}
+ */
+Zendrive.ZendriveAccidentConfidence = {
+    /**
+     * @type {Number}
+     */
+    ZendriveAccidentConfidenceHigh: 0,
+
+    /**
+     * @type {Number}
+     */
+    ZendriveAccidentConfidenceLow: 1
+};
+
+/**
+ * @class Information about an accident detected during a drive.
+ * @constructor
+ */
+Zendrive.ZendriveAccidentInfo = function () {
+    /**
+     * The timestamp of the accident in milliseconds since epoch.
+     * @type {Number}
+     */
+    this.timestamp = 0;
+
+    /**
+     * The location of the accident.
+     * @type {Zendrive.ZendriveLocationPoint}
+     */
+    this.location = null;
+
+    /**
+     * Confidence of the detected accident.
+     * @type {Zendrive.ZendriveAccidentConfidence}
+     */
+    this.confidence = Zendrive.ZendriveAccidentConfidence.ZendriveAccidentConfidenceHigh;
+
+    /**
+     * tracking Id correlates apps internal data with the drive data.
+     * @type {String}
+     */
+    this.trackingId;
+
+    /**
+     * Identifier that identifies this session uniquely.
+     * @type {String}
+     */
+    this.sessionId;
+}
+
 /**
  * @class Represents a geographical coordinate along with accuracy and timestamp information.
  * @constructor